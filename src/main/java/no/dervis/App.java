@@ -1,18 +1,53 @@
 package no.dervis;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import no.dervis.batch.BatchRunner;
+import no.dervis.batch.BatchSummary;
+import no.dervis.benchmark.BenchmarkCase;
+import no.dervis.benchmark.BenchmarkReport;
+import no.dervis.benchmark.BenchmarkResult;
+import no.dervis.benchmark.MatchBenchmark;
+import no.dervis.cache.CacheBackend;
+import no.dervis.cache.DiskCacheBackend;
+import no.dervis.cache.MemoryCacheBackend;
+import no.dervis.cache.RedisCacheBackend;
+import no.dervis.cache.ResultCache;
+import no.dervis.cache.ShardedCacheBackend;
+import no.dervis.cache.SimilarityCache;
 import no.dervis.copilot.CopilotDeviceFlow;
 import no.dervis.copilot.CopilotTokenService;
+import no.dervis.coverage.CoverageEngine;
+import no.dervis.coverage.CoverageReport;
+import no.dervis.coverage.GoalCoverage;
+import no.dervis.http.HttpTransport;
 import no.dervis.model.CompetenceGoal;
+import no.dervis.model.GoalMatch;
+import no.dervis.replay.RecordingFile;
+import no.dervis.replay.ReplayProvider;
+import no.dervis.scheduling.Priority;
+import no.dervis.scheduling.RequestScheduler;
+import no.dervis.service.CatalogProjector;
 import no.dervis.service.CompetenceGoalService;
+import no.dervis.service.Deadline;
 import no.dervis.service.LlmService;
 import no.dervis.service.LlmService.LlmProvider;
+import no.dervis.service.LlmService.ModelTarget;
+import no.dervis.service.MatchingConversation;
+import no.dervis.service.MatchingConversation.ConversationTurn;
+import no.dervis.service.ModelRouter;
+import no.dervis.service.SubGoalResolver;
 
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Main application class for the Competence Goal Matcher.
@@ -29,12 +64,34 @@ public class App {
     private static final String DEFAULT_COPILOT_MODEL = "claude-opus-4.8";
     private static final String LM_STUDIO_ENDPOINT = "http://localhost:1234/v1";
     private static final String DEFAULT_LM_STUDIO_MODEL = "local-model";
+    private static final int SIMILARITY_CACHE_CAPACITY = 10_000;
+    // Results kept by the in-memory result cache, least recently used evicted first
+    private static final int MEMORY_RESULT_CACHE_CAPACITY = 10_000;
+    // GitHub device codes expire after 15 minutes
+    private static final Duration SIGN_IN_TIMEOUT = Duration.ofMinutes(15);
+    // Long enough for a keep-alive to a local server, short enough not to hold up exit
+    private static final Duration KEEP_ALIVE_EXIT_TIMEOUT = Duration.ofSeconds(5);
+    // Held while printing a session result or error, so lines on stdout and stderr do not interleave
+    private static final Object OUTPUT_LOCK = new Object();
+    private static final Path DEFAULT_COVERAGE_FILE = Path.of(
+            System.getProperty("user.home"), ".config", "pensumai", "coverage.json");
 
     // Services
     private final CompetenceGoalService competenceGoalService;
     private final LlmService llmService;
     private final BufferedReader inputReader;
 
+    // Optional coverage tracking across entries
+    private final CoverageEngine coverageEngine;
+    private final Path coverageFile;
+    private final String studentId;
+
+    // Time budget per entry, or null for none
+    private Duration timeout;
+
+    // Language results are also shown in, or null for none
+    private String secondLanguage;
+
     /**
      * Creates a new App instance with the specified services.
      *
@@ -43,9 +100,27 @@ public class App {
      * @param inputReader Reader for user input
      */
     public App(CompetenceGoalService competenceGoalService, LlmService llmService, BufferedReader inputReader) {
+        this(competenceGoalService, llmService, inputReader, null, null, null);
+    }
+
+    /**
+     * Creates a new App instance that also accumulates the student's coverage across entries.
+     *
+     * @param competenceGoalService Service for loading competence goals
+     * @param llmService Service for matching developer responses to competence goals
+     * @param inputReader Reader for user input
+     * @param coverageEngine Engine holding coverage per student, or {@code null} to disable tracking
+     * @param coverageFile File the coverage state is loaded from and saved to
+     * @param studentId The student whose entries are matched
+     */
+    public App(CompetenceGoalService competenceGoalService, LlmService llmService, BufferedReader inputReader,
+               CoverageEngine coverageEngine, Path coverageFile, String studentId) {
         this.competenceGoalService = competenceGoalService;
         this.llmService = llmService;
         this.inputReader = inputReader;
+        this.coverageEngine = coverageEngine;
+        this.coverageFile = coverageFile;
+        this.studentId = studentId;
     }
 
     /**
@@ -62,11 +137,51 @@ public class App {
 
             // Create LLM service based on selected provider
             LlmService llmService = createLlmService(objectMapper, options);
+            options.chunkSize().ifPresent(llmService::setChunkSize);
+            options.contextTokens().ifPresent(llmService::setContextTokens);
+            options.maxModelCalls().ifPresent(slots -> llmService.setScheduler(createScheduler(slots)));
+            options.keepAlive().ifPresent(llmService::setKeepAlive);
+            if (options.replayFile().isPresent()) {
+                RecordingFile recordings = new RecordingFile(options.replayFile().get(), objectMapper);
+                ReplayProvider replayProvider = new ReplayProvider(recordings.load(), options.replayLatency());
+                llmService.setReplayProvider(replayProvider);
+                System.out.println("Replaying " + replayProvider.size() + " recorded completions from "
+                        + recordings.getFile());
+            }
+            options.recordFile().ifPresent(file -> llmService.setRecordingFile(new RecordingFile(file, objectMapper)));
+            options.similarityThreshold().ifPresent(threshold ->
+                    llmService.setSimilarityCache(new SimilarityCache(threshold, SIMILARITY_CACHE_CAPACITY)));
+            if (options.resultCache().isPresent()) {
+                llmService.setResultCache(new ResultCache(createCacheBackend(options.resultCache().get()),
+                        options.resultCacheTtl().orElse(ResultCache.DEFAULT_TTL)));
+            }
 
             // Create and run the application
             BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
-            App app = new App(goalService, llmService, reader);
-            app.run(options.language());
+            App app = options.studentId()
+                    .map(student -> new App(goalService, llmService, reader,
+                            new CoverageEngine(objectMapper), options.coverageFile(), student))
+                    .orElseGet(() -> new App(goalService, llmService, reader));
+            options.timeout().ifPresent(app::setTimeout);
+            if (options.bilingual()) {
+                app.setSecondLanguage(CompetenceGoalService.otherLanguage(options.language()));
+            }
+            if (options.benchmarkFile().isPresent()) {
+                app.runBenchmark(options.benchmarkFile().get(), options.benchmarkModels(), options.qualityBar(),
+                        objectMapper);
+            } else if (options.batchInput().isPresent()) {
+                Path input = options.batchInput().get();
+                app.runBatch(options.language(), input, options.batchOutput().orElseGet(() ->
+                        input.resolveSibling(input.getFileName() + ".results.ndjson")), options.concurrency(),
+                        objectMapper);
+            } else if (options.refine()) {
+                app.runRefinement(options.language());
+            } else if (options.session()) {
+                app.runSession(options.language());
+            } else {
+                app.run(options.language());
+            }
+            llmService.awaitKeepAlives(KEEP_ALIVE_EXIT_TIMEOUT);
 
         } catch (Exception e) {
             System.err.println("Error running application: " + e.getMessage());
@@ -75,6 +190,59 @@ public class App {
         }
     }
 
+    /**
+     * Creates the backend of the shared result cache from its specification: {@code memory},
+     * {@code disk:<directory>}, or one or more comma-separated {@code redis://host:port} URIs,
+     * which are sharded by consistent hashing.
+     *
+     * @throws IOException If the disk cache directory cannot be created
+     */
+    private static CacheBackend createCacheBackend(String spec) throws IOException {
+        if (spec.equals("memory")) {
+            return new MemoryCacheBackend(MEMORY_RESULT_CACHE_CAPACITY);
+        }
+        if (spec.startsWith("disk:")) {
+            return new DiskCacheBackend(Path.of(spec.substring("disk:".length())));
+        }
+        List<CacheBackend> shards = new ArrayList<>();
+        for (String uri : spec.split(",")) {
+            shards.add(RedisCacheBackend.fromUri(uri.strip()));
+        }
+        return shards.size() == 1 ? shards.getFirst() : new ShardedCacheBackend(shards);
+    }
+
+    /**
+     * Creates the scheduler limiting concurrent model calls. One slot is kept free for
+     * interactive calls whenever there is more than one.
+     */
+    private static RequestScheduler createScheduler(int slots) {
+        RequestScheduler scheduler = new RequestScheduler(slots);
+        if (slots > 1) {
+            scheduler.reserve(Priority.INTERACTIVE, 1);
+        }
+        return scheduler;
+    }
+
+    /**
+     * Sets the time budget for matching one entry. An entry that is not matched in time is
+     * abandoned, and its pending model calls are aborted.
+     *
+     * @param timeout The time budget per entry, or {@code null} for none
+     */
+    public void setTimeout(Duration timeout) {
+        this.timeout = timeout;
+    }
+
+    /**
+     * Shows every result in a second language as well. The matches are projected onto the
+     * second catalog by goal id and subgoal code, so no extra model call is made.
+     *
+     * @param secondLanguage The language code of the second catalog, or {@code null} for none
+     */
+    public void setSecondLanguage(String secondLanguage) {
+        this.secondLanguage = secondLanguage;
+    }
+
     /**
      * Runs the application with the specified language.
      *
@@ -87,15 +255,298 @@ public class App {
         List<CompetenceGoal> competenceGoals = loadCompetenceGoals(language);
         System.out.println("Loaded " + competenceGoals.size() + " competence goals.");
 
+        // Load local models while the developer is typing
+        llmService.warmUp(competenceGoals);
+
         // Ask developer about their tasks
         String developerResponse = askDeveloper();
+        if (developerResponse == null) {
+            return;
+        }
 
         // Match developer response to competence goals
         System.out.println("\nMatching your response to competence goals...");
-        List<CompetenceGoal> matchingGoals = llmService.matchCompetenceGoals(developerResponse, competenceGoals);
+        List<GoalMatch> matches = llmService.matchGoals(developerResponse, competenceGoals,
+                timeout != null ? Deadline.after(timeout) : Deadline.none());
 
         // Display matching goals
-        displayMatchingGoals(matchingGoals);
+        displayMatchingGoals(new SubGoalResolver(competenceGoals).materialize(matches));
+        CatalogProjector projector = createProjector(competenceGoals);
+        if (projector != null) {
+            displayProjectedGoals(projector, matches);
+        }
+
+        if (coverageEngine != null) {
+            updateCoverage(matches, competenceGoals);
+        }
+        printRoutingMetrics();
+    }
+
+    /**
+     * Runs an interactive session with the specified language.
+     *
+     * <p>The catalog and LLM service stay loaded for the whole session. Each entry starts
+     * matching in the background as soon as it is submitted, so the developer can type the
+     * next entry while earlier ones are still being matched. Results are printed as they
+     * complete, and the session ends once all pending matches are done.
+     *
+     * @param language The language code for competence goals
+     * @throws IOException If an I/O error occurs
+     */
+    public void runSession(String language) throws IOException {
+        List<CompetenceGoal> competenceGoals = loadCompetenceGoals(language);
+        System.out.println("Loaded " + competenceGoals.size() + " competence goals.");
+        System.out.println("Session started. Type 'quit' on a new line to end the session.");
+        llmService.warmUp(competenceGoals);
+
+        SubGoalResolver resolver = new SubGoalResolver(competenceGoals);
+        CatalogProjector projector = createProjector(competenceGoals);
+        List<CompletableFuture<Void>> pending = new ArrayList<>();
+        long started = System.nanoTime();
+
+        int entry = 0;
+        String developerResponse;
+        while ((developerResponse = askDeveloper()) != null) {
+            if (developerResponse.isEmpty()) {
+                continue;
+            }
+            int entryNumber = ++entry;
+            synchronized (OUTPUT_LOCK) {
+                System.out.println("Matching entry " + entryNumber + " in the background...");
+            }
+
+            pending.add(llmService
+                    .matchGoalsAsync(developerResponse, competenceGoals, timeout)
+                    .thenAccept(matches -> printEntryResult(entryNumber, matches, competenceGoals, resolver, projector))
+                    .exceptionally(e -> {
+                        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                        String reason = cause instanceof TimeoutException
+                                ? "no result within " + timeout.toSeconds() + " s"
+                                : cause.getMessage();
+                        synchronized (OUTPUT_LOCK) {
+                            System.out.flush();
+                            System.err.println("Matching entry " + entryNumber + " failed: " + reason);
+                        }
+                        return null;
+                    }));
+        }
+
+        if (pending.stream().anyMatch(future -> !future.isDone())) {
+            System.out.println("Waiting for pending matches...");
+        }
+        CompletableFuture.allOf(pending.toArray(CompletableFuture[]::new)).join();
+
+        System.out.printf("Session finished: %d entries matched in %.1f s%n",
+                pending.size(), (System.nanoTime() - started) / 1e9);
+        if (llmService.getSimilarityCache() != null) {
+            System.out.println("Similarity cache: " + llmService.getSimilarityCache().getStats());
+        }
+        if (llmService.getResultCache() != null) {
+            System.out.println("Result cache: " + llmService.getResultCache().getStats());
+        }
+        printRoutingMetrics();
+    }
+
+    /**
+     * Runs an interactive session that refines one response with the specified language.
+     *
+     * <p>Each entry adds to the response so far. The catalog is sent to the model once, and
+     * each entry only sends its own text, so local servers can reuse the cached start of the
+     * conversation. After each entry, the goals and subgoals it added or removed are shown.
+     *
+     * @param language The language code for competence goals
+     * @throws IOException If an I/O error occurs
+     * @throws InterruptedException If the matching process is interrupted
+     */
+    public void runRefinement(String language) throws IOException, InterruptedException {
+        List<CompetenceGoal> competenceGoals = loadCompetenceGoals(language);
+        System.out.println("Loaded " + competenceGoals.size() + " competence goals.");
+        System.out.println("Each entry adds to your response. Type 'quit' on a new line to finish.");
+        llmService.warmUp(competenceGoals);
+
+        MatchingConversation conversation = llmService.startConversation(competenceGoals);
+        SubGoalResolver resolver = new SubGoalResolver(competenceGoals);
+        StringBuilder response = new StringBuilder();
+
+        String entry;
+        while ((entry = askDeveloper()) != null) {
+            if (entry.isEmpty()) {
+                continue;
+            }
+            String revised = response.isEmpty() ? entry : response + "\n" + entry;
+            System.out.println("\nMatching the new text...");
+            ConversationTurn turn;
+            try {
+                turn = conversation.update(revised, timeout != null ? Deadline.after(timeout) : Deadline.none());
+            } catch (IOException e) {
+                System.err.println("Matching failed, the entry was not added: " + e.getMessage());
+                continue;
+            }
+            response.setLength(0);
+            response.append(revised);
+
+            if (!turn.hasChanges()) {
+                System.out.println("\nNo changes to the matching competence goals.");
+                continue;
+            }
+            if (!turn.added().isEmpty()) {
+                System.out.println("\nAdded:");
+                displayMatchingGoals(resolver.materialize(turn.added()));
+            }
+            if (!turn.removed().isEmpty()) {
+                System.out.println("\nNo longer matched:");
+                displayMatchingGoals(resolver.materialize(turn.removed()));
+            }
+        }
+
+        List<GoalMatch> matches = conversation.getMatches();
+        System.out.println("\n--- Final result ---");
+        displayMatchingGoals(resolver.materialize(matches));
+        if (coverageEngine != null && !matches.isEmpty()) {
+            updateCoverage(matches, competenceGoals);
+        }
+    }
+
+    /**
+     * Prints the result of a session entry without interleaving it with other results.
+     */
+    private void printEntryResult(int entryNumber, List<GoalMatch> matches, List<CompetenceGoal> competenceGoals,
+                                  SubGoalResolver resolver, CatalogProjector projector) {
+        synchronized (OUTPUT_LOCK) {
+            System.out.println("\n--- Result for entry " + entryNumber + " ---");
+            displayMatchingGoals(resolver.materialize(matches));
+            if (projector != null) {
+                displayProjectedGoals(projector, matches);
+            }
+            if (coverageEngine != null) {
+                try {
+                    updateCoverage(matches, competenceGoals);
+                } catch (IOException e) {
+                    System.err.println("Failed to update coverage: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates the projector onto the second language's catalog, or returns {@code null} if no
+     * second language is set.
+     */
+    private CatalogProjector createProjector(List<CompetenceGoal> competenceGoals) throws IOException {
+        if (secondLanguage == null) {
+            return null;
+        }
+        return new CatalogProjector(competenceGoals, loadCompetenceGoals(secondLanguage));
+    }
+
+    private void displayProjectedGoals(CatalogProjector projector, List<GoalMatch> matches) {
+        System.out.println("In language '" + secondLanguage + "':");
+        displayMatchingGoals(projector.materialize(matches));
+    }
+
+    /**
+     * Matches all records of an NDJSON input file, resuming a previous run of the same output.
+     *
+     * @param language The language code for competence goals
+     * @param input NDJSON file with one {@code {"id", "response"}} object per line
+     * @param output NDJSON file the results are appended to
+     * @param concurrency Number of records matched at the same time, or empty for the default
+     * @param objectMapper Mapper for the input and result lines
+     * @throws IOException If a file cannot be read or written
+     * @throws InterruptedException If the run is interrupted
+     */
+    public void runBatch(String language, Path input, Path output, Optional<Integer> concurrency,
+                         ObjectMapper objectMapper) throws IOException, InterruptedException {
+        List<CompetenceGoal> competenceGoals = loadCompetenceGoals(language);
+        System.out.println("Loaded " + competenceGoals.size() + " competence goals.");
+
+        BatchRunner runner = new BatchRunner(llmService, objectMapper);
+        runner.setTimeout(timeout);
+        concurrency.ifPresent(runner::setConcurrency);
+
+        System.out.println("Matching " + input + " into " + output + "...");
+        long started = System.nanoTime();
+        BatchSummary summary = runner.run(input, output, competenceGoals);
+        System.out.printf("Batch finished in %.1f s: %s%n", (System.nanoTime() - started) / 1e9, summary);
+        if (summary.failed() > 0) {
+            System.out.println("Run the same command again to retry the failed records.");
+        }
+        printRoutingMetrics();
+    }
+
+    /**
+     * Runs a labelled dataset through each model and prints their matching quality next to
+     * their latency and tokens.
+     *
+     * @param dataset NDJSON file of labelled cases, see {@link MatchBenchmark}
+     * @param models The models to compare, or empty for the configured model
+     * @param qualityBar The lowest acceptable subgoal F1 score, if a model should be suggested
+     * @param objectMapper Mapper for the dataset lines
+     * @throws IOException If the dataset or a catalog cannot be read
+     * @throws InterruptedException If the run is interrupted
+     */
+    public void runBenchmark(Path dataset, List<ModelTarget> models, Optional<Double> qualityBar,
+                             ObjectMapper objectMapper) throws IOException, InterruptedException {
+        // Cached results would hide the quality and latency of the models
+        llmService.setSimilarityCache(null);
+        llmService.setResultCache(null);
+
+        MatchBenchmark benchmark = new MatchBenchmark(llmService, competenceGoalService, objectMapper);
+        benchmark.setTimeout(timeout);
+        List<BenchmarkCase> cases = benchmark.loadDataset(dataset);
+        System.out.println("Loaded " + cases.size() + " benchmark cases from " + dataset + ".");
+
+        List<BenchmarkResult> results = new ArrayList<>();
+        for (ModelTarget model : models.isEmpty() ? List.of(llmService.getDefaultTarget()) : models) {
+            System.out.println("Benchmarking " + model.provider() + "/" + model.modelName() + "...");
+            results.add(benchmark.run(model, cases));
+        }
+
+        System.out.println();
+        BenchmarkReport report = new BenchmarkReport(results);
+        report.print(System.out);
+        qualityBar.ifPresent(bar -> report.recommend(bar).ifPresentOrElse(
+                best -> System.out.printf("%nFastest model with a subgoal F1 of at least %.2f: %s/%s%n",
+                        bar, best.target().provider(), best.target().modelName()),
+                () -> System.out.printf("%nNo model reached a subgoal F1 of %.2f.%n", bar)));
+    }
+
+    /**
+     * Prints how requests were routed and what each model cost, when routing is enabled.
+     */
+    private void printRoutingMetrics() {
+        ModelRouter router = llmService.getModelRouter();
+        if (router == null) {
+            return;
+        }
+        System.out.println("Routing: " + router.getDecisions());
+        for (ModelRouter.TargetMetrics metrics : router.getMetrics()) {
+            System.out.println("  " + metrics);
+        }
+    }
+
+    /**
+     * Merges the entry's matches into the student's stored coverage and displays the result.
+     *
+     * @param matches The canonical matches of the entry
+     * @param competenceGoals The loaded competence goals
+     * @throws IOException If the coverage file cannot be read or written
+     */
+    private void updateCoverage(List<GoalMatch> matches, List<CompetenceGoal> competenceGoals) throws IOException {
+        coverageEngine.load(coverageFile);
+        coverageEngine.record(studentId, matches);
+        coverageEngine.save(coverageFile);
+
+        CoverageReport report = coverageEngine.report(studentId, competenceGoals);
+        System.out.printf("Coverage for %s after %d entries: %d of %d subgoals (%.0f%%)%n",
+                studentId, report.entryCount(), report.coveredCount(), report.totalCount(), report.ratio() * 100);
+        for (GoalCoverage goal : report.goals()) {
+            if (goal.matched()) {
+                System.out.printf("  Goal %d: %d/%d subgoals%n", goal.goal().getId(),
+                        goal.coveredSubGoals().size(),
+                        goal.coveredSubGoals().size() + goal.uncoveredSubGoals().size());
+            }
+        }
     }
 
     /**
@@ -112,7 +563,7 @@ public class App {
     /**
      * Asks the developer about their tasks and returns their response.
      *
-     * @return The developer's response
+     * @return The developer's response, or {@code null} if input ended or 'quit' was typed
      * @throws IOException If an I/O error occurs
      */
     private String askDeveloper() throws IOException {
@@ -122,10 +573,16 @@ public class App {
         StringBuilder response = new StringBuilder();
         String line;
 
-        while (!(line = inputReader.readLine()).equalsIgnoreCase("done")) {
+        while ((line = inputReader.readLine()) != null && !line.equalsIgnoreCase("done")) {
+            if (response.isEmpty() && line.equalsIgnoreCase("quit")) {
+                return null;
+            }
             response.append(line).append("\n");
         }
 
+        if (line == null && response.isEmpty()) {
+            return null;
+        }
         return response.toString().trim();
     }
 
@@ -163,23 +620,47 @@ public class App {
     /**
      * Creates an LLM service based on the specified command line options.
      *
+     * <p>All local endpoints and default models are configured, so that the cascade selector
+     * may use another provider than the matching model. The Copilot token service is only
+     * created when one of the stages uses GitHub Copilot, and the GitHub sign-in then runs
+     * right away, since a person cannot complete it within the token timeout of a match.
+     *
      * @param objectMapper The ObjectMapper for JSON serialization/deserialization
      * @param options Command line options
      * @return A configured LLM service
      */
-    private static LlmService createLlmService(ObjectMapper objectMapper, CommandLineOptions options) {
-        return switch (options.provider()) {
-            case OLLAMA -> new LlmService(objectMapper, OLLAMA_ENDPOINT, options.ollamaModel().orElse(DEFAULT_OLLAMA_MODEL), options.copilotModel().orElse(DEFAULT_COPILOT_MODEL));
-            case GITHUB_MODELS -> new LlmService(objectMapper, options.githubModel().orElse(DEFAULT_GITHUB_MODEL));
-            case GITHUB_COPILOT -> {
-                CopilotDeviceFlow deviceFlow = new CopilotDeviceFlow(objectMapper);
-                CopilotTokenService tokenService = new CopilotTokenService(deviceFlow, objectMapper);
-                yield new LlmService(objectMapper, tokenService,
-                        options.copilotModel().orElse(DEFAULT_COPILOT_MODEL));
-            }
-            case LM_STUDIO -> new LlmService(objectMapper, LM_STUDIO_ENDPOINT,
-                    options.lmStudioModel().orElse(DEFAULT_LM_STUDIO_MODEL));
-        };
+    private static LlmService createLlmService(ObjectMapper objectMapper, CommandLineOptions options)
+            throws IOException, InterruptedException {
+        Optional<ModelTarget> cascadeSelector = options.cascadeModel()
+                .map(model -> new ModelTarget(options.cascadeProvider().orElse(options.provider()), model));
+        ModelRouter router = options.routingFile().isPresent()
+                ? ModelRouter.load(options.routingFile().get(), objectMapper)
+                : null;
+
+        // One transport for all model calls, warm-ups and the Copilot sign-in
+        HttpTransport transport = HttpTransport.defaultTransport();
+
+        CopilotTokenService tokenService = null;
+        if (options.provider() == LlmProvider.GITHUB_COPILOT
+                || cascadeSelector.map(ModelTarget::provider).orElse(null) == LlmProvider.GITHUB_COPILOT
+                || router != null && router.getRules().stream()
+                        .anyMatch(rule -> rule.provider() == LlmProvider.GITHUB_COPILOT)
+                || options.benchmarkModels().stream()
+                        .anyMatch(model -> model.provider() == LlmProvider.GITHUB_COPILOT)) {
+            CopilotDeviceFlow deviceFlow = new CopilotDeviceFlow(objectMapper, transport);
+            deviceFlow.getOrAuthenticate(SIGN_IN_TIMEOUT);
+            tokenService = new CopilotTokenService(deviceFlow, objectMapper, transport);
+        }
+
+        LlmService llmService = new LlmService(objectMapper,
+                OLLAMA_ENDPOINT, options.ollamaModel().orElse(DEFAULT_OLLAMA_MODEL),
+                options.githubModel().orElse(DEFAULT_GITHUB_MODEL),
+                tokenService, options.copilotModel().orElse(DEFAULT_COPILOT_MODEL),
+                LM_STUDIO_ENDPOINT, options.lmStudioModel().orElse(DEFAULT_LM_STUDIO_MODEL),
+                options.provider(), transport);
+        cascadeSelector.ifPresent(llmService::setCascadeSelector);
+        llmService.setModelRouter(router);
+        return llmService;
     }
 
     /**
@@ -195,6 +676,31 @@ public class App {
         Optional<String> githubModel = Optional.empty();
         Optional<String> copilotModel = Optional.empty();
         Optional<String> lmStudioModel = Optional.empty();
+        Optional<String> studentId = Optional.empty();
+        Path coverageFile = DEFAULT_COVERAGE_FILE;
+        Optional<Integer> chunkSize = Optional.empty();
+        Optional<Integer> contextTokens = Optional.empty();
+        boolean session = false;
+        boolean refine = false;
+        Optional<Duration> keepAlive = Optional.empty();
+        Optional<LlmProvider> cascadeProvider = Optional.empty();
+        Optional<String> cascadeModel = Optional.empty();
+        Optional<Double> similarityThreshold = Optional.empty();
+        Optional<String> resultCache = Optional.empty();
+        Optional<Duration> resultCacheTtl = Optional.empty();
+        Optional<Duration> timeout = Optional.empty();
+        Optional<Path> batchInput = Optional.empty();
+        Optional<Path> batchOutput = Optional.empty();
+        Optional<Integer> concurrency = Optional.empty();
+        Optional<Integer> maxModelCalls = Optional.empty();
+        Optional<Path> routingFile = Optional.empty();
+        Optional<Path> recordFile = Optional.empty();
+        Optional<Path> replayFile = Optional.empty();
+        boolean replayLatency = false;
+        boolean bilingual = false;
+        Optional<Path> benchmarkFile = Optional.empty();
+        List<ModelTarget> benchmarkModels = new ArrayList<>();
+        Optional<Double> qualityBar = Optional.empty();
 
         for (int i = 0; i < args.length; i++) {
             switch (args[i]) {
@@ -234,6 +740,163 @@ public class App {
                         lmStudioModel = Optional.of(args[++i]);
                     }
                 }
+                case "--student", "-s" -> {
+                    if (i + 1 < args.length) {
+                        studentId = Optional.of(args[++i]);
+                    }
+                }
+                case "--coverage-file" -> {
+                    if (i + 1 < args.length) {
+                        coverageFile = Path.of(args[++i]);
+                    }
+                }
+                case "--chunk-size" -> {
+                    if (i + 1 < args.length) {
+                        try {
+                            chunkSize = Optional.of(Integer.parseInt(args[++i]));
+                        } catch (NumberFormatException e) {
+                            System.err.println("Invalid chunk size: " + args[i]);
+                        }
+                    }
+                }
+                case "--context-tokens" -> {
+                    if (i + 1 < args.length) {
+                        try {
+                            contextTokens = Optional.of(Integer.parseInt(args[++i]));
+                        } catch (NumberFormatException e) {
+                            System.err.println("Invalid context size: " + args[i]);
+                        }
+                    }
+                }
+                case "--session", "-i" -> session = true;
+                case "--refine" -> refine = true;
+                case "--cascade-provider" -> {
+                    if (i + 1 < args.length) {
+                        String providerArg = args[++i].toUpperCase();
+                        try {
+                            cascadeProvider = Optional.of(LlmProvider.valueOf(providerArg));
+                        } catch (IllegalArgumentException e) {
+                            System.err.println("Invalid cascade provider: " + providerArg);
+                        }
+                    }
+                }
+                case "--cascade-model" -> {
+                    if (i + 1 < args.length) {
+                        cascadeModel = Optional.of(args[++i]);
+                    }
+                }
+                case "--similarity-cache" -> {
+                    if (i + 1 < args.length) {
+                        try {
+                            similarityThreshold = Optional.of(Double.parseDouble(args[++i]));
+                        } catch (NumberFormatException e) {
+                            System.err.println("Invalid similarity threshold: " + args[i]);
+                        }
+                    }
+                }
+                case "--result-cache" -> {
+                    if (i + 1 < args.length) {
+                        resultCache = Optional.of(args[++i]);
+                    }
+                }
+                case "--result-cache-ttl" -> {
+                    if (i + 1 < args.length) {
+                        try {
+                            resultCacheTtl = Optional.of(parseDuration(args[++i]));
+                        } catch (IllegalArgumentException e) {
+                            System.err.println("Invalid result cache TTL: " + args[i]);
+                        }
+                    }
+                }
+                case "--keep-alive" -> {
+                    if (i + 1 < args.length) {
+                        try {
+                            keepAlive = Optional.of(parseDuration(args[++i]));
+                        } catch (IllegalArgumentException e) {
+                            System.err.println("Invalid keep-alive: " + args[i]);
+                        }
+                    }
+                }
+                case "--batch" -> {
+                    if (i + 1 < args.length) {
+                        batchInput = Optional.of(Path.of(args[++i]));
+                    }
+                }
+                case "--output", "-o" -> {
+                    if (i + 1 < args.length) {
+                        batchOutput = Optional.of(Path.of(args[++i]));
+                    }
+                }
+                case "--benchmark" -> {
+                    if (i + 1 < args.length) {
+                        benchmarkFile = Optional.of(Path.of(args[++i]));
+                    }
+                }
+                case "--benchmark-models" -> {
+                    if (i + 1 < args.length) {
+                        try {
+                            for (String model : args[++i].split(",")) {
+                                benchmarkModels.add(parseModelTarget(model.strip()));
+                            }
+                        } catch (IllegalArgumentException e) {
+                            System.err.println("Invalid benchmark models: " + args[i]);
+                        }
+                    }
+                }
+                case "--quality-bar" -> {
+                    if (i + 1 < args.length) {
+                        try {
+                            qualityBar = Optional.of(Double.parseDouble(args[++i]));
+                        } catch (NumberFormatException e) {
+                            System.err.println("Invalid quality bar: " + args[i]);
+                        }
+                    }
+                }
+                case "--routing" -> {
+                    if (i + 1 < args.length) {
+                        routingFile = Optional.of(Path.of(args[++i]));
+                    }
+                }
+                case "--max-model-calls" -> {
+                    if (i + 1 < args.length) {
+                        try {
+                            maxModelCalls = Optional.of(Integer.parseInt(args[++i]));
+                        } catch (NumberFormatException e) {
+                            System.err.println("Invalid number of model calls: " + args[i]);
+                        }
+                    }
+                }
+                case "--concurrency" -> {
+                    if (i + 1 < args.length) {
+                        try {
+                            concurrency = Optional.of(Integer.parseInt(args[++i]));
+                        } catch (NumberFormatException e) {
+                            System.err.println("Invalid concurrency: " + args[i]);
+                        }
+                    }
+                }
+                case "--record" -> {
+                    if (i + 1 < args.length) {
+                        recordFile = Optional.of(Path.of(args[++i]));
+                    }
+                }
+                case "--replay" -> {
+                    if (i + 1 < args.length) {
+                        replayFile = Optional.of(Path.of(args[++i]));
+                    }
+                }
+                case "--replay-latency" -> replayLatency = true;
+                case "--bilingual", "-b" -> bilingual = true;
+                case "--timeout" -> {
+                    if (i + 1 < args.length) {
+                        try {
+                            Duration parsed = parseDuration(args[++i]);
+                            timeout = parsed.isNegative() ? Optional.empty() : Optional.of(parsed);
+                        } catch (IllegalArgumentException e) {
+                            System.err.println("Invalid timeout: " + args[i]);
+                        }
+                    }
+                }
                 case "--copilot-logout" -> {
                     try {
                         CopilotDeviceFlow.clearCache();
@@ -250,7 +913,49 @@ public class App {
             }
         }
 
-        return new CommandLineOptions(language, provider, ollamaModel, githubModel, copilotModel, lmStudioModel);
+        return new CommandLineOptions(language, provider, ollamaModel, githubModel, copilotModel, lmStudioModel,
+                studentId, coverageFile, chunkSize, contextTokens, session, refine, keepAlive,
+                cascadeProvider, cascadeModel, similarityThreshold, resultCache, resultCacheTtl, timeout,
+                batchInput, batchOutput, concurrency, maxModelCalls, routingFile, recordFile, replayFile,
+                replayLatency, bilingual, benchmarkFile, List.copyOf(benchmarkModels), qualityBar);
+    }
+
+    /**
+     * Parses a model such as {@code OLLAMA:qwen2.5:7b}: the provider, a colon and the model name.
+     *
+     * @throws IllegalArgumentException If the provider is unknown or the model name is missing
+     */
+    private static ModelTarget parseModelTarget(String value) {
+        int colon = value.indexOf(':');
+        if (colon <= 0 || colon == value.length() - 1) {
+            throw new IllegalArgumentException("Expected <provider>:<model>: " + value);
+        }
+        return new ModelTarget(LlmProvider.valueOf(value.substring(0, colon).toUpperCase()),
+                value.substring(colon + 1));
+    }
+
+    /**
+     * Parses a duration such as {@code 90s}, {@code 30m} or {@code 2h}; {@code -1} means forever.
+     *
+     * @param value The duration text
+     * @return The parsed duration, negative for forever
+     * @throws IllegalArgumentException If the text is not a valid duration
+     */
+    private static Duration parseDuration(String value) {
+        if (value.equals("-1")) {
+            return Duration.ofSeconds(-1);
+        }
+        try {
+            long amount = Long.parseLong(value.substring(0, value.length() - 1));
+            return switch (value.charAt(value.length() - 1)) {
+                case 's' -> Duration.ofSeconds(amount);
+                case 'm' -> Duration.ofMinutes(amount);
+                case 'h' -> Duration.ofHours(amount);
+                default -> throw new IllegalArgumentException("Unknown unit in " + value);
+            };
+        } catch (NumberFormatException | StringIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Invalid duration: " + value, e);
+        }
     }
 
     /**
@@ -271,6 +976,53 @@ public class App {
               -gm, --github-model <model>  GitHub Models model (default: gpt-5)
               -cm, --copilot-model <model> Copilot model id (default: claude-opus-4.7)
               -lm, --lmstudio-model <model> LM Studio model (default: local-model)
+              -b,  --bilingual             Also show results in the other language (en/no),
+                                            projected without another model call
+              -i,  --session               Interactive session: match several entries, typing the
+                                            next one while earlier ones are matched
+                   --refine                Interactive session refining one response: the catalog
+                                            is sent once, each entry only sends its own text and
+                                            shows the goals it added or removed
+                   --batch <file>          Match every {"id", "response"} line of an NDJSON file;
+                                            rerun the same command to resume an interrupted run
+              -o,  --output <file>         NDJSON results of --batch (default: <file>.results.ndjson)
+                   --concurrency <n>       Records of --batch matched at the same time (default: 4)
+                   --max-model-calls <n>   Model calls running at the same time, across all records,
+                                            chunks and shards; interactive calls go first
+                                            (default: unlimited)
+                   --routing <file>        Pick the model per response from the rules of a JSON file,
+                                            e.g. short responses to a small local model
+                   --benchmark <file>      Match the labelled responses of an NDJSON file and report
+                                            precision and recall per goal and subgoal next to
+                                            p50/p95 latency and tokens, e.g. benchmark/responses.ndjson
+                   --benchmark-models <m>  Comma-separated models to benchmark as <provider>:<model>,
+                                            e.g. OLLAMA:qwen2.5:7b,GITHUB_MODELS:gpt-5
+                                            (default: the configured model)
+                   --quality-bar <f1>      Suggest the fastest benchmarked model whose subgoal F1
+                                            score is at least this, e.g. 0.8
+                   --cascade-model <model> Enable the two-stage cascade: this small model picks
+                                            candidate goals from their titles, then the main model
+                                            matches subgoals of those goals only
+                   --cascade-provider <p>  Provider of the cascade model (default: --provider)
+                   --similarity-cache <t>  Reuse results of near-duplicate responses with a
+                                            signature similarity of at least t, e.g. 0.9
+                   --result-cache <spec>   Share exact results between runs and instances: memory,
+                                            disk:<dir> or redis://host:port[,redis://host:port...]
+                   --result-cache-ttl <t>  How long shared results are kept, e.g. 12h (default: 24h)
+                   --record <file>         Record every completion with its latency to an NDJSON file
+                   --replay <file>         Serve completions from a recording instead of the provider;
+                                            use the provider and model of the recording run
+                   --replay-latency        Wait for the recorded latency when replaying
+                   --timeout <time>        Give up on an entry that is not matched in time and
+                                            abort its model calls, e.g. 90s or 5m (default: none)
+                   --keep-alive <time>     How long Ollama/LM Studio keep the model loaded,
+                                            e.g. 90s, 30m, 2h or -1 for forever (default: 30m)
+              -s,  --student <id>          Accumulate coverage for this student across runs
+                   --coverage-file <path>  Coverage state file (default: ~/.config/pensumai/coverage.json)
+                   --chunk-size <chars>    Split longer responses into chunks matched in parallel
+                                            (default: 4000)
+                   --context-tokens <n>    Context size of the model, e.g. Ollama's num_ctx
+                                            (default: built-in table per provider and model)
                    --copilot-logout        Clear the cached GitHub OAuth token
               -h,  --help                  Show this help message
               
@@ -290,6 +1042,31 @@ public class App {
             Optional<String> ollamaModel,
             Optional<String> githubModel,
             Optional<String> copilotModel,
-            Optional<String> lmStudioModel
+            Optional<String> lmStudioModel,
+            Optional<String> studentId,
+            Path coverageFile,
+            Optional<Integer> chunkSize,
+            Optional<Integer> contextTokens,
+            boolean session,
+            boolean refine,
+            Optional<Duration> keepAlive,
+            Optional<LlmProvider> cascadeProvider,
+            Optional<String> cascadeModel,
+            Optional<Double> similarityThreshold,
+            Optional<String> resultCache,
+            Optional<Duration> resultCacheTtl,
+            Optional<Duration> timeout,
+            Optional<Path> batchInput,
+            Optional<Path> batchOutput,
+            Optional<Integer> concurrency,
+            Optional<Integer> maxModelCalls,
+            Optional<Path> routingFile,
+            Optional<Path> recordFile,
+            Optional<Path> replayFile,
+            boolean replayLatency,
+            boolean bilingual,
+            Optional<Path> benchmarkFile,
+            List<ModelTarget> benchmarkModels,
+            Optional<Double> qualityBar
     ) {}
 }
\ No newline at end of file
@@ -0,0 +1,81 @@
+package no.dervis.aot;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import no.dervis.cache.SimilarityCache;
+import no.dervis.http.HttpTransport;
+import no.dervis.http.StubChatServer;
+import no.dervis.model.CompetenceGoal;
+import no.dervis.model.GoalMatch;
+import no.dervis.service.CatalogProjector;
+import no.dervis.service.CompetenceGoalService;
+import no.dervis.service.LlmService;
+import no.dervis.service.LlmService.LlmProvider;
+import no.dervis.service.SubGoalResolver;
+
+import java.util.List;
+
+/**
+ * Training run for the JDK AOT cache.
+ *
+ * <p>Runs the work a CLI invocation does before and around its first model call: loading both
+ * catalogs, planning and building prompts, calling Ollama and OpenAI-compatible models over
+ * HTTP, and stripping, parsing and salvaging their answers. The models are replaced by a local
+ * stub server, so the run needs no network and no model. The {@code aot} Maven profile runs it
+ * with {@code -XX:AOTCacheOutput}, so that the classes it loads are loaded and linked from the
+ * cache on later starts.
+ */
+public final class AotTraining {
+
+    // Exercises think stripping, subgoal codes and a truncated entry that needs salvage
+    private static final String COMPLETION = "<think>The response is about writing code.</think>"
+            + "[{\"competenceGoalId\": 1, \"matchingSubGoals\": [\"1.6\", \"1.7 Development: Use the company's version control\"]},"
+            + " {\"competenceGoalId\": 3, \"matchingSubGoals\": [\"3.1\"";
+
+    private static final String[] RESPONSES = {
+            "I wrote the code for a new REST endpoint, used Git for version control and fixed bugs found in code review.",
+            """
+            Jeg planla nettverket for det nye kontoret og satte opp brannmurregler.
+
+            Etterpå skrev jeg en risikovurdering og dokumenterte oppsettet for driftsavdelingen."""
+    };
+
+    private AotTraining() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        long started = System.nanoTime();
+        ObjectMapper objectMapper = new ObjectMapper();
+        CompetenceGoalService goalService = new CompetenceGoalService(objectMapper);
+        List<CompetenceGoal> english = goalService.loadCompetenceGoals("en");
+        List<CompetenceGoal> norwegian = goalService.loadCompetenceGoals("no");
+
+        int matched = 0;
+        try (StubChatServer server = new StubChatServer(COMPLETION)) {
+            HttpTransport transport = HttpTransport.defaultTransport();
+            for (LlmProvider provider : List.of(LlmProvider.LM_STUDIO, LlmProvider.OLLAMA)) {
+                LlmService llmService = new LlmService(objectMapper,
+                        server.ollamaEndpoint(), "stub", "stub", null, null,
+                        server.openAiEndpoint(), "stub", provider, transport);
+                llmService.setSimilarityCache(new SimilarityCache());
+
+                for (List<CompetenceGoal> catalog : List.of(english, norwegian)) {
+                    for (String response : RESPONSES) {
+                        try {
+                            List<GoalMatch> matches = llmService.matchGoals(response, catalog);
+                            new SubGoalResolver(catalog).materialize(matches);
+                            new CatalogProjector(catalog, catalog == english ? norwegian : english).materialize(matches);
+                            matched++;
+                        } catch (Exception e) {
+                            System.err.println("Training match with " + provider + " failed: " + e);
+                        }
+                    }
+                }
+            }
+        }
+
+        System.out.printf("AOT training finished: %d matches in %.1f s%n", matched, (System.nanoTime() - started) / 1e9);
+        if (matched == 0) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package no.dervis.aot;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures time-to-first-prompt of the CLI with and without the AOT cache.
+ *
+ * <p>Each run starts a new JVM with {@code no.dervis.App} and stops it as soon as it asks the
+ * developer for input, which is after the catalog is loaded and the LLM service is set up.
+ *
+ * <p>Usage: {@code StartupBenchmark <jar> <aot-cache> [runs]}
+ */
+public final class StartupBenchmark {
+
+    private static final String PROMPT = "Please describe the tasks you performed";
+    private static final int DEFAULT_RUNS = 5;
+
+    private StartupBenchmark() {
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 2) {
+            System.err.println("Usage: StartupBenchmark <jar> <aot-cache> [runs]");
+            System.exit(2);
+        }
+        Path jar = Path.of(args[0]).toAbsolutePath();
+        Path cache = Path.of(args[1]).toAbsolutePath();
+        int runs = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_RUNS;
+
+        // The first start warms the OS file cache for both variants
+        timeToFirstPrompt(jar, null);
+
+        report("Without AOT cache", measure(jar, null, runs));
+        if (Files.exists(cache)) {
+            report("With AOT cache   ", measure(jar, cache, runs));
+        } else {
+            System.out.println("No AOT cache at " + cache + "; build it with: mvn -Paot package");
+        }
+    }
+
+    private static List<Long> measure(Path jar, Path cache, int runs) throws IOException, InterruptedException {
+        List<Long> millis = new ArrayList<>(runs);
+        for (int i = 0; i < runs; i++) {
+            millis.add(timeToFirstPrompt(jar, cache));
+        }
+        return millis;
+    }
+
+    /**
+     * Starts the CLI and returns the milliseconds until it prints the first prompt.
+     */
+    private static long timeToFirstPrompt(Path jar, Path cache) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>(List.of(
+                Path.of(System.getProperty("java.home"), "bin", "java").toString(), "--enable-preview"));
+        if (cache != null) {
+            command.add("-XX:AOTCache=" + cache);
+        }
+        command.addAll(List.of("-cp", jar.toString(), "no.dervis.App"));
+
+        long started = System.nanoTime();
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        try (BufferedReader output = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = output.readLine()) != null) {
+                if (line.contains(PROMPT)) {
+                    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+                }
+            }
+            throw new IOException("The CLI exited without prompting, exit code " + process.waitFor());
+        } finally {
+            process.destroy();
+            process.waitFor();
+        }
+    }
+
+    private static void report(String label, List<Long> millis) {
+        List<Long> sorted = millis.stream().sorted().toList();
+        System.out.printf("%s: median %d ms, min %d ms, max %d ms over %d runs%n",
+                label, sorted.get(sorted.size() / 2), sorted.getFirst(), sorted.getLast(), sorted.size());
+    }
+}
@@ -0,0 +1,150 @@
+package no.dervis.batch;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Progress of a batch job: the ids of completed records and how much of the output file
+ * belongs to them.
+ *
+ * <p>The checkpoint is only saved after the output has been flushed, so every id in it has its
+ * result in the first {@link #getOutputBytes()} bytes of the output. Anything written after the
+ * last save is cut off on resume and matched again, so the output never holds duplicates.
+ *
+ * <p>The file is a log with one JSON line per save, holding the ids completed since the save
+ * before, so a save costs as much as its new ids. Once the log holds more ids than its first
+ * line, it is compacted into a single line, which keeps the total cost linear in the number of
+ * records. A line cut off by a crash during a save is ignored on load.
+ */
+public class BatchCheckpoint {
+
+    // One line of the log: the output length at the save and the ids completed since the last one
+    private record PersistedCheckpoint(long outputBytes, List<String> completed) {}
+
+    // Small logs are not worth compacting
+    private static final int MIN_IDS_BEFORE_COMPACTION = 1_000;
+
+    private final Set<String> completed;
+    private final List<String> unsaved = new ArrayList<>();
+    private long outputBytes;
+    private int compactedIds;
+    private int loggedIds;
+    private boolean torn;
+
+    private BatchCheckpoint(Set<String> completed, long outputBytes, int compactedIds, int loggedIds, boolean torn) {
+        this.completed = completed;
+        this.outputBytes = outputBytes;
+        this.compactedIds = compactedIds;
+        this.loggedIds = loggedIds;
+        this.torn = torn;
+    }
+
+    /**
+     * Loads the checkpoint written by {@link #save(Path, ObjectMapper, long)}. A missing file gives an
+     * empty checkpoint.
+     *
+     * @param file The checkpoint file
+     * @param objectMapper Mapper for the checkpoint JSON
+     * @throws IOException If the file exists but cannot be read
+     */
+    public static BatchCheckpoint load(Path file, ObjectMapper objectMapper) throws IOException {
+        if (!Files.exists(file)) {
+            return new BatchCheckpoint(new HashSet<>(), 0, 0, 0, false);
+        }
+        List<String> lines = Files.readAllLines(file).stream().filter(line -> !line.isBlank()).toList();
+        Set<String> completed = new HashSet<>();
+        long outputBytes = 0;
+        int compactedIds = 0;
+        int loggedIds = 0;
+        boolean torn = false;
+        for (int i = 0; i < lines.size(); i++) {
+            PersistedCheckpoint persisted;
+            try {
+                persisted = objectMapper.readValue(lines.get(i), PersistedCheckpoint.class);
+            } catch (JsonProcessingException e) {
+                if (i == lines.size() - 1) {
+                    // The last save was interrupted; the output after the save before is discarded
+                    torn = true;
+                    break;
+                }
+                throw e;
+            }
+            completed.addAll(persisted.completed());
+            outputBytes = persisted.outputBytes();
+            if (i == 0) {
+                compactedIds = persisted.completed().size();
+            } else {
+                loggedIds += persisted.completed().size();
+            }
+        }
+        return new BatchCheckpoint(completed, outputBytes, compactedIds, loggedIds, torn);
+    }
+
+    public synchronized boolean isCompleted(String id) {
+        return completed.contains(id);
+    }
+
+    public synchronized void markCompleted(String id) {
+        if (completed.add(id)) {
+            unsaved.add(id);
+        }
+    }
+
+    public synchronized int getCompletedCount() {
+        return completed.size();
+    }
+
+    /**
+     * Returns the length of the output file at the last save.
+     */
+    public synchronized long getOutputBytes() {
+        return outputBytes;
+    }
+
+    /**
+     * Records the flushed output length and appends the ids completed since the last save to
+     * the checkpoint, compacting it when the appended ids outnumber the compacted ones.
+     *
+     * @param file The checkpoint file
+     * @param objectMapper Mapper for the checkpoint JSON
+     * @param flushedOutputBytes Length of the output file, flushed after the last completed record
+     * @throws IOException If the file cannot be written
+     */
+    public synchronized void save(Path file, ObjectMapper objectMapper, long flushedOutputBytes) throws IOException {
+        outputBytes = flushedOutputBytes;
+        Path parent = file.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+
+        // A torn line is rewritten rather than appended to
+        if (torn || !Files.exists(file)
+                || loggedIds + unsaved.size() > Math.max(compactedIds, MIN_IDS_BEFORE_COMPACTION)) {
+            // Sorted, so the compacted file diffs well between runs
+            Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+            Files.writeString(temp, line(objectMapper, new PersistedCheckpoint(outputBytes,
+                    completed.stream().sorted().toList())));
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            compactedIds = completed.size();
+            loggedIds = 0;
+            torn = false;
+        } else {
+            Files.writeString(file, line(objectMapper, new PersistedCheckpoint(outputBytes, unsaved)),
+                    StandardOpenOption.APPEND);
+            loggedIds += unsaved.size();
+        }
+        unsaved.clear();
+    }
+
+    private static String line(ObjectMapper objectMapper, PersistedCheckpoint checkpoint) throws IOException {
+        return objectMapper.writeValueAsString(checkpoint) + System.lineSeparator();
+    }
+}
@@ -0,0 +1,288 @@
+package no.dervis.batch;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import no.dervis.model.CompetenceGoal;
+import no.dervis.model.GoalMatch;
+import no.dervis.scheduling.SchedulingKey;
+import no.dervis.service.LlmService;
+import no.dervis.service.SubGoalResolver;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs bulk matching over an NDJSON file of developer responses, so that a large run can be
+ * stopped and resumed at any point without repeating model calls.
+ *
+ * <p>Each input line is a JSON object with an {@code id} and a {@code response}. Input is read
+ * one line at a time and at most {@link #setConcurrency(int) concurrency} records are matched
+ * at once, so memory use does not grow with the input. Each result is appended to the output
+ * as one JSON line:
+ * <pre>{"id":"entry-1","matches":[{"competenceGoalId":3,"matchingSubGoals":["3.1","3.4"]}]}</pre>
+ * Completed ids are checkpointed every {@link #setCheckpointInterval(int) interval} results and
+ * at the end. A resumed run skips them; records that failed are not checkpointed and are
+ * matched again. A record whose id already occurred earlier in the input is skipped.
+ */
+public class BatchRunner {
+
+    private static final int DEFAULT_CONCURRENCY = 4;
+    private static final int DEFAULT_CHECKPOINT_INTERVAL = 20;
+
+    private final LlmService llmService;
+    private final ObjectMapper objectMapper;
+    private int concurrency = DEFAULT_CONCURRENCY;
+    private int checkpointInterval = DEFAULT_CHECKPOINT_INTERVAL;
+    private Duration timeout;
+    private String jobName;
+
+    public BatchRunner(LlmService llmService, ObjectMapper objectMapper) {
+        this.llmService = llmService;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Sets how many records are matched at the same time.
+     */
+    public void setConcurrency(int concurrency) {
+        if (concurrency <= 0) {
+            throw new IllegalArgumentException("Concurrency must be positive: " + concurrency);
+        }
+        this.concurrency = concurrency;
+    }
+
+    /**
+     * Sets after how many completed records the output is flushed and the checkpoint saved.
+     */
+    public void setCheckpointInterval(int checkpointInterval) {
+        if (checkpointInterval <= 0) {
+            throw new IllegalArgumentException("Checkpoint interval must be positive: " + checkpointInterval);
+        }
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    /**
+     * Sets the time budget per record, or {@code null} for none. A record that runs out of time
+     * counts as failed and is retried on resume.
+     */
+    public void setTimeout(Duration timeout) {
+        this.timeout = timeout;
+    }
+
+    /**
+     * Sets the name the job's model calls are scheduled under. Jobs with different names share
+     * the batch capacity of a {@link no.dervis.scheduling.RequestScheduler} fairly.
+     *
+     * @param jobName The job name, or {@code null} to use the input file name
+     */
+    public void setJobName(String jobName) {
+        this.jobName = jobName;
+    }
+
+    /**
+     * Returns the checkpoint file used for the given output file.
+     */
+    public static Path checkpointFileFor(Path output) {
+        return output.resolveSibling(output.getFileName() + ".checkpoint");
+    }
+
+    /**
+     * Matches all records of the input that are not completed yet, appending the results to
+     * the output.
+     *
+     * @param input NDJSON file with one {@code {"id", "response"}} object per line
+     * @param output NDJSON file the results are appended to
+     * @param catalog The competence goals to match against
+     * @return Counts of matched, skipped and failed records
+     * @throws IOException If the input cannot be read or the output or checkpoint cannot be written
+     * @throws InterruptedException If the run is interrupted; progress up to the last checkpoint is kept
+     */
+    public BatchSummary run(Path input, Path output, List<CompetenceGoal> catalog)
+            throws IOException, InterruptedException {
+
+        Path checkpointFile = checkpointFileFor(output);
+        BatchCheckpoint checkpoint = BatchCheckpoint.load(checkpointFile, objectMapper);
+        discardUncheckpointedOutput(output, checkpoint.getOutputBytes());
+
+        SubGoalResolver resolver = new SubGoalResolver(catalog);
+        SchedulingKey key = SchedulingKey.batch(jobName != null ? jobName : input.getFileName().toString());
+        Semaphore slots = new Semaphore(concurrency);
+        Set<CompletableFuture<?>> inFlight = ConcurrentHashMap.newKeySet();
+        AtomicInteger matched = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        int records = 0;
+        int skipped = 0;
+        Set<String> seen = new HashSet<>();
+
+        try (BufferedReader reader = Files.newBufferedReader(input);
+             BufferedWriter writer = Files.newBufferedWriter(output,
+                     StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+
+            ResultSink sink = new ResultSink(writer, output, checkpointFile, checkpoint);
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                records++;
+
+                JsonNode record = parseRecord(line);
+                String id = record != null ? record.path("id").asText(null) : null;
+                String response = record != null ? record.path("response").asText(null) : null;
+                if (id == null || response == null) {
+                    System.err.println("Skipping invalid record on line " + lineNumber + " of " + input);
+                    failed.incrementAndGet();
+                    continue;
+                }
+                if (!seen.add(id)) {
+                    System.err.println("Skipping duplicate id " + id + " on line " + lineNumber + " of " + input);
+                    skipped++;
+                    continue;
+                }
+                if (checkpoint.isCompleted(id)) {
+                    skipped++;
+                    continue;
+                }
+
+                slots.acquire();
+                try {
+                    sink.throwIfFailed();
+                } catch (IOException e) {
+                    slots.release();
+                    throw e;
+                }
+                CompletableFuture<?> future = llmService.matchGoalsAsync(response, catalog, timeout, key)
+                        .whenComplete((matches, failure) -> {
+                            try {
+                                if (failure == null) {
+                                    sink.write(id, toResultLine(id, matches, resolver));
+                                    matched.incrementAndGet();
+                                } else {
+                                    Throwable cause = failure.getCause() != null ? failure.getCause() : failure;
+                                    System.err.println("Matching record " + id + " failed: " + cause);
+                                    failed.incrementAndGet();
+                                }
+                            } finally {
+                                slots.release();
+                            }
+                        });
+                inFlight.add(future);
+                future.whenComplete((_, _) -> inFlight.remove(future));
+            }
+
+            // Wait for the records still being matched
+            slots.acquire(concurrency);
+            slots.release(concurrency);
+            sink.throwIfFailed();
+            sink.checkpoint();
+        } catch (InterruptedException e) {
+            inFlight.forEach(future -> future.cancel(true));
+            throw e;
+        }
+
+        return new BatchSummary(records, skipped, matched.get(), failed.get());
+    }
+
+    private JsonNode parseRecord(String line) {
+        try {
+            JsonNode record = objectMapper.readTree(line);
+            return record.isObject() ? record : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private String toResultLine(String id, List<GoalMatch> matches, SubGoalResolver resolver) {
+        ObjectNode result = objectMapper.createObjectNode();
+        result.put("id", id);
+        ArrayNode goals = result.putArray("matches");
+        for (GoalMatch match : matches) {
+            ObjectNode goal = goals.addObject();
+            goal.put("competenceGoalId", match.getGoalId());
+            ArrayNode subGoals = goal.putArray("matchingSubGoals");
+            match.getSubGoals().stream().forEach(index -> subGoals.add(resolver.subGoalCode(match.getGoalId(), index)));
+        }
+        try {
+            return objectMapper.writeValueAsString(result);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to serialize result of record " + id, e);
+        }
+    }
+
+    /**
+     * Cuts off results that were written after the last checkpoint of an interrupted run.
+     */
+    private static void discardUncheckpointedOutput(Path output, long checkpointedBytes) throws IOException {
+        if (Files.exists(output) && Files.size(output) > checkpointedBytes) {
+            try (FileChannel channel = FileChannel.open(output, StandardOpenOption.WRITE)) {
+                channel.truncate(checkpointedBytes);
+            }
+        }
+    }
+
+    /**
+     * Appends result lines from the matching threads and saves the checkpoint every interval.
+     * The first write failure is kept and stops the run.
+     */
+    private final class ResultSink {
+
+        private final BufferedWriter writer;
+        private final Path output;
+        private final Path checkpointFile;
+        private final BatchCheckpoint checkpoint;
+        private int sinceCheckpoint;
+        private IOException failure;
+
+        private ResultSink(BufferedWriter writer, Path output, Path checkpointFile, BatchCheckpoint checkpoint) {
+            this.writer = writer;
+            this.output = output;
+            this.checkpointFile = checkpointFile;
+            this.checkpoint = checkpoint;
+        }
+
+        synchronized void write(String id, String line) {
+            if (failure != null) {
+                return;
+            }
+            try {
+                writer.write(line);
+                writer.newLine();
+                checkpoint.markCompleted(id);
+                if (++sinceCheckpoint >= checkpointInterval) {
+                    checkpoint();
+                }
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+
+        synchronized void checkpoint() throws IOException {
+            writer.flush();
+            checkpoint.save(checkpointFile, objectMapper, Files.size(output));
+            sinceCheckpoint = 0;
+        }
+
+        synchronized void throwIfFailed() throws IOException {
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+}
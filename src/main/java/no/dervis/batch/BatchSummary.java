@@ -0,0 +1,18 @@
+package no.dervis.batch;
+
+/**
+ * Outcome of one batch run.
+ *
+ * @param records Number of records read from the input
+ * @param skipped Records skipped because an earlier run completed them
+ * @param matched Records matched and written in this run
+ * @param failed Records that were invalid or failed to match; they are retried on resume
+ */
+public record BatchSummary(int records, int skipped, int matched, int failed) {
+
+    @Override
+    public String toString() {
+        return String.format("%d records: %d matched, %d skipped as already done, %d failed",
+                records, matched, skipped, failed);
+    }
+}
@@ -0,0 +1,20 @@
+package no.dervis.benchmark;
+
+import no.dervis.model.GoalMatch;
+
+import java.util.List;
+
+/**
+ * A labelled developer response of a benchmark dataset.
+ *
+ * @param id The id of the case in the dataset
+ * @param language The language of the response and of the catalog it is matched against
+ * @param response The developer response
+ * @param expected The goals and subgoals the response should match
+ */
+public record BenchmarkCase(String id, String language, String response, List<GoalMatch> expected) {
+
+    public BenchmarkCase {
+        expected = List.copyOf(expected);
+    }
+}
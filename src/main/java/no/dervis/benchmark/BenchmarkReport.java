@@ -0,0 +1,76 @@
+package no.dervis.benchmark;
+
+import java.io.PrintStream;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Prints benchmark results of several models side by side and picks the model to use.
+ */
+public class BenchmarkReport {
+
+    private static final String SUMMARY_FORMAT = "%-32s %6s %6s %6s %6s %6s %8s %8s %10s %10s %6s%n";
+    private static final String GOAL_FORMAT = "  %-6s %6s %6s %6s %6s %9s%n";
+
+    private final List<BenchmarkResult> results;
+
+    public BenchmarkReport(List<BenchmarkResult> results) {
+        this.results = List.copyOf(results);
+    }
+
+    public List<BenchmarkResult> getResults() {
+        return results;
+    }
+
+    /**
+     * Returns the model with the lowest p95 latency, and then the fewest tokens, among those
+     * whose subgoal F1 score reaches the quality bar.
+     *
+     * @param minSubGoalF1 The lowest acceptable subgoal F1 score, between 0 and 1
+     * @return The model to use, or nothing if no model reaches the bar
+     */
+    public Optional<BenchmarkResult> recommend(double minSubGoalF1) {
+        return results.stream()
+                .filter(result -> result.subGoalScore().f1() >= minSubGoalF1)
+                .min(Comparator.comparingLong((BenchmarkResult result) -> result.latencyPercentile(95))
+                        .thenComparingLong(result -> result.promptTokens() + result.completionTokens()));
+    }
+
+    /**
+     * Prints one summary line per model, followed by the scores of each model per goal.
+     * Precision (P) and recall (R) are shown at goal and at subgoal level.
+     */
+    public void print(PrintStream out) {
+        out.printf(SUMMARY_FORMAT, "Model", "Goal P", "Goal R", "Sub P", "Sub R", "Sub F1",
+                "p50 ms", "p95 ms", "Prompt tok", "Compl tok", "Failed");
+        for (BenchmarkResult result : results) {
+            MatchScore goals = result.goalScore();
+            MatchScore subGoals = result.subGoalScore();
+            out.printf(SUMMARY_FORMAT, label(result), format(goals.precision()), format(goals.recall()),
+                    format(subGoals.precision()), format(subGoals.recall()), format(subGoals.f1()),
+                    result.latencyPercentile(50), result.latencyPercentile(95), "~" + result.promptTokens(),
+                    "~" + result.completionTokens(), result.failures() + "/" + result.cases());
+        }
+
+        for (BenchmarkResult result : results) {
+            out.println();
+            out.println(label(result) + " per goal:");
+            out.printf(GOAL_FORMAT, "Goal", "Goal P", "Goal R", "Sub P", "Sub R", "Expected");
+            result.goalScores().forEach((goalId, goal) -> {
+                MatchScore subGoals = result.subGoalScores().get(goalId);
+                out.printf(GOAL_FORMAT, goalId, format(goal.precision()), format(goal.recall()),
+                        format(subGoals.precision()), format(subGoals.recall()),
+                        subGoals.truePositives() + subGoals.falseNegatives());
+            });
+        }
+    }
+
+    private static String label(BenchmarkResult result) {
+        return result.target().provider() + "/" + result.target().modelName();
+    }
+
+    private static String format(double value) {
+        return Double.isNaN(value) ? "-" : String.format("%.2f", value);
+    }
+}
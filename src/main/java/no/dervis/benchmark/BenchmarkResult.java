@@ -0,0 +1,69 @@
+package no.dervis.benchmark;
+
+import no.dervis.service.LlmService.ModelTarget;
+
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Quality and cost of one model on a benchmark dataset.
+ *
+ * @param target The model that was benchmarked
+ * @param cases The number of cases run
+ * @param failures The cases whose matching failed; they count as matching nothing
+ * @param goalScores Goal-level scores per goal id
+ * @param subGoalScores Subgoal-level scores per goal id
+ * @param latenciesMillis The latency of each case that did not fail
+ * @param promptTokens The estimated prompt tokens sent
+ * @param completionTokens The estimated completion tokens received
+ */
+public record BenchmarkResult(
+        ModelTarget target,
+        int cases,
+        int failures,
+        SortedMap<Integer, MatchScore> goalScores,
+        SortedMap<Integer, MatchScore> subGoalScores,
+        List<Long> latenciesMillis,
+        long promptTokens,
+        long completionTokens) {
+
+    public BenchmarkResult {
+        goalScores = new TreeMap<>(goalScores);
+        subGoalScores = new TreeMap<>(subGoalScores);
+        latenciesMillis = latenciesMillis.stream().sorted().toList();
+    }
+
+    /**
+     * Returns the goal-level score over all goals, counting each goal of each case once.
+     */
+    public MatchScore goalScore() {
+        return total(goalScores);
+    }
+
+    /**
+     * Returns the subgoal-level score over all goals, counting each subgoal of each case once.
+     */
+    public MatchScore subGoalScore() {
+        return total(subGoalScores);
+    }
+
+    /**
+     * Returns the latency below which the given percentage of cases finished, by the
+     * nearest-rank method, or {@code 0} if every case failed.
+     *
+     * @param percentile The percentile, e.g. {@code 95}
+     */
+    public long latencyPercentile(double percentile) {
+        if (latenciesMillis.isEmpty()) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(percentile / 100 * latenciesMillis.size());
+        return latenciesMillis.get(Math.clamp(rank - 1, 0, latenciesMillis.size() - 1));
+    }
+
+    private static MatchScore total(Map<Integer, MatchScore> scores) {
+        return scores.values().stream().reduce(MatchScore.EMPTY, MatchScore::plus);
+    }
+}
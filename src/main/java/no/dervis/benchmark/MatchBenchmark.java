@@ -0,0 +1,232 @@
+package no.dervis.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import no.dervis.model.CompetenceGoal;
+import no.dervis.model.GoalMatch;
+import no.dervis.service.CompetenceGoalService;
+import no.dervis.service.Deadline;
+import no.dervis.service.LlmService;
+import no.dervis.service.LlmService.ModelTarget;
+import no.dervis.service.ModelRouter;
+import no.dervis.service.RoutingRule;
+import no.dervis.service.SubGoalResolver;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Runs a labelled dataset of developer responses through the matching pipeline of an
+ * {@link LlmService}, to compare models on matching quality, latency and tokens.
+ *
+ * <p>Each dataset line is a JSON object with an {@code id}, a {@code language} ({@code en} or
+ * {@code no}, default {@code en}), a {@code response} and the {@code expected} matches, in the
+ * same form as the results of a batch run:
+ * <pre>{"id":"case-1","language":"en","response":"...","expected":[{"competenceGoalId":1,"matchingSubGoals":["1.6","1.7"]}]}</pre>
+ *
+ * <p>Cases run one at a time, so latencies are not distorted by queueing. Each model gets one
+ * untimed warm-up call first, so that loading a local model is not counted as the latency of
+ * the first case. Tokens are estimated with the service's token estimator.
+ */
+public class MatchBenchmark {
+
+    private static final String DEFAULT_LANGUAGE = "en";
+    private static final String BENCHMARK_RULE = "benchmark";
+
+    private final LlmService llmService;
+    private final CompetenceGoalService goalService;
+    private final ObjectMapper objectMapper;
+    private final Map<String, List<CompetenceGoal>> catalogs = new HashMap<>();
+    private Duration timeout;
+
+    public MatchBenchmark(LlmService llmService, CompetenceGoalService goalService, ObjectMapper objectMapper) {
+        this.llmService = llmService;
+        this.goalService = goalService;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Sets the time budget per case, or {@code null} for none. A case that runs out of time
+     * counts as failed.
+     */
+    public void setTimeout(Duration timeout) {
+        this.timeout = timeout;
+    }
+
+    /**
+     * Reads a dataset and resolves its expected subgoal codes against the catalog of each
+     * case's language.
+     *
+     * @throws IOException If the file cannot be read, or a case is malformed or expects a goal
+     *                     or subgoal that is not in its catalog
+     */
+    public List<BenchmarkCase> loadDataset(Path file) throws IOException {
+        List<BenchmarkCase> cases = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(file)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (!line.isBlank()) {
+                    cases.add(parseCase(objectMapper.readTree(line), file + ":" + lineNumber));
+                }
+            }
+        }
+        if (cases.isEmpty()) {
+            throw new IOException("No benchmark cases in " + file);
+        }
+        return cases;
+    }
+
+    /**
+     * Matches every case with the given model and scores the results.
+     *
+     * <p>The model is picked with a {@link ModelRouter} holding a single rule for it; the
+     * service's own router is put back afterwards.
+     *
+     * @param target The model to benchmark; its provider must be configured in the service
+     * @param cases The labelled cases
+     * @return The scores, latencies and tokens of the model
+     * @throws IOException If a catalog cannot be loaded
+     * @throws InterruptedException If the run is interrupted
+     */
+    public BenchmarkResult run(ModelTarget target, List<BenchmarkCase> cases) throws IOException, InterruptedException {
+        ModelRouter previous = llmService.getModelRouter();
+        try {
+            llmService.setModelRouter(routerFor(target));
+            BenchmarkCase first = cases.getFirst();
+            try {
+                llmService.matchGoals(first.response(), catalog(first.language()), deadline());
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Warm-up of " + target.modelName() + " failed: " + e.getMessage());
+            }
+
+            // A fresh router, so the warm-up call is not counted
+            ModelRouter router = routerFor(target);
+            llmService.setModelRouter(router);
+            Map<Integer, MatchScore> goalScores = new HashMap<>();
+            Map<Integer, MatchScore> subGoalScores = new HashMap<>();
+            List<Long> latencies = new ArrayList<>();
+            int failures = 0;
+            for (BenchmarkCase benchmarkCase : cases) {
+                List<GoalMatch> matches;
+                long started = System.nanoTime();
+                try {
+                    matches = llmService.matchGoals(benchmarkCase.response(), catalog(benchmarkCase.language()),
+                            deadline());
+                    latencies.add((System.nanoTime() - started) / 1_000_000);
+                } catch (IOException | RuntimeException e) {
+                    // Provider clients report connection failures as unchecked exceptions
+                    System.err.println("Case " + benchmarkCase.id() + " failed on " + target.modelName() + ": "
+                            + e.getMessage());
+                    failures++;
+                    matches = List.of();
+                }
+                score(benchmarkCase.expected(), matches, goalScores, subGoalScores);
+            }
+
+            long promptTokens = 0;
+            long completionTokens = 0;
+            for (ModelRouter.TargetMetrics metrics : router.getMetrics()) {
+                promptTokens += metrics.promptTokens();
+                completionTokens += metrics.completionTokens();
+            }
+            return new BenchmarkResult(target, cases.size(), failures, new TreeMap<>(goalScores),
+                    new TreeMap<>(subGoalScores), latencies, promptTokens, completionTokens);
+        } finally {
+            llmService.setModelRouter(previous);
+        }
+    }
+
+    /**
+     * Adds the scores of one case, per goal id, at goal and at subgoal level.
+     *
+     * @param expected The expected matches of the case
+     * @param actual The matches reported by the model
+     * @param goalScores Goal-level scores to add to
+     * @param subGoalScores Subgoal-level scores to add to
+     */
+    static void score(List<GoalMatch> expected, List<GoalMatch> actual,
+                      Map<Integer, MatchScore> goalScores, Map<Integer, MatchScore> subGoalScores) {
+        Map<Integer, BitSet> expectedByGoal = bySubGoals(expected);
+        Map<Integer, BitSet> actualByGoal = bySubGoals(actual);
+        Set<Integer> goalIds = new TreeSet<>(expectedByGoal.keySet());
+        goalIds.addAll(actualByGoal.keySet());
+
+        for (int goalId : goalIds) {
+            BitSet wanted = expectedByGoal.getOrDefault(goalId, new BitSet());
+            BitSet reported = actualByGoal.getOrDefault(goalId, new BitSet());
+            boolean isExpected = expectedByGoal.containsKey(goalId);
+            boolean isReported = actualByGoal.containsKey(goalId);
+            goalScores.merge(goalId, new MatchScore(isExpected && isReported ? 1 : 0,
+                    isExpected ? 0 : 1, isReported ? 0 : 1), MatchScore::plus);
+
+            BitSet correct = (BitSet) wanted.clone();
+            correct.and(reported);
+            subGoalScores.merge(goalId, new MatchScore(correct.cardinality(),
+                    reported.cardinality() - correct.cardinality(),
+                    wanted.cardinality() - correct.cardinality()), MatchScore::plus);
+        }
+    }
+
+    private static Map<Integer, BitSet> bySubGoals(List<GoalMatch> matches) {
+        Map<Integer, BitSet> byGoal = new HashMap<>();
+        for (GoalMatch match : SubGoalResolver.mergeByGoal(matches)) {
+            byGoal.put(match.getGoalId(), match.getSubGoals());
+        }
+        return byGoal;
+    }
+
+    private BenchmarkCase parseCase(JsonNode node, String location) throws IOException {
+        String id = node.path("id").asText(location);
+        String language = node.path("language").asText(DEFAULT_LANGUAGE);
+        String response = node.path("response").asText("");
+        if (response.isBlank()) {
+            throw new IOException("Benchmark case " + id + " at " + location + " has no response");
+        }
+
+        SubGoalResolver resolver = new SubGoalResolver(catalog(language));
+        List<GoalMatch> expected = new ArrayList<>();
+        for (JsonNode goal : node.path("expected")) {
+            int goalId = goal.path("competenceGoalId").asInt(-1);
+            List<String> codes = new ArrayList<>();
+            goal.path("matchingSubGoals").forEach(code -> codes.add(code.asText()));
+            GoalMatch match = resolver.resolveMatch(goalId, codes);
+            if (match == null || match.getSubGoals().cardinality() != codes.size()) {
+                throw new IOException("Benchmark case " + id + " at " + location + " expects goal " + goalId
+                        + " with subgoals " + codes + ", which are not all in the '" + language + "' catalog");
+            }
+            expected.add(match);
+        }
+        return new BenchmarkCase(id, language, response, expected);
+    }
+
+    private List<CompetenceGoal> catalog(String language) throws IOException {
+        List<CompetenceGoal> catalog = catalogs.get(language);
+        if (catalog == null) {
+            catalog = goalService.loadCompetenceGoals(language);
+            catalogs.put(language, catalog);
+        }
+        return catalog;
+    }
+
+    private Deadline deadline() {
+        return timeout == null ? Deadline.none() : Deadline.after(timeout);
+    }
+
+    private static ModelRouter routerFor(ModelTarget target) {
+        return new ModelRouter(List.of(
+                new RoutingRule(BENCHMARK_RULE, target.provider(), target.modelName(), null, null, null)));
+    }
+}
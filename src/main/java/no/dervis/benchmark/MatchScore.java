@@ -0,0 +1,43 @@
+package no.dervis.benchmark;
+
+/**
+ * Counts of correct, spurious and missed matches, from which precision and recall follow.
+ *
+ * @param truePositives Matches that were expected
+ * @param falsePositives Matches that were not expected
+ * @param falseNegatives Expected matches that were missed
+ */
+public record MatchScore(int truePositives, int falsePositives, int falseNegatives) {
+
+    public static final MatchScore EMPTY = new MatchScore(0, 0, 0);
+
+    public MatchScore plus(MatchScore other) {
+        return new MatchScore(truePositives + other.truePositives, falsePositives + other.falsePositives,
+                falseNegatives + other.falseNegatives);
+    }
+
+    /**
+     * Returns the share of reported matches that were expected, or {@code NaN} if none were reported.
+     */
+    public double precision() {
+        return ratio(truePositives, truePositives + falsePositives);
+    }
+
+    /**
+     * Returns the share of expected matches that were reported, or {@code NaN} if none were expected.
+     */
+    public double recall() {
+        return ratio(truePositives, truePositives + falseNegatives);
+    }
+
+    /**
+     * Returns the harmonic mean of precision and recall, or {@code 0} if there were no correct matches.
+     */
+    public double f1() {
+        return truePositives == 0 ? 0 : 2.0 * truePositives / (2 * truePositives + falsePositives + falseNegatives);
+    }
+
+    private static double ratio(int count, int total) {
+        return total == 0 ? Double.NaN : (double) count / total;
+    }
+}
@@ -0,0 +1,41 @@
+package no.dervis.cache;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Storage behind a {@link ResultCache}. Implementations store opaque text values under text
+ * keys and drop them once their time to live has passed.
+ *
+ * <p>Backends may be shared between several instances of the application, so that a result
+ * computed on one node is a hit on all others. Failures are reported as {@link IOException}s;
+ * the cache treats them as misses instead of failing the request.
+ */
+public interface CacheBackend extends AutoCloseable {
+
+    /**
+     * Returns the value stored under the key, if it is present and not expired.
+     *
+     * @throws IOException If the backend cannot be reached
+     */
+    Optional<String> get(String key) throws IOException;
+
+    /**
+     * Stores a value, replacing any earlier value of the key.
+     *
+     * @param ttl How long the value is kept
+     * @throws IOException If the backend cannot be reached
+     */
+    void put(String key, String value, Duration ttl) throws IOException;
+
+    /**
+     * Returns a name identifying this backend, such as its address. Sharding places keys by
+     * these names, so they must be the same on every node.
+     */
+    String name();
+
+    @Override
+    default void close() {
+    }
+}
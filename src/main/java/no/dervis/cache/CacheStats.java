@@ -0,0 +1,22 @@
+package no.dervis.cache;
+
+/**
+ * Hit statistics of a cache.
+ *
+ * @param lookups The number of lookups
+ * @param hits The number of lookups answered from the cache
+ */
+public record CacheStats(long lookups, long hits) {
+
+    /**
+     * Returns the share of lookups answered from the cache, between 0 and 1.
+     */
+    public double hitRate() {
+        return lookups == 0 ? 0.0 : (double) hits / lookups;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d of %d lookups answered from cache (%.1f%%)", hits, lookups, hitRate() * 100);
+    }
+}
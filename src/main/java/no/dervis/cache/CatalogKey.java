@@ -0,0 +1,58 @@
+package no.dervis.cache;
+
+import no.dervis.model.CompetenceGoal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Language-neutral identity of a catalog's structure, used to scope cached match results.
+ *
+ * <p>Cached results are goal ids and subgoal indices, so they are valid for any catalog with
+ * the same goals and the same subgoal code at each index, whatever its language. The English
+ * and Norwegian catalogs have the same key, so they share cached results.
+ */
+public final class CatalogKey {
+
+    private static final Pattern SUBGOAL_CODE_PATTERN = Pattern.compile("^\\s*\\d+\\.(\\d+)\\b");
+
+    private CatalogKey() {
+    }
+
+    /**
+     * Returns the key of the given catalog, e.g. {@code "1:22,2:4,3:5"}. A goal whose subgoals
+     * are not numbered 1 to n in order lists its codes instead, e.g. {@code "4:[1,3,2]"}.
+     */
+    public static String of(List<CompetenceGoal> competenceGoals) {
+        StringBuilder key = new StringBuilder();
+        for (CompetenceGoal goal : competenceGoals) {
+            if (!key.isEmpty()) {
+                key.append(',');
+            }
+            List<String> subGoals = goal.getSubGoals() != null ? goal.getSubGoals() : List.of();
+            List<Integer> codes = codes(subGoals);
+            key.append(goal.getId()).append(':').append(isSequential(codes) ? Integer.toString(codes.size()) : codes);
+        }
+        return key.toString();
+    }
+
+    private static List<Integer> codes(List<String> subGoals) {
+        List<Integer> codes = new ArrayList<>(subGoals.size());
+        for (int i = 0; i < subGoals.size(); i++) {
+            Matcher code = SUBGOAL_CODE_PATTERN.matcher(subGoals.get(i));
+            codes.add(code.find() ? Integer.parseInt(code.group(1)) : i + 1);
+        }
+        return codes;
+    }
+
+    private static boolean isSequential(List<Integer> codes) {
+        for (int i = 0; i < codes.size(); i++) {
+            if (codes.get(i) != i + 1) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,82 @@
+package no.dervis.cache;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Cache backend storing each value in its own file of a directory. Survives restarts, and can
+ * be shared by instances on the same host or on a shared file system.
+ *
+ * <p>A file holds the expiry time in epoch milliseconds on its first line and the value after
+ * it. Files are written to a temporary file first and moved into place, so readers never see
+ * a partly written value. Expired files are deleted when they are read.
+ */
+public class DiskCacheBackend implements CacheBackend {
+
+    private final Path directory;
+
+    /**
+     * Creates a backend, creating the directory if needed.
+     *
+     * @throws IOException If the directory cannot be created
+     */
+    public DiskCacheBackend(Path directory) throws IOException {
+        this.directory = Files.createDirectories(directory);
+    }
+
+    @Override
+    public Optional<String> get(String key) throws IOException {
+        Path file = fileFor(key);
+        String content;
+        try {
+            content = Files.readString(file, StandardCharsets.UTF_8);
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        }
+        int newline = content.indexOf('\n');
+        long expiresAt;
+        try {
+            expiresAt = newline > 0 ? Long.parseLong(content.substring(0, newline)) : 0;
+        } catch (NumberFormatException e) {
+            expiresAt = 0;
+        }
+        if (expiresAt <= System.currentTimeMillis()) {
+            Files.deleteIfExists(file);
+            return Optional.empty();
+        }
+        return Optional.of(content.substring(newline + 1));
+    }
+
+    @Override
+    public void put(String key, String value, Duration ttl) throws IOException {
+        Path file = fileFor(key);
+        Path temp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            Files.writeString(temp, (System.currentTimeMillis() + ttl.toMillis()) + "\n" + value,
+                    StandardCharsets.UTF_8);
+            try {
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    @Override
+    public String name() {
+        return "disk:" + directory;
+    }
+
+    private Path fileFor(String key) {
+        return directory.resolve(ResultCache.hash(key) + ".entry");
+    }
+}
@@ -0,0 +1,58 @@
+package no.dervis.cache;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Optional;
+
+/**
+ * Cache backend holding values in this process. Only useful for a single instance; the least
+ * recently used values are evicted beyond the configured capacity.
+ */
+public class MemoryCacheBackend implements CacheBackend {
+
+    private record Entry(String value, long expiresAtMillis) {}
+
+    private final int capacity;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Creates a backend.
+     *
+     * @param capacity Maximum number of stored values
+     */
+    public MemoryCacheBackend(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+    }
+
+    @Override
+    public synchronized Optional<String> get(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return Optional.empty();
+        }
+        if (entry.expiresAtMillis <= System.currentTimeMillis()) {
+            entries.remove(key);
+            return Optional.empty();
+        }
+        return Optional.of(entry.value);
+    }
+
+    @Override
+    public synchronized void put(String key, String value, Duration ttl) {
+        entries.put(key, new Entry(value, System.currentTimeMillis() + ttl.toMillis()));
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (entries.size() > capacity) {
+            eldest.next();
+            eldest.remove();
+        }
+    }
+
+    @Override
+    public String name() {
+        return "memory";
+    }
+}
@@ -0,0 +1,204 @@
+package no.dervis.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentLinkedDeque;
+
+/**
+ * Cache backend on a server speaking the Redis protocol (RESP), such as Redis or Valkey, so
+ * that all instances of the application share one cache.
+ *
+ * <p>Only {@code GET} and {@code SET ... PX} are used. Connections are kept open and reused;
+ * a connection that fails is closed and replaced by a new one on the next call.
+ */
+public class RedisCacheBackend implements CacheBackend {
+
+    private static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(2);
+    private static final int MAX_IDLE_CONNECTIONS = 8;
+
+    private final String host;
+    private final int port;
+    private final int timeoutMillis;
+    private final ConcurrentLinkedDeque<Connection> idle = new ConcurrentLinkedDeque<>();
+    private volatile boolean closed;
+
+    private static final class Connection implements AutoCloseable {
+        private final Socket socket;
+        private final InputStream in;
+        private final OutputStream out;
+
+        private Connection(Socket socket) throws IOException {
+            this.socket = socket;
+            this.in = new BufferedInputStream(socket.getInputStream());
+            this.out = new BufferedOutputStream(socket.getOutputStream());
+        }
+
+        @Override
+        public void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Nothing left to release
+            }
+        }
+    }
+
+    public RedisCacheBackend(String host, int port) {
+        this(host, port, DEFAULT_TIMEOUT);
+    }
+
+    /**
+     * Creates a backend.
+     *
+     * @param host The server host
+     * @param port The server port
+     * @param timeout Timeout for connecting and for each reply
+     */
+    public RedisCacheBackend(String host, int port, Duration timeout) {
+        this.host = host;
+        this.port = port;
+        this.timeoutMillis = Math.toIntExact(timeout.toMillis());
+    }
+
+    /**
+     * Creates a backend from a URI like {@code redis://cache.internal:6379}.
+     *
+     * @throws IllegalArgumentException If the URI is not a {@code redis} URI with a host
+     */
+    public static RedisCacheBackend fromUri(String uri) {
+        URI parsed = URI.create(uri);
+        if (!"redis".equals(parsed.getScheme()) || parsed.getHost() == null) {
+            throw new IllegalArgumentException("Not a redis://host:port URI: " + uri);
+        }
+        return new RedisCacheBackend(parsed.getHost(), parsed.getPort() > 0 ? parsed.getPort() : 6379);
+    }
+
+    @Override
+    public Optional<String> get(String key) throws IOException {
+        return Optional.ofNullable(execute("GET", key));
+    }
+
+    @Override
+    public void put(String key, String value, Duration ttl) throws IOException {
+        execute("SET", key, value, "PX", Long.toString(Math.max(1, ttl.toMillis())));
+    }
+
+    @Override
+    public String name() {
+        return "redis://" + host + ":" + port;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        Connection connection;
+        while ((connection = idle.poll()) != null) {
+            connection.close();
+        }
+    }
+
+    /**
+     * Sends a command and returns its reply: the text of a simple or bulk string reply, the
+     * number of an integer reply, or {@code null} for a nil reply.
+     */
+    private String execute(String... command) throws IOException {
+        if (closed) {
+            throw new IOException("Cache backend " + name() + " is closed");
+        }
+        Connection connection = idle.poll();
+        if (connection == null) {
+            connection = connect();
+        }
+        try {
+            writeCommand(connection.out, command);
+            String reply = readReply(connection.in);
+            if (closed || idle.size() >= MAX_IDLE_CONNECTIONS) {
+                connection.close();
+            } else {
+                idle.push(connection);
+            }
+            return reply;
+        } catch (IOException e) {
+            connection.close();
+            throw e;
+        } catch (NumberFormatException e) {
+            connection.close();
+            throw new IOException("Malformed reply from " + name(), e);
+        }
+    }
+
+    private Connection connect() throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(host, port), timeoutMillis);
+            socket.setSoTimeout(timeoutMillis);
+            socket.setTcpNoDelay(true);
+            return new Connection(socket);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    private static void writeCommand(OutputStream out, String... command) throws IOException {
+        out.write(("*" + command.length + "\r\n").getBytes(StandardCharsets.US_ASCII));
+        for (String part : command) {
+            byte[] bytes = part.getBytes(StandardCharsets.UTF_8);
+            out.write(("$" + bytes.length + "\r\n").getBytes(StandardCharsets.US_ASCII));
+            out.write(bytes);
+            out.write('\r');
+            out.write('\n');
+        }
+        out.flush();
+    }
+
+    private static String readReply(InputStream in) throws IOException {
+        int type = in.read();
+        if (type < 0) {
+            throw new EOFException("Connection closed by server");
+        }
+        String line = readLine(in);
+        return switch (type) {
+            case '+', ':' -> line;
+            case '-' -> throw new IOException("Server error: " + line);
+            case '$' -> {
+                int length = Integer.parseInt(line);
+                if (length < 0) {
+                    yield null;
+                }
+                byte[] bytes = in.readNBytes(length);
+                if (bytes.length < length || in.read() != '\r' || in.read() != '\n') {
+                    throw new EOFException("Truncated reply");
+                }
+                yield new String(bytes, StandardCharsets.UTF_8);
+            }
+            default -> throw new IOException("Unexpected reply type '" + (char) type + "'");
+        };
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != '\r') {
+            if (b < 0) {
+                throw new EOFException("Truncated reply");
+            }
+            line.write(b);
+        }
+        if (in.read() != '\n') {
+            throw new IOException("Malformed reply");
+        }
+        return line.toString(StandardCharsets.UTF_8);
+    }
+}
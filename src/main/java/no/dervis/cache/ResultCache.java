@@ -0,0 +1,207 @@
+package no.dervis.cache;
+
+import no.dervis.model.GoalMatch;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Cache of match results for exact repeats of a developer response, stored in a pluggable
+ * {@link CacheBackend} so it can be shared by all instances of the application.
+ *
+ * <p>Lookups read through the cache: a miss runs the match and writes the result before it
+ * is returned. Keys are a hash of the scope (catalog, provider and model) and the response
+ * with its whitespace normalized. Values list goal ids and subgoal indices, which are the
+ * same in every language of a catalog. A backend that fails is reported and treated as a
+ * miss, so an unreachable cache slows matching down but never fails it.
+ */
+public class ResultCache {
+
+    /** Default time a result is kept. */
+    public static final Duration DEFAULT_TTL = Duration.ofHours(24);
+    private static final String KEY_PREFIX = "pensumai:match:";
+    private static final Pattern WHITESPACE_PATTERN = Pattern.compile("\\s+");
+
+    /**
+     * Computes a result on a cache miss.
+     */
+    @FunctionalInterface
+    public interface Loader {
+        List<GoalMatch> load() throws IOException, InterruptedException;
+    }
+
+    private final CacheBackend backend;
+    private final Duration ttl;
+    private final AtomicLong lookups = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private volatile boolean failing;
+
+    public ResultCache(CacheBackend backend) {
+        this(backend, DEFAULT_TTL);
+    }
+
+    /**
+     * Creates a cache.
+     *
+     * @param backend Where results are stored
+     * @param ttl How long a result is kept
+     */
+    public ResultCache(CacheBackend backend, Duration ttl) {
+        if (ttl.isNegative() || ttl.isZero()) {
+            throw new IllegalArgumentException("Time to live must be positive: " + ttl);
+        }
+        this.backend = backend;
+        this.ttl = ttl;
+    }
+
+    public CacheBackend getBackend() {
+        return backend;
+    }
+
+    /**
+     * Returns the cached result of the response, or computes and caches it.
+     *
+     * @param scope The catalog and model the result belongs to
+     * @param developerResponse The response to match
+     * @param loader Matches the response on a miss
+     * @return The cached or computed matches
+     * @throws IOException If the loader fails
+     * @throws InterruptedException If the loader is interrupted
+     */
+    public List<GoalMatch> getOrLoad(String scope, String developerResponse, Loader loader)
+            throws IOException, InterruptedException {
+        Optional<List<GoalMatch>> cached = get(scope, developerResponse);
+        if (cached.isPresent()) {
+            return cached.get();
+        }
+        List<GoalMatch> matches = loader.load();
+        put(scope, developerResponse, matches);
+        return matches;
+    }
+
+    /**
+     * Returns the cached result of the response, if there is one.
+     */
+    public Optional<List<GoalMatch>> get(String scope, String developerResponse) {
+        lookups.incrementAndGet();
+        try {
+            Optional<List<GoalMatch>> cached = backend.get(key(scope, developerResponse)).flatMap(ResultCache::decode);
+            recovered();
+            cached.ifPresent(_ -> hits.incrementAndGet());
+            return cached;
+        } catch (IOException e) {
+            failed(e);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Caches the result of the response.
+     */
+    public void put(String scope, String developerResponse, List<GoalMatch> matches) {
+        try {
+            backend.put(key(scope, developerResponse), encode(matches), ttl);
+            recovered();
+        } catch (IOException e) {
+            failed(e);
+        }
+    }
+
+    /**
+     * Returns how often lookups were answered from the cache.
+     */
+    public CacheStats getStats() {
+        return new CacheStats(lookups.get(), hits.get());
+    }
+
+    /**
+     * Returns the key a result is stored under.
+     */
+    static String key(String scope, String developerResponse) {
+        String normalized = WHITESPACE_PATTERN.matcher(developerResponse.strip()).replaceAll(" ");
+        return KEY_PREFIX + hash(scope + "\n" + normalized);
+    }
+
+    /**
+     * Encodes matches as {@code goalId:index,index;goalId:index}.
+     */
+    static String encode(List<GoalMatch> matches) {
+        StringBuilder value = new StringBuilder();
+        for (GoalMatch match : matches) {
+            if (!value.isEmpty()) {
+                value.append(';');
+            }
+            value.append(match.getGoalId()).append(':');
+            BitSet subGoals = match.getSubGoals();
+            for (int i = subGoals.nextSetBit(0); i >= 0; i = subGoals.nextSetBit(i + 1)) {
+                value.append(i).append(i == subGoals.length() - 1 ? "" : ",");
+            }
+        }
+        return value.toString();
+    }
+
+    /**
+     * Decodes a value written by {@link #encode(List)}, or returns nothing if it is malformed.
+     */
+    static Optional<List<GoalMatch>> decode(String value) {
+        List<GoalMatch> matches = new ArrayList<>();
+        if (value.isEmpty()) {
+            return Optional.of(matches);
+        }
+        try {
+            for (String entry : value.split(";")) {
+                int colon = entry.indexOf(':');
+                BitSet subGoals = new BitSet();
+                if (colon < entry.length() - 1) {
+                    for (String index : entry.substring(colon + 1).split(",")) {
+                        subGoals.set(Integer.parseInt(index));
+                    }
+                }
+                matches.add(new GoalMatch(Integer.parseInt(entry.substring(0, colon)), subGoals));
+            }
+        } catch (RuntimeException e) {
+            return Optional.empty();
+        }
+        return Optional.of(List.copyOf(matches));
+    }
+
+    /**
+     * Returns the SHA-256 hash of the text, in hex.
+     */
+    static String hash(String text) {
+        return HexFormat.of().formatHex(digest(text));
+    }
+
+    static byte[] digest(String text) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private void failed(IOException e) {
+        if (!failing) {
+            failing = true;
+            System.err.println("Result cache " + backend.name() + " unavailable, matching without it: "
+                    + e.getMessage());
+        }
+    }
+
+    private void recovered() {
+        if (failing) {
+            failing = false;
+            System.err.println("Result cache " + backend.name() + " is available again");
+        }
+    }
+}
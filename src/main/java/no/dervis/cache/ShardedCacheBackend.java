@@ -0,0 +1,75 @@
+package no.dervis.cache;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * Spreads keys over several backends by consistent hashing.
+ *
+ * <p>Each shard is placed at many points of a hash ring, derived from its
+ * {@link CacheBackend#name() name}, and a key belongs to the first shard after the key's own
+ * hash. Every node configured with the same shards therefore sends a key to the same shard,
+ * and adding or removing a shard only moves the keys of about one shard's share of the ring.
+ */
+public class ShardedCacheBackend implements CacheBackend {
+
+    private static final int POINTS_PER_SHARD = 128;
+
+    private final List<CacheBackend> shards;
+    private final TreeMap<Long, CacheBackend> ring = new TreeMap<>();
+
+    /**
+     * Creates a sharded backend.
+     *
+     * @param shards The backends to spread keys over, with distinct names
+     */
+    public ShardedCacheBackend(List<CacheBackend> shards) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("At least one shard is required");
+        }
+        this.shards = List.copyOf(shards);
+        for (CacheBackend shard : this.shards) {
+            for (int point = 0; point < POINTS_PER_SHARD; point++) {
+                ring.put(position(shard.name() + "#" + point), shard);
+            }
+        }
+    }
+
+    /**
+     * Returns the shard a key belongs to.
+     */
+    public CacheBackend shardFor(String key) {
+        Map.Entry<Long, CacheBackend> entry = ring.ceilingEntry(position(key));
+        return entry != null ? entry.getValue() : ring.firstEntry().getValue();
+    }
+
+    @Override
+    public Optional<String> get(String key) throws IOException {
+        return shardFor(key).get(key);
+    }
+
+    @Override
+    public void put(String key, String value, Duration ttl) throws IOException {
+        shardFor(key).put(key, value, ttl);
+    }
+
+    @Override
+    public String name() {
+        return shards.stream().map(CacheBackend::name).collect(Collectors.joining(",", "sharded[", "]"));
+    }
+
+    @Override
+    public void close() {
+        shards.forEach(CacheBackend::close);
+    }
+
+    private static long position(String text) {
+        return ByteBuffer.wrap(ResultCache.digest(text)).getLong();
+    }
+}
@@ -0,0 +1,82 @@
+package no.dervis.cache;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * 64-bit SimHash signatures of free text, for finding near-duplicate developer responses.
+ *
+ * <p>The text is normalized to lower-case words and split into overlapping word shingles.
+ * Each shingle votes on every bit of the signature with its 64-bit hash, weighted by how often
+ * it occurs. Texts that share most shingles get signatures with a small Hamming distance, so
+ * lightly edited copies of the same description end up close to each other.
+ */
+public final class SimHash {
+
+    private static final Pattern NON_WORD_PATTERN = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final int SHINGLE_WORDS = 3;
+
+    private SimHash() {
+    }
+
+    /**
+     * Computes the signature of the text.
+     */
+    public static long signature(String text) {
+        String[] words = NON_WORD_PATTERN.split(text.toLowerCase(Locale.ROOT).strip());
+        Map<String, Integer> shingles = new HashMap<>();
+        if (words.length < SHINGLE_WORDS) {
+            shingles.put(String.join(" ", words), 1);
+        } else {
+            for (int i = 0; i + SHINGLE_WORDS <= words.length; i++) {
+                StringBuilder shingle = new StringBuilder(words[i]);
+                for (int j = 1; j < SHINGLE_WORDS; j++) {
+                    shingle.append(' ').append(words[i + j]);
+                }
+                shingles.merge(shingle.toString(), 1, Integer::sum);
+            }
+        }
+
+        int[] votes = new int[64];
+        shingles.forEach((shingle, weight) -> {
+            long hash = hash64(shingle);
+            for (int bit = 0; bit < 64; bit++) {
+                votes[bit] += ((hash >>> bit) & 1L) != 0 ? weight : -weight;
+            }
+        });
+
+        long signature = 0;
+        for (int bit = 0; bit < 64; bit++) {
+            if (votes[bit] > 0) {
+                signature |= 1L << bit;
+            }
+        }
+        return signature;
+    }
+
+    /**
+     * Returns the similarity of two signatures, between 0 (opposite) and 1 (identical).
+     */
+    public static double similarity(long a, long b) {
+        return 1.0 - Long.bitCount(a ^ b) / 64.0;
+    }
+
+    /**
+     * FNV-1a over the UTF-16 code units followed by a MurmurHash3 finalizer, for well spread bits.
+     */
+    static long hash64(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,154 @@
+package no.dervis.cache;
+
+import no.dervis.model.GoalMatch;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process cache of match results, keyed by SimHash signatures of developer responses.
+ *
+ * <p>A lookup returns the result of the most similar earlier response when its signature is
+ * at least as similar as the configured threshold, so lightly edited copies of a description
+ * do not need another LLM call. Signatures are indexed in bands (locality-sensitive hashing):
+ * with {@code d} allowed differing bits the signature is split into {@code d + 1} bands, and
+ * any signature within distance {@code d} shares at least one band exactly, so lookups only
+ * compare a handful of candidates. The least recently used entries are evicted beyond the
+ * configured capacity.
+ */
+public class SimilarityCache {
+
+    /** Default minimum signature similarity for a cache hit. */
+    public static final double DEFAULT_THRESHOLD = 0.9;
+    private static final int DEFAULT_CAPACITY = 10_000;
+
+    private record Entry(long id, String scope, long signature, List<GoalMatch> matches) {}
+
+    private final double threshold;
+    private final int maxDistance;
+    private final int bands;
+    private final int capacity;
+    private final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<Long, List<Entry>> bandIndex = new HashMap<>();
+    private final AtomicLong lookups = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private long nextId;
+
+    public SimilarityCache() {
+        this(DEFAULT_THRESHOLD, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a cache.
+     *
+     * @param threshold Minimum signature similarity for a hit, between 0.5 and 1
+     * @param capacity Maximum number of cached responses
+     */
+    public SimilarityCache(double threshold, int capacity) {
+        if (threshold < 0.5 || threshold > 1.0) {
+            throw new IllegalArgumentException("Similarity threshold must be between 0.5 and 1: " + threshold);
+        }
+        this.threshold = threshold;
+        this.maxDistance = (int) Math.floor((1.0 - threshold) * 64 + 1e-9);
+        this.bands = maxDistance + 1;
+        this.capacity = capacity;
+    }
+
+    public double getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Returns the cached result of the most similar earlier response within the same scope.
+     *
+     * @param scope The catalog and model the result must belong to
+     * @param developerResponse The response to look up
+     * @return The cached matches, if a similar enough response was cached
+     */
+    public synchronized Optional<List<GoalMatch>> get(String scope, String developerResponse) {
+        lookups.incrementAndGet();
+        long signature = SimHash.signature(developerResponse);
+
+        Entry best = null;
+        int bestDistance = maxDistance + 1;
+        for (int band = 0; band < bands; band++) {
+            for (Entry candidate : bandIndex.getOrDefault(bandKey(band, signature), List.of())) {
+                int distance = Long.bitCount(candidate.signature ^ signature);
+                if (distance < bestDistance && candidate.scope.equals(scope)) {
+                    best = candidate;
+                    bestDistance = distance;
+                }
+            }
+        }
+        if (best == null) {
+            return Optional.empty();
+        }
+        entries.get(best.id); // mark as recently used
+        hits.incrementAndGet();
+        return Optional.of(best.matches);
+    }
+
+    /**
+     * Caches the result of a response.
+     *
+     * @param scope The catalog and model the result belongs to
+     * @param developerResponse The matched response
+     * @param matches The matches of the response
+     */
+    public synchronized void put(String scope, String developerResponse, List<GoalMatch> matches) {
+        Entry entry = new Entry(nextId++, scope, SimHash.signature(developerResponse), List.copyOf(matches));
+        entries.put(entry.id, entry);
+        for (int band = 0; band < bands; band++) {
+            bandIndex.computeIfAbsent(bandKey(band, entry.signature), _ -> new ArrayList<>()).add(entry);
+        }
+
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (entries.size() > capacity) {
+            remove(eldest.next());
+            eldest.remove();
+        }
+    }
+
+    /**
+     * Returns the number of cached responses.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns how often lookups were answered from the cache.
+     */
+    public CacheStats getStats() {
+        return new CacheStats(lookups.get(), hits.get());
+    }
+
+    private void remove(Entry entry) {
+        for (int band = 0; band < bands; band++) {
+            long key = bandKey(band, entry.signature);
+            List<Entry> bucket = bandIndex.get(key);
+            if (bucket != null) {
+                bucket.remove(entry);
+                if (bucket.isEmpty()) {
+                    bandIndex.remove(key);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the bits of the signature that fall in the given band, tagged with the band number.
+     */
+    private long bandKey(int band, long signature) {
+        int from = band * 64 / bands;
+        int to = (band + 1) * 64 / bands;
+        long mask = to - from == 64 ? -1L : ((1L << (to - from)) - 1) << from;
+        return ((signature & mask) >>> from) * 131 + band;
+    }
+}
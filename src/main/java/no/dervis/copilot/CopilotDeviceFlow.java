@@ -2,12 +2,14 @@ package no.dervis.copilot;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import no.dervis.http.HttpTransport;
 
 import java.io.IOException;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
@@ -39,22 +41,27 @@ public final class CopilotDeviceFlow {
     private final ObjectMapper mapper;
 
     public CopilotDeviceFlow(ObjectMapper mapper) {
+        this(mapper, HttpTransport.defaultTransport());
+    }
+
+    public CopilotDeviceFlow(ObjectMapper mapper, HttpTransport transport) {
         this.mapper = mapper;
-        this.http = HttpClient.newBuilder()
-                .connectTimeout(Duration.ofSeconds(15))
-                .build();
+        this.http = transport.clientFor(DEVICE_CODE_URL);
     }
 
     /**
      * Returns a GitHub OAuth access token, either from cache or by initiating
      * the device-flow interactively.
+     *
+     * @param timeout How long to wait for the sign-in at most
+     * @throws HttpTimeoutException If the sign-in did not complete in time
      */
-    public String getOrAuthenticate() throws IOException, InterruptedException {
+    public String getOrAuthenticate(Duration timeout) throws IOException, InterruptedException {
         String cached = readCachedToken();
         if (cached != null && !cached.isBlank()) {
             return cached;
         }
-        String token = runDeviceFlow();
+        String token = runDeviceFlow(System.nanoTime() + timeout.toNanos());
         writeCachedToken(token);
         return token;
     }
@@ -84,9 +91,10 @@ public final class CopilotDeviceFlow {
         }
     }
 
-    private String runDeviceFlow() throws IOException, InterruptedException {
+    private String runDeviceFlow(long deadlineNanos) throws IOException, InterruptedException {
         // 1. Request a device + user code
         HttpRequest codeReq = HttpRequest.newBuilder(URI.create(DEVICE_CODE_URL))
+                .timeout(remaining(deadlineNanos))
                 .header("Accept", "application/json")
                 .header("Content-Type", "application/x-www-form-urlencoded")
                 .POST(HttpRequest.BodyPublishers.ofString(
@@ -115,12 +123,13 @@ public final class CopilotDeviceFlow {
         System.out.println("========================================================");
         System.out.println();
 
-        // 2. Poll for the access token
-        long deadline = System.currentTimeMillis() + (expiresIn * 1000L);
-        while (System.currentTimeMillis() < deadline) {
-            Thread.sleep(interval * 1000L);
+        // 2. Poll for the access token, until the code expires or the caller gives up
+        long deadline = Math.min(System.nanoTime() + expiresIn * 1_000_000_000L, deadlineNanos);
+        while (System.nanoTime() < deadline) {
+            Thread.sleep(Math.min(interval * 1000L, remaining(deadline).toMillis()));
 
             HttpRequest tokenReq = HttpRequest.newBuilder(URI.create(ACCESS_TOKEN_URL))
+                    .timeout(remaining(deadline))
                     .header("Accept", "application/json")
                     .header("Content-Type", "application/x-www-form-urlencoded")
                     .POST(HttpRequest.BodyPublishers.ofString(
@@ -152,7 +161,12 @@ public final class CopilotDeviceFlow {
                 }
             }
         }
-        throw new IOException("Device flow timed out waiting for user authorisation");
+        throw new HttpTimeoutException("Device flow timed out waiting for user authorisation");
+    }
+
+    // HttpRequest rejects a zero timeout, so an expired deadline still gets a millisecond
+    private static Duration remaining(long deadlineNanos) {
+        return Duration.ofNanos(Math.max(1_000_000, deadlineNanos - System.nanoTime()));
     }
 
     /** Deletes the cached OAuth token. */
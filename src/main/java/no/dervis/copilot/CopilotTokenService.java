@@ -2,51 +2,106 @@ package no.dervis.copilot;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import no.dervis.http.HttpTransport;
+import no.dervis.jfr.TokenFetchEvent;
 
 import java.io.IOException;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Exchanges a GitHub user OAuth token for a short-lived GitHub Copilot bearer
  * token (returned by {@code https://api.github.com/copilot_internal/v2/token}),
  * and caches it in-memory until close to expiry.
+ *
+ * <p>Only one caller refreshes an expired token; the others wait for it, but no longer than
+ * their own timeout.
  */
 public final class CopilotTokenService {
 
     private static final String TOKEN_URL = "https://api.github.com/copilot_internal/v2/token";
     // Refresh a bit before actual expiry to avoid edge-of-window 401s.
     private static final Duration REFRESH_MARGIN = Duration.ofMinutes(2);
+    private static final Duration DEFAULT_REQUEST_TIMEOUT = Duration.ofSeconds(30);
 
     private final CopilotDeviceFlow deviceFlow;
     private final HttpClient http;
     private final ObjectMapper mapper;
 
-    private volatile String cachedToken;
-    private volatile Instant cachedExpiresAt = Instant.EPOCH;
+    // Token and expiry together, so readers outside the lock never see a mismatched pair
+    private record CachedToken(String token, Instant expiresAt) {
+
+        boolean isFresh() {
+            return Instant.now().isBefore(expiresAt.minus(REFRESH_MARGIN));
+        }
+    }
+
+    private final ReentrantLock refreshLock = new ReentrantLock();
+    private volatile CachedToken cached;
 
     public CopilotTokenService(CopilotDeviceFlow deviceFlow, ObjectMapper mapper) {
+        this(deviceFlow, mapper, HttpTransport.defaultTransport());
+    }
+
+    public CopilotTokenService(CopilotDeviceFlow deviceFlow, ObjectMapper mapper, HttpTransport transport) {
         this.deviceFlow = deviceFlow;
         this.mapper = mapper;
-        this.http = HttpClient.newBuilder()
-                .connectTimeout(Duration.ofSeconds(15))
-                .build();
+        this.http = transport.clientFor(TOKEN_URL);
     }
 
     /** Returns a Copilot API bearer token valid for use against api.githubcopilot.com. */
-    public synchronized String getToken() throws IOException, InterruptedException {
-        if (cachedToken != null && Instant.now().isBefore(cachedExpiresAt.minus(REFRESH_MARGIN))) {
-            return cachedToken;
+    public String getToken() throws IOException, InterruptedException {
+        return getToken(DEFAULT_REQUEST_TIMEOUT);
+    }
+
+    /**
+     * Returns a Copilot API bearer token, giving up after the given timeout when the token
+     * has to be refreshed, including time spent waiting for another caller's refresh.
+     *
+     * @throws HttpTimeoutException If no token could be obtained in time
+     */
+    public String getToken(Duration timeout) throws IOException, InterruptedException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        TokenFetchEvent event = new TokenFetchEvent();
+        event.begin();
+        event.provider = "GITHUB_COPILOT";
+        CachedToken current = cached;
+        if (current == null || !current.isFresh()) {
+            if (!refreshLock.tryLock(timeout.toNanos(), TimeUnit.NANOSECONDS)) {
+                throw new HttpTimeoutException("Timed out after " + timeout.toMillis()
+                        + " ms waiting for another Copilot token refresh");
+            }
+            try {
+                // Another caller may have refreshed the token while this one waited
+                current = cached;
+                if (current == null || !current.isFresh()) {
+                    event.refreshed = true;
+                    current = refresh(Duration.ofNanos(Math.max(0, deadline - System.nanoTime())));
+                }
+            } finally {
+                refreshLock.unlock();
+            }
         }
-        return refresh();
+        event.resultCount = 1;
+        event.commit();
+        return current.token();
     }
 
-    private String refresh() throws IOException, InterruptedException {
-        String oauth = deviceFlow.getOrAuthenticate();
+    private CachedToken refresh(Duration timeout) throws IOException, InterruptedException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        String oauth = deviceFlow.getOrAuthenticate(timeout);
+        Duration remaining = Duration.ofNanos(deadline - System.nanoTime());
+        if (remaining.isNegative() || remaining.isZero()) {
+            throw new HttpTimeoutException("Timed out after " + timeout.toMillis()
+                    + " ms before the Copilot token exchange");
+        }
 
         HttpRequest req = HttpRequest.newBuilder(URI.create(TOKEN_URL))
                 .header("Authorization", "token " + oauth)
@@ -54,6 +109,7 @@ public final class CopilotTokenService {
                 .header("Editor-Version", "vscode/1.95.0")
                 .header("Editor-Plugin-Version", "copilot-chat/0.23.0")
                 .header("User-Agent", "GitHubCopilotChat/0.23.0")
+                .timeout(remaining)
                 .GET()
                 .build();
 
@@ -74,10 +130,9 @@ public final class CopilotTokenService {
         String token = json.get("token").asText();
         long expiresAt = json.has("expires_at") ? json.get("expires_at").asLong() : 0L;
 
-        cachedToken = token;
-        cachedExpiresAt = expiresAt > 0
+        cached = new CachedToken(token, expiresAt > 0
                 ? Instant.ofEpochSecond(expiresAt)
-                : Instant.now().plus(Duration.ofMinutes(25));
-        return token;
+                : Instant.now().plus(Duration.ofMinutes(25)));
+        return cached;
     }
 }
@@ -0,0 +1,124 @@
+package no.dervis.coverage;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import no.dervis.model.CompetenceGoal;
+import no.dervis.model.GoalMatch;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Incremental coverage engine over a portfolio of logbook entries per student.
+ *
+ * <p>Each new entry is matched once and merged into the student's accumulated coverage, so
+ * dashboards never need to re-run the LLM over a student's history. State is language-neutral
+ * (goal ids and subgoal indices) and can be reported against either catalog. It is persisted
+ * as one array of 64-bit words per goal and student.
+ */
+public class CoverageEngine {
+
+    private final ObjectMapper objectMapper;
+    private final Map<String, StudentCoverage> students = new ConcurrentHashMap<>();
+
+    // Persisted form: student id -> entry count and covered subgoal words per goal
+    private record PersistedStudent(int entries, Map<Integer, long[]> goals) {}
+
+    public CoverageEngine(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Merges the matches of a new entry into the student's coverage.
+     *
+     * @param studentId The student who wrote the entry
+     * @param matches The canonical matches of the entry
+     * @return The student's updated coverage
+     */
+    public StudentCoverage record(String studentId, List<GoalMatch> matches) {
+        StudentCoverage coverage = students.computeIfAbsent(studentId, StudentCoverage::new);
+        coverage.merge(matches);
+        return coverage;
+    }
+
+    /**
+     * Returns the coverage of the given student, or an empty coverage if nothing is recorded.
+     */
+    public StudentCoverage getCoverage(String studentId) {
+        StudentCoverage coverage = students.get(studentId);
+        return coverage != null ? coverage : new StudentCoverage(studentId);
+    }
+
+    /**
+     * Returns the ids of all students with recorded coverage, sorted.
+     */
+    public List<String> getStudentIds() {
+        return students.keySet().stream().sorted().toList();
+    }
+
+    /**
+     * Reports covered versus uncovered subgoals per competence goal for a student.
+     *
+     * @param studentId The student to report on
+     * @param catalog The competence goals to report against, in either language
+     * @return The student's coverage report
+     */
+    public CoverageReport report(String studentId, List<CompetenceGoal> catalog) {
+        StudentCoverage coverage = getCoverage(studentId);
+        List<GoalCoverage> goals = new ArrayList<>(catalog.size());
+        for (CompetenceGoal goal : catalog) {
+            BitSet covered = coverage.getCoveredSubGoals(goal.getId());
+            List<String> subGoals = goal.getSubGoals() != null ? goal.getSubGoals() : List.of();
+            List<String> coveredSubGoals = new ArrayList<>();
+            List<String> uncoveredSubGoals = new ArrayList<>();
+            for (int i = 0; i < subGoals.size(); i++) {
+                (covered.get(i) ? coveredSubGoals : uncoveredSubGoals).add(subGoals.get(i));
+            }
+            goals.add(new GoalCoverage(goal, coveredSubGoals, uncoveredSubGoals, coverage.hasGoal(goal.getId())));
+        }
+        return new CoverageReport(studentId, coverage.getEntryCount(), goals);
+    }
+
+    /**
+     * Writes the state of all students to the given file, replacing it atomically.
+     *
+     * @param file The file to write
+     * @throws IOException If the file cannot be written
+     */
+    public void save(Path file) throws IOException {
+        Map<String, PersistedStudent> state = new TreeMap<>();
+        students.forEach((id, coverage) ->
+                state.put(id, new PersistedStudent(coverage.getEntryCount(), coverage.toWords())));
+
+        Path parent = file.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+        objectMapper.writeValue(temp.toFile(), state);
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Loads the state written by {@link #save(Path)}, replacing any state held in memory.
+     * A missing file leaves the engine empty.
+     *
+     * @param file The file to read
+     * @throws IOException If the file exists but cannot be read
+     */
+    public void load(Path file) throws IOException {
+        students.clear();
+        if (!Files.exists(file)) {
+            return;
+        }
+        Map<String, PersistedStudent> state = objectMapper.readValue(file.toFile(),
+                objectMapper.getTypeFactory().constructMapType(TreeMap.class, String.class, PersistedStudent.class));
+        state.forEach((id, persisted) ->
+                students.put(id, StudentCoverage.fromWords(id, persisted.entries(), persisted.goals())));
+    }
+}
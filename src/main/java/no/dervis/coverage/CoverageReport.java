@@ -0,0 +1,37 @@
+package no.dervis.coverage;
+
+import java.util.List;
+
+/**
+ * Coverage of the whole catalog for one student.
+ *
+ * @param studentId The student the report belongs to
+ * @param entryCount The number of entries merged so far
+ * @param goals Coverage per competence goal, in catalog order
+ */
+public record CoverageReport(String studentId, int entryCount, List<GoalCoverage> goals) {
+
+    /**
+     * Returns the number of covered subgoals across all goals.
+     */
+    public int coveredCount() {
+        return goals.stream().mapToInt(goal -> goal.coveredSubGoals().size()).sum();
+    }
+
+    /**
+     * Returns the number of subgoals in the catalog.
+     */
+    public int totalCount() {
+        return goals.stream()
+                .mapToInt(goal -> goal.coveredSubGoals().size() + goal.uncoveredSubGoals().size())
+                .sum();
+    }
+
+    /**
+     * Returns the share of all subgoals that are covered, between 0 and 1.
+     */
+    public double ratio() {
+        int total = totalCount();
+        return total == 0 ? 0.0 : (double) coveredCount() / total;
+    }
+}
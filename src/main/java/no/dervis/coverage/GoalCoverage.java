@@ -0,0 +1,29 @@
+package no.dervis.coverage;
+
+import no.dervis.model.CompetenceGoal;
+
+import java.util.List;
+
+/**
+ * Covered and uncovered subgoals of one competence goal for one student.
+ *
+ * @param goal The catalog entry of the goal
+ * @param coveredSubGoals The subgoals matched by at least one entry
+ * @param uncoveredSubGoals The subgoals not matched by any entry yet
+ * @param matched Whether any entry matched the goal itself
+ */
+public record GoalCoverage(
+        CompetenceGoal goal,
+        List<String> coveredSubGoals,
+        List<String> uncoveredSubGoals,
+        boolean matched
+) {
+
+    /**
+     * Returns the share of the goal's subgoals that are covered, between 0 and 1.
+     */
+    public double ratio() {
+        int total = coveredSubGoals.size() + uncoveredSubGoals.size();
+        return total == 0 ? (matched ? 1.0 : 0.0) : (double) coveredSubGoals.size() / total;
+    }
+}
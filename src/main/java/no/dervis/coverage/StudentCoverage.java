@@ -0,0 +1,83 @@
+package no.dervis.coverage;
+
+import no.dervis.model.GoalMatch;
+
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Accumulated subgoal coverage of a single student, kept as one bitset per competence goal.
+ *
+ * <p>Merging a new match is a bitwise OR per goal, so the cost is proportional to the number
+ * of subgoals and independent of how many entries the student has already written.
+ */
+public class StudentCoverage {
+
+    private final String studentId;
+    private final Map<Integer, BitSet> goals = new TreeMap<>();
+    private int entryCount;
+
+    public StudentCoverage(String studentId) {
+        this.studentId = studentId;
+    }
+
+    /**
+     * Merges the matches of one logbook entry into this student's coverage.
+     *
+     * @param matches The canonical matches of the entry
+     */
+    public synchronized void merge(List<GoalMatch> matches) {
+        for (GoalMatch match : matches) {
+            goals.computeIfAbsent(match.getGoalId(), _ -> new BitSet()).or(match.getSubGoals());
+        }
+        entryCount++;
+    }
+
+    public String getStudentId() {
+        return studentId;
+    }
+
+    /**
+     * Returns the number of entries merged into this coverage.
+     */
+    public synchronized int getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * Returns whether any entry has matched the given goal.
+     */
+    public synchronized boolean hasGoal(int goalId) {
+        return goals.containsKey(goalId);
+    }
+
+    /**
+     * Returns a copy of the covered subgoal indices for the given goal.
+     */
+    public synchronized BitSet getCoveredSubGoals(int goalId) {
+        BitSet bits = goals.get(goalId);
+        return bits != null ? (BitSet) bits.clone() : new BitSet();
+    }
+
+    /**
+     * Returns the covered subgoals as compact words per goal, for persistence.
+     */
+    synchronized Map<Integer, long[]> toWords() {
+        Map<Integer, long[]> words = new TreeMap<>();
+        goals.forEach((goalId, bits) -> words.put(goalId, bits.toLongArray()));
+        return Collections.unmodifiableMap(words);
+    }
+
+    /**
+     * Restores a coverage from its persisted form.
+     */
+    static StudentCoverage fromWords(String studentId, int entryCount, Map<Integer, long[]> words) {
+        StudentCoverage coverage = new StudentCoverage(studentId);
+        words.forEach((goalId, longs) -> coverage.goals.put(goalId, BitSet.valueOf(longs)));
+        coverage.entryCount = entryCount;
+        return coverage;
+    }
+}
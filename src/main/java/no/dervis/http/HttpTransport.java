@@ -0,0 +1,212 @@
+package no.dervis.http;
+
+import dev.langchain4j.http.client.jdk.JdkHttpClient;
+import dev.langchain4j.http.client.jdk.JdkHttpClientBuilder;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import java.net.Authenticator;
+import java.net.CookieHandler;
+import java.net.ProxySelector;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * One shared HTTP transport for all providers, the Copilot sign-in and the model warm-up.
+ *
+ * <p>Every {@link HttpClient} has its own connection pool, so creating one per service or per
+ * model call means a new TCP and TLS handshake for almost every request. This transport holds
+ * two long-lived clients instead: one for HTTPS endpoints that negotiates HTTP/2, so that
+ * concurrent matches are multiplexed over a single connection per host, and one for the local
+ * cleartext endpoints of Ollama and LM Studio, which only speak HTTP/1.1. Both clients run
+ * their I/O on virtual threads.
+ *
+ * <p>The JDK reads the pool size and keep-alive settings once, when the first client is
+ * created. They are set as system properties unless they were given on the command line, so
+ * the transport must be created before any other {@link HttpClient}.
+ */
+public final class HttpTransport {
+
+    private static final String POOL_SIZE_PROPERTY = "jdk.httpclient.connectionPoolSize";
+    private static final String KEEP_ALIVE_PROPERTY = "jdk.httpclient.keepalive.timeout";
+    private static final String KEEP_ALIVE_H2_PROPERTY = "jdk.httpclient.keepalive.timeout.h2";
+
+    private static volatile HttpTransport defaultTransport;
+
+    /**
+     * Settings of the transport.
+     *
+     * @param version HTTP version for HTTPS endpoints; cleartext endpoints always use HTTP/1.1
+     * @param poolSize Maximum number of idle HTTP/1.1 connections kept open, or 0 for no limit
+     * @param keepAlive How long an idle connection is kept open
+     * @param connectTimeout Timeout for opening a connection
+     * @param readTimeout Default timeout for receiving a response
+     */
+    public record Config(
+            HttpClient.Version version,
+            int poolSize,
+            Duration keepAlive,
+            Duration connectTimeout,
+            Duration readTimeout) {
+
+        public Config {
+            Objects.requireNonNull(version, "HTTP version must not be null");
+            Objects.requireNonNull(keepAlive, "Keep-alive must not be null");
+            Objects.requireNonNull(connectTimeout, "Connect timeout must not be null");
+            Objects.requireNonNull(readTimeout, "Read timeout must not be null");
+            if (poolSize < 0) {
+                throw new IllegalArgumentException("Pool size must not be negative: " + poolSize);
+            }
+        }
+
+        /**
+         * HTTP/2, up to 16 idle connections kept for 5 minutes, 15 s to connect and
+         * 2 minutes to respond.
+         */
+        public static Config defaults() {
+            return new Config(HttpClient.Version.HTTP_2, 16, Duration.ofMinutes(5),
+                    Duration.ofSeconds(15), Duration.ofMinutes(2));
+        }
+    }
+
+    private final Config config;
+    private final ExecutorService executor;
+    private final HttpClient remoteClient;
+    private final HttpClient localClient;
+
+    public HttpTransport(Config config) {
+        this.config = Objects.requireNonNull(config, "Config must not be null");
+        setDefault(POOL_SIZE_PROPERTY, Integer.toString(config.poolSize()));
+        setDefault(KEEP_ALIVE_PROPERTY, Long.toString(config.keepAlive().toSeconds()));
+        setDefault(KEEP_ALIVE_H2_PROPERTY, Long.toString(config.keepAlive().toSeconds()));
+
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+        this.remoteClient = newClient(config.version());
+        this.localClient = newClient(HttpClient.Version.HTTP_1_1);
+    }
+
+    /**
+     * Returns the transport used by services that are not given one, created on first use with
+     * {@link Config#defaults()}.
+     */
+    public static HttpTransport defaultTransport() {
+        HttpTransport transport = defaultTransport;
+        if (transport == null) {
+            synchronized (HttpTransport.class) {
+                transport = defaultTransport;
+                if (transport == null) {
+                    transport = new HttpTransport(Config.defaults());
+                    defaultTransport = transport;
+                }
+            }
+        }
+        return transport;
+    }
+
+    public Config getConfig() {
+        return config;
+    }
+
+    /**
+     * Returns the shared client for the given endpoint: the HTTP/1.1 client for cleartext
+     * endpoints, otherwise the HTTP/2 client.
+     */
+    public HttpClient clientFor(String url) {
+        return "http".equalsIgnoreCase(URI.create(url).getScheme()) ? localClient : remoteClient;
+    }
+
+    /**
+     * Returns a LangChain4j HTTP client builder backed by the shared client for the given
+     * endpoint. Models built with it reuse the shared connections; their timeout still
+     * applies per request.
+     *
+     * @param baseUrl The base URL of the model endpoint
+     */
+    public JdkHttpClientBuilder chatClientBuilder(String baseUrl) {
+        return JdkHttpClient.builder()
+                .httpClientBuilder(new SharedClientBuilder(clientFor(baseUrl)))
+                .readTimeout(config.readTimeout());
+    }
+
+    private HttpClient newClient(HttpClient.Version version) {
+        return HttpClient.newBuilder()
+                .version(version)
+                .connectTimeout(config.connectTimeout())
+                .executor(executor)
+                .build();
+    }
+
+    private static void setDefault(String property, String value) {
+        if (System.getProperty(property) == null) {
+            System.setProperty(property, value);
+        }
+    }
+
+    /**
+     * A client builder that hands out the shared client. LangChain4j builds a client per model
+     * from the builder it is given; the settings it applies are already part of the shared
+     * client and are ignored.
+     */
+    private record SharedClientBuilder(HttpClient client) implements HttpClient.Builder {
+
+        @Override
+        public HttpClient.Builder cookieHandler(CookieHandler cookieHandler) {
+            return this;
+        }
+
+        @Override
+        public HttpClient.Builder connectTimeout(Duration duration) {
+            return this;
+        }
+
+        @Override
+        public HttpClient.Builder sslContext(SSLContext sslContext) {
+            return this;
+        }
+
+        @Override
+        public HttpClient.Builder sslParameters(SSLParameters sslParameters) {
+            return this;
+        }
+
+        @Override
+        public HttpClient.Builder executor(Executor executor) {
+            return this;
+        }
+
+        @Override
+        public HttpClient.Builder followRedirects(HttpClient.Redirect policy) {
+            return this;
+        }
+
+        @Override
+        public HttpClient.Builder version(HttpClient.Version version) {
+            return this;
+        }
+
+        @Override
+        public HttpClient.Builder priority(int priority) {
+            return this;
+        }
+
+        @Override
+        public HttpClient.Builder proxy(ProxySelector proxySelector) {
+            return this;
+        }
+
+        @Override
+        public HttpClient.Builder authenticator(Authenticator authenticator) {
+            return this;
+        }
+
+        @Override
+        public HttpClient build() {
+            return client;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package no.dervis.http;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.MissingNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * A local server answering Ollama ({@code /api/chat}) and OpenAI-compatible
+ * ({@code /v1/chat/completions}) chat requests with canned content, so that the real HTTP and
+ * JSON stack can be exercised without a model. Used by the tests and the AOT training run.
+ *
+ * <p>Queued contents are served first, one per chat request, then the default content. Other
+ * paths, such as Ollama's {@code /api/generate}, get an empty JSON object. Every request is
+ * kept, in the order it arrived.
+ */
+public final class StubChatServer implements AutoCloseable {
+
+    /**
+     * A request the server received.
+     *
+     * @param path The request path
+     * @param body The JSON body, or a missing node if the body was not JSON
+     * @param clientPort The port of the client connection
+     */
+    public record Request(String path, JsonNode body, int clientPort) {
+
+        /**
+         * Returns the model the request was made for, or an empty string.
+         */
+        public String model() {
+            return body.path("model").asText();
+        }
+
+        /**
+         * Returns the content of the last chat message, or an empty string.
+         */
+        public String lastMessage() {
+            JsonNode messages = body.path("messages");
+            return messages.isEmpty() ? "" : messages.get(messages.size() - 1).path("content").asText();
+        }
+    }
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HttpServer server;
+    private final String defaultContent;
+    private final Deque<String> queued = new ArrayDeque<>();
+    private final List<Request> requests = new ArrayList<>();
+
+    /**
+     * Starts a server on a free loopback port.
+     *
+     * @param defaultContent The content of every answer once the queue is empty
+     */
+    public StubChatServer(String defaultContent) throws IOException {
+        this.defaultContent = defaultContent;
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    /**
+     * Queues contents to answer the next chat requests with, in order.
+     */
+    public synchronized StubChatServer enqueue(String... contents) {
+        queued.addAll(List.of(contents));
+        return this;
+    }
+
+    /**
+     * Returns the base URL of the Ollama API.
+     */
+    public String ollamaEndpoint() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    /**
+     * Returns the base URL of the OpenAI-compatible API, as used for LM Studio.
+     */
+    public String openAiEndpoint() {
+        return ollamaEndpoint() + "/v1";
+    }
+
+    /**
+     * Returns the requests received so far.
+     */
+    public synchronized List<Request> getRequests() {
+        return List.copyOf(requests);
+    }
+
+    /**
+     * Returns the chat requests received so far.
+     */
+    public synchronized List<Request> getChatRequests() {
+        return requests.stream().filter(request -> isChat(request.path())).toList();
+    }
+
+    /**
+     * Returns the number of chat requests received so far.
+     */
+    public int getCalls() {
+        return getChatRequests().size();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        byte[] received = exchange.getRequestBody().readAllBytes();
+        JsonNode body;
+        try {
+            body = received.length == 0 ? MissingNode.getInstance() : objectMapper.readTree(received);
+        } catch (IOException e) {
+            body = MissingNode.getInstance();
+        }
+        String path = exchange.getRequestURI().getPath();
+        Request request = new Request(path, body, exchange.getRemoteAddress().getPort());
+
+        String content;
+        synchronized (this) {
+            requests.add(request);
+            content = isChat(path) ? (queued.isEmpty() ? defaultContent : queued.poll()) : null;
+        }
+
+        ObjectNode answer = objectMapper.createObjectNode();
+        if (path.endsWith("/chat/completions")) {
+            answer.put("id", "stub").put("object", "chat.completion").put("created", 0)
+                    .put("model", request.model());
+            ObjectNode choice = answer.putArray("choices").addObject().put("index", 0).put("finish_reason", "stop");
+            choice.putObject("message").put("role", "assistant").put("content", content);
+            answer.putObject("usage").put("prompt_tokens", 1).put("completion_tokens", 1).put("total_tokens", 2);
+        } else if (path.equals("/api/chat")) {
+            answer.put("model", request.model()).put("created_at", "2026-01-01T00:00:00Z")
+                    .put("done", true).put("done_reason", "stop").put("prompt_eval_count", 1).put("eval_count", 1);
+            answer.putObject("message").put("role", "assistant").put("content", content);
+        }
+
+        byte[] bytes = answer.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static boolean isChat(String path) {
+        return path.endsWith("/chat/completions") || path.equals("/api/chat");
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
@@ -0,0 +1,14 @@
+package no.dervis.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("no.dervis.CatalogLoad")
+@Label("Catalog Load")
+@Description("Loading a competence goal catalog; the result count is the number of goals")
+public class CatalogLoadEvent extends MatchingStageEvent {
+
+    @Label("Language")
+    public String language;
+}
@@ -0,0 +1,34 @@
+package no.dervis.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.StackTrace;
+
+/**
+ * Common fields of the JDK Flight Recorder events for the stages of a match.
+ *
+ * <p>The events are committed whether or not a recording is running; when JFR is off,
+ * {@link #commit()} does nothing, so tracing can stay on in production. Start a recording with
+ * {@code -XX:StartFlightRecording} or {@code jcmd <pid> JFR.start} and look for the
+ * "Pensum AI" category in JDK Mission Control or {@code jfr print --categories "Pensum AI"}.
+ */
+@Category({"Pensum AI", "Matching"})
+@StackTrace(false)
+public abstract class MatchingStageEvent extends Event {
+
+    @Label("Provider")
+    public String provider;
+
+    @Label("Model")
+    public String model;
+
+    @Label("Prompt Length")
+    @Description("Length of the prompt in characters, or 0 when the stage has no prompt")
+    public int promptLength;
+
+    @Label("Result Count")
+    @Description("Number of items the stage produced, as described by the event type")
+    public int resultCount;
+}
@@ -0,0 +1,15 @@
+package no.dervis.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("no.dervis.ModelCall")
+@Label("Model Call")
+@Description("Sending a prompt to a model; the result count is the length of the completion in characters")
+public class ModelCallEvent extends MatchingStageEvent {
+
+    @Label("Replayed")
+    @Description("Whether the completion was served from a recording")
+    public boolean replayed;
+}
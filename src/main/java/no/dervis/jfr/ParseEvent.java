@@ -0,0 +1,15 @@
+package no.dervis.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("no.dervis.Parse")
+@Label("Parse")
+@Description("Parsing a completion into matches; the result count is the number of matched goals")
+public class ParseEvent extends MatchingStageEvent {
+
+    @Label("Clean")
+    @Description("Whether the answer was complete and every entry was valid")
+    public boolean clean;
+}
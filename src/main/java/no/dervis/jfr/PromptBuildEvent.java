@@ -0,0 +1,11 @@
+package no.dervis.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("no.dervis.PromptBuild")
+@Label("Prompt Build")
+@Description("Building a matching prompt; the result count is the number of goals in the prompt")
+public class PromptBuildEvent extends MatchingStageEvent {
+}
@@ -0,0 +1,14 @@
+package no.dervis.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("no.dervis.ThinkStrip")
+@Label("Think Strip")
+@Description("Removing thinking sections from a completion; the result count is the remaining length in characters")
+public class ThinkStripEvent extends MatchingStageEvent {
+
+    @Label("Completion Length")
+    public int completionLength;
+}
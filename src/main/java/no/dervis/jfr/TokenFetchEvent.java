@@ -0,0 +1,15 @@
+package no.dervis.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("no.dervis.TokenFetch")
+@Label("Token Fetch")
+@Description("Getting a GitHub Copilot bearer token; the result count is 1 if a token was returned")
+public class TokenFetchEvent extends MatchingStageEvent {
+
+    @Label("Refreshed")
+    @Description("Whether the token was exchanged anew instead of served from the in-memory cache")
+    public boolean refreshed;
+}
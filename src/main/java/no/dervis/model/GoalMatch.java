@@ -0,0 +1,110 @@
+package no.dervis.model;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Compact, language-neutral representation of a matched competence goal.
+ *
+ * <p>A match holds only the goal id and a bitset of canonical subgoal indices, where
+ * index {@code i} refers to the {@code i}-th entry of the goal's subgoal list in the loaded
+ * catalog (subgoal code {@code <goalId>.<i + 1>}). The subgoal text is only materialized
+ * for display through {@link #toCompetenceGoal(CompetenceGoal)}.
+ *
+ * <p>Instances are immutable.
+ */
+public final class GoalMatch {
+
+    private final int goalId;
+    private final BitSet subGoals;
+
+    public GoalMatch(int goalId, BitSet subGoals) {
+        this.goalId = goalId;
+        this.subGoals = (BitSet) Objects.requireNonNull(subGoals, "Subgoal bitset must not be null").clone();
+    }
+
+    /**
+     * Creates a match for the given goal with the given subgoal indices set.
+     */
+    public static GoalMatch of(int goalId, int... subGoalIndices) {
+        BitSet bits = new BitSet();
+        for (int index : subGoalIndices) {
+            bits.set(index);
+        }
+        return new GoalMatch(goalId, bits);
+    }
+
+    public int getGoalId() {
+        return goalId;
+    }
+
+    /**
+     * Returns a copy of the matched subgoal indices.
+     */
+    public BitSet getSubGoals() {
+        return (BitSet) subGoals.clone();
+    }
+
+    public boolean hasSubGoal(int index) {
+        return subGoals.get(index);
+    }
+
+    /**
+     * Returns the number of matched subgoals.
+     */
+    public int subGoalCount() {
+        return subGoals.cardinality();
+    }
+
+    /**
+     * Returns a match covering the subgoals of both this and the other match.
+     *
+     * @throws IllegalArgumentException if the matches belong to different goals
+     */
+    public GoalMatch union(GoalMatch other) {
+        if (other.goalId != goalId) {
+            throw new IllegalArgumentException("Cannot merge goal " + other.goalId + " into goal " + goalId);
+        }
+        BitSet merged = getSubGoals();
+        merged.or(other.subGoals);
+        return new GoalMatch(goalId, merged);
+    }
+
+    /**
+     * Materializes this match for display, using the subgoal text of the canonical goal.
+     *
+     * @param canonical The catalog entry for this goal
+     * @return A competence goal holding the canonical title and the matched subgoal texts
+     */
+    public CompetenceGoal toCompetenceGoal(CompetenceGoal canonical) {
+        if (canonical.getId() != goalId) {
+            throw new IllegalArgumentException("Catalog goal " + canonical.getId() + " does not match goal " + goalId);
+        }
+        List<String> catalogSubGoals = canonical.getSubGoals();
+        List<String> matched = new ArrayList<>(subGoals.cardinality());
+        for (int i = subGoals.nextSetBit(0); i >= 0 && i < catalogSubGoals.size(); i = subGoals.nextSetBit(i + 1)) {
+            matched.add(catalogSubGoals.get(i));
+        }
+        return new CompetenceGoal(goalId, canonical.getTitle(), matched);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof GoalMatch other && goalId == other.goalId && subGoals.equals(other.subGoals);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * goalId + subGoals.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "GoalMatch{" +
+                "goalId=" + goalId +
+                ", subGoals=" + subGoals +
+                '}';
+    }
+}
@@ -0,0 +1,24 @@
+package no.dervis.replay;
+
+/**
+ * One recorded model call.
+ *
+ * @param promptHash SHA-256 of the prompt, in hex
+ * @param provider The provider the prompt was sent to
+ * @param model The model the prompt was sent to
+ * @param completion The raw completion, before thinking sections are stripped
+ * @param latencyMillis Time from sending the prompt to receiving the completion
+ */
+public record Recording(String promptHash, String provider, String model, String completion, long latencyMillis) {
+
+    /**
+     * Returns the key recordings are looked up by.
+     */
+    public String key() {
+        return key(promptHash, provider, model);
+    }
+
+    static String key(String promptHash, String provider, String model) {
+        return provider + "|" + model + "|" + promptHash;
+    }
+}
@@ -0,0 +1,85 @@
+package no.dervis.replay;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An NDJSON file of recorded model calls, one {@link Recording} per line.
+ *
+ * <p>Recordings are appended as calls complete, so a recording run that stops halfway keeps
+ * everything recorded so far. Prompts are stored as hashes only; the file holds the
+ * completions but not the developer responses that were sent.
+ */
+public class RecordingFile {
+
+    private final Path file;
+    private final ObjectMapper objectMapper;
+
+    public RecordingFile(Path file, ObjectMapper objectMapper) {
+        this.file = file;
+        this.objectMapper = objectMapper;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Returns the SHA-256 hash of a prompt, in hex.
+     */
+    public static String promptHash(String prompt) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(prompt.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Appends a recording to the file.
+     *
+     * @throws IOException If the file cannot be written
+     */
+    public synchronized void append(Recording recording) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        try (BufferedWriter writer = Files.newBufferedWriter(file,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            writer.write(objectMapper.writeValueAsString(recording));
+            writer.newLine();
+        }
+    }
+
+    /**
+     * Reads all recordings by key. When the same call was recorded more than once, the last
+     * recording wins.
+     *
+     * @throws IOException If the file cannot be read
+     */
+    public Map<String, Recording> load() throws IOException {
+        Map<String, Recording> recordings = new LinkedHashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(file)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isBlank()) {
+                    Recording recording = objectMapper.readValue(line, Recording.class);
+                    recordings.put(recording.key(), recording);
+                }
+            }
+        }
+        return recordings;
+    }
+}
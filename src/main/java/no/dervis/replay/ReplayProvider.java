@@ -0,0 +1,56 @@
+package no.dervis.replay;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Serves recorded completions in place of a live provider.
+ *
+ * <p>A prompt is answered from the recording with the same prompt hash, provider and model.
+ * Since the prompt plan depends on the provider and model, a replay must use the provider and
+ * model of the recording run. Completions are served instantly, or after the recorded latency
+ * to reproduce the timing of the recording run.
+ */
+public class ReplayProvider {
+
+    private final Map<String, Recording> recordings;
+    private final boolean withLatency;
+
+    /**
+     * Creates a replay provider.
+     *
+     * @param recordings Recordings by key, as read by {@link RecordingFile#load()}
+     * @param withLatency Whether to wait for the recorded latency before answering
+     */
+    public ReplayProvider(Map<String, Recording> recordings, boolean withLatency) {
+        this.recordings = Map.copyOf(recordings);
+        this.withLatency = withLatency;
+    }
+
+    public int size() {
+        return recordings.size();
+    }
+
+    /**
+     * Returns the recorded completion for a prompt.
+     *
+     * @param provider The provider the prompt is meant for
+     * @param model The model the prompt is meant for
+     * @param prompt The prompt
+     * @return The recorded raw completion
+     * @throws IOException If nothing was recorded for this prompt, provider and model
+     * @throws InterruptedException If interrupted while waiting for the recorded latency
+     */
+    public String complete(String provider, String model, String prompt) throws IOException, InterruptedException {
+        String promptHash = RecordingFile.promptHash(prompt);
+        Recording recording = recordings.get(Recording.key(promptHash, provider, model));
+        if (recording == null) {
+            throw new IOException("No recording for prompt " + promptHash.substring(0, 12)
+                    + " to " + provider + " " + model);
+        }
+        if (withLatency && recording.latencyMillis() > 0) {
+            Thread.sleep(recording.latencyMillis());
+        }
+        return recording.completion();
+    }
+}
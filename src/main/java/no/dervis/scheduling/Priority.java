@@ -0,0 +1,17 @@
+package no.dervis.scheduling;
+
+/**
+ * Priority classes of model calls, from most to least urgent.
+ */
+public enum Priority {
+
+    /**
+     * A developer is waiting for the result.
+     */
+    INTERACTIVE,
+
+    /**
+     * Part of a batch job; only latency of the whole job matters.
+     */
+    BATCH
+}
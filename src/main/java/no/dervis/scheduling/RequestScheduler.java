@@ -0,0 +1,270 @@
+package no.dervis.scheduling;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Decides which waiting model call may start next, so that interactive requests do not queue
+ * behind batch jobs on the same provider.
+ *
+ * <p>At most {@code maxConcurrency} calls run at the same time. Each priority class can
+ * reserve part of that capacity: a class may only take a free slot if enough slots are left
+ * for the unused reservations of the other classes. Free slots go to waiting
+ * {@link Priority#INTERACTIVE} calls first, so batch jobs only use the capacity interactive
+ * requests leave over, while their own reservation keeps them from starving.
+ *
+ * <p>Within a class, tenants share the capacity by weight with start-time fair queuing: each
+ * call is tagged with a virtual start and finish time, a tenant's next call starts where its
+ * previous one finished, and the call with the earliest finish tag goes first. A job that
+ * queues thousands of calls therefore does not delay a job that queues a few.
+ */
+public class RequestScheduler {
+
+    private static final Comparator<Waiter> FAIR_ORDER =
+            Comparator.comparingDouble(Waiter::finishTag).thenComparingLong(Waiter::sequence);
+
+    private final int maxConcurrency;
+    private final Map<Priority, Integer> reservations = new EnumMap<>(Priority.class);
+    private final Map<String, Double> weights = new HashMap<>();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<Priority, PriorityQueue<Waiter>> queues = new EnumMap<>(Priority.class);
+    private final Map<Priority, Integer> running = new EnumMap<>(Priority.class);
+    private final Map<Priority, Double> virtualTime = new EnumMap<>(Priority.class);
+    private final Map<SchedulingKey, Double> lastFinish = new HashMap<>();
+    private long sequence;
+
+    /**
+     * A granted slot. Closing it lets the next waiting call start; closing it again has no
+     * effect.
+     */
+    public final class Permit implements AutoCloseable {
+
+        private final Priority priority;
+        private boolean released;
+
+        private Permit(Priority priority) {
+            this.priority = priority;
+        }
+
+        @Override
+        public void close() {
+            lock.lock();
+            try {
+                if (!released) {
+                    released = true;
+                    running.merge(priority, -1, Integer::sum);
+                    dispatch();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private final class Waiter {
+        private final SchedulingKey key;
+        private final double startTag;
+        private final double finishTag;
+        private final long sequence;
+        private final Condition granted = lock.newCondition();
+        private Permit permit;
+
+        private Waiter(SchedulingKey key, double startTag, double finishTag, long sequence) {
+            this.key = key;
+            this.startTag = startTag;
+            this.finishTag = finishTag;
+            this.sequence = sequence;
+        }
+
+        private double finishTag() {
+            return finishTag;
+        }
+
+        private long sequence() {
+            return sequence;
+        }
+    }
+
+    /**
+     * Creates a scheduler without reservations.
+     *
+     * @param maxConcurrency Maximum number of model calls running at the same time
+     */
+    public RequestScheduler(int maxConcurrency) {
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("Concurrency must be at least 1: " + maxConcurrency);
+        }
+        this.maxConcurrency = maxConcurrency;
+        for (Priority priority : Priority.values()) {
+            queues.put(priority, new PriorityQueue<>(FAIR_ORDER));
+            running.put(priority, 0);
+            virtualTime.put(priority, 0.0);
+        }
+    }
+
+    /**
+     * Reserves slots that only the given class may use.
+     *
+     * @param priority The class to reserve slots for
+     * @param slots The number of slots, {@code 0} to remove the reservation
+     * @throws IllegalArgumentException If the reservations would exceed the concurrency
+     */
+    public void reserve(Priority priority, int slots) {
+        lock.lock();
+        try {
+            int others = reservations.entrySet().stream()
+                    .filter(entry -> entry.getKey() != priority)
+                    .mapToInt(Map.Entry::getValue)
+                    .sum();
+            if (slots < 0 || others + slots > maxConcurrency) {
+                throw new IllegalArgumentException("Cannot reserve " + slots + " of " + maxConcurrency
+                        + " slots for " + priority + " when " + others + " are reserved for other classes");
+            }
+            reservations.put(priority, slots);
+            dispatch();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sets the share of a tenant relative to the other tenants of its class. Tenants have a
+     * weight of 1 unless set.
+     */
+    public void setWeight(String tenant, double weight) {
+        if (!(weight > 0)) {
+            throw new IllegalArgumentException("Weight must be positive: " + weight);
+        }
+        lock.lock();
+        try {
+            weights.put(tenant, weight);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits for a slot for a call of the given key.
+     *
+     * @param key The priority class and tenant of the call
+     * @param maxWait How long to wait at most, or {@code null} to wait until a slot is free
+     * @return The granted slot, to be closed when the call has finished
+     * @throws TimeoutException If no slot was granted in time
+     * @throws InterruptedException If the thread was interrupted while waiting
+     */
+    public Permit acquire(SchedulingKey key, Duration maxWait) throws TimeoutException, InterruptedException {
+        lock.lock();
+        try {
+            double start = Math.max(virtualTime.get(key.priority()), lastFinish.getOrDefault(key, 0.0));
+            double finish = start + 1.0 / weights.getOrDefault(key.tenant(), 1.0);
+            lastFinish.put(key, finish);
+            Waiter waiter = new Waiter(key, start, finish, sequence++);
+            queues.get(key.priority()).add(waiter);
+            dispatch();
+
+            long nanos = maxWait != null ? maxWait.toNanos() : 0;
+            try {
+                while (waiter.permit == null) {
+                    if (maxWait == null) {
+                        waiter.granted.await();
+                    } else if (nanos > 0) {
+                        nanos = waiter.granted.awaitNanos(nanos);
+                    } else {
+                        abandon(waiter);
+                        throw new TimeoutException("No slot for " + key.priority() + " call of " + key.tenant()
+                                + " within " + maxWait.toMillis() + " ms");
+                    }
+                }
+            } catch (InterruptedException e) {
+                if (waiter.permit != null) {
+                    waiter.permit.close();
+                } else {
+                    abandon(waiter);
+                }
+                throw e;
+            }
+            return waiter.permit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of calls of the given class that are running.
+     */
+    public int getRunning(Priority priority) {
+        lock.lock();
+        try {
+            return running.get(priority);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of calls of the given class that are waiting for a slot.
+     */
+    public int getQueued(Priority priority) {
+        lock.lock();
+        try {
+            return queues.get(priority).size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes a waiter that gives up. Its tag is given back if no later call of the tenant
+     * was tagged after it, so the tenant is not charged for a call that never ran.
+     */
+    private void abandon(Waiter waiter) {
+        queues.get(waiter.key.priority()).remove(waiter);
+        lastFinish.computeIfPresent(waiter.key, (_, finish) -> finish == waiter.finishTag ? waiter.startTag : finish);
+    }
+
+    /**
+     * Grants free slots to waiting calls, highest priority class first and in fair order
+     * within a class. Must be called with the lock held.
+     */
+    private void dispatch() {
+        boolean started = true;
+        while (started) {
+            started = false;
+            for (Priority priority : Priority.values()) {
+                PriorityQueue<Waiter> queue = queues.get(priority);
+                if (!queue.isEmpty() && hasRoomFor(priority)) {
+                    Waiter next = queue.poll();
+                    virtualTime.put(priority, Math.max(virtualTime.get(priority), next.startTag));
+                    running.merge(priority, 1, Integer::sum);
+                    next.permit = new Permit(priority);
+                    next.granted.signal();
+                    if (queue.isEmpty()) {
+                        // Idle tenants should not carry credit or debt into the next busy period
+                        lastFinish.keySet().removeIf(key -> key.priority() == priority);
+                    }
+                    started = true;
+                    break;
+                }
+            }
+        }
+    }
+
+    private boolean hasRoomFor(Priority priority) {
+        int free = maxConcurrency - running.values().stream().mapToInt(Integer::intValue).sum();
+        int heldForOthers = 0;
+        for (Priority other : Priority.values()) {
+            if (other != priority) {
+                heldForOthers += Math.max(0, reservations.getOrDefault(other, 0) - running.get(other));
+            }
+        }
+        return free > heldForOthers;
+    }
+}
@@ -0,0 +1,30 @@
+package no.dervis.scheduling;
+
+import java.util.Objects;
+
+/**
+ * Identifies who a model call is made for.
+ *
+ * @param priority The priority class of the call
+ * @param tenant The tenant or job the call belongs to; tenants of the same class share its
+ *               capacity by weight
+ */
+public record SchedulingKey(Priority priority, String tenant) {
+
+    /**
+     * The key of calls made for a single developer waiting for the result.
+     */
+    public static final SchedulingKey INTERACTIVE = new SchedulingKey(Priority.INTERACTIVE, "interactive");
+
+    public SchedulingKey {
+        Objects.requireNonNull(priority, "Priority must not be null");
+        Objects.requireNonNull(tenant, "Tenant must not be null");
+    }
+
+    /**
+     * Returns the key of calls made for the given batch job.
+     */
+    public static SchedulingKey batch(String job) {
+        return new SchedulingKey(Priority.BATCH, job);
+    }
+}
@@ -0,0 +1,62 @@
+package no.dervis.service;
+
+import no.dervis.model.CompetenceGoal;
+import no.dervis.model.GoalMatch;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Projects matches made against one catalog onto another catalog with the same goal ids and
+ * subgoal codes, such as the English {@code curriculum.json} and the Norwegian {@code pensum.json}.
+ *
+ * <p>Each matched subgoal is translated through its code (e.g. {@code "3.4"}), so a single
+ * match in either language gives the result in both without another model call. Goals and
+ * subgoals without a counterpart in the target catalog are dropped.
+ */
+public class CatalogProjector {
+
+    private final SubGoalResolver source;
+    private final SubGoalResolver target;
+
+    /**
+     * Creates a projector between two catalogs.
+     *
+     * @param sourceCatalog The catalog the matches were made against
+     * @param targetCatalog The catalog to project the matches onto
+     */
+    public CatalogProjector(List<CompetenceGoal> sourceCatalog, List<CompetenceGoal> targetCatalog) {
+        this.source = new SubGoalResolver(sourceCatalog);
+        this.target = new SubGoalResolver(targetCatalog);
+    }
+
+    /**
+     * Translates matches to subgoal indices of the target catalog.
+     */
+    public List<GoalMatch> project(List<GoalMatch> matches) {
+        List<GoalMatch> projected = new ArrayList<>(matches.size());
+        for (GoalMatch match : matches) {
+            int goalId = match.getGoalId();
+            if (!target.containsGoal(goalId)) {
+                continue;
+            }
+            BitSet subGoals = new BitSet();
+            match.getSubGoals().stream().forEach(index -> {
+                int targetIndex = target.resolve(goalId, source.subGoalCode(goalId, index));
+                if (targetIndex >= 0) {
+                    subGoals.set(targetIndex);
+                }
+            });
+            projected.add(new GoalMatch(goalId, subGoals));
+        }
+        return projected;
+    }
+
+    /**
+     * Translates matches and materializes them with the texts of the target catalog.
+     */
+    public List<CompetenceGoal> materialize(List<GoalMatch> matches) {
+        return target.materialize(project(matches));
+    }
+}
@@ -2,6 +2,7 @@ package no.dervis.service;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import no.dervis.jfr.CatalogLoadEvent;
 import no.dervis.model.CompetenceGoal;
 import no.dervis.model.EnglishCompetenceGoal;
 import no.dervis.model.NorwegianCompetenceGoal;
@@ -65,10 +66,31 @@ public class CompetenceGoalService {
      * @throws IllegalArgumentException if the language is not supported
      */
     public List<CompetenceGoal> loadCompetenceGoals(String language) throws IOException {
-        return switch (language.toLowerCase()) {
+        CatalogLoadEvent event = new CatalogLoadEvent();
+        event.begin();
+        List<CompetenceGoal> goals = switch (language.toLowerCase()) {
             case "en" -> loadEnglishCompetenceGoals();
             case "no" -> loadNorwegianCompetenceGoals();
             default -> throw new IllegalArgumentException("Unsupported language: " + language);
         };
+        event.language = language;
+        event.resultCount = goals.size();
+        event.commit();
+        return goals;
+    }
+
+    /**
+     * Returns the other supported language, whose catalog has the same goal ids and subgoal codes.
+     *
+     * @param language "en" for English, "no" for Norwegian
+     * @return "no" for English, "en" for Norwegian
+     * @throws IllegalArgumentException if the language is not supported
+     */
+    public static String otherLanguage(String language) {
+        return switch (language.toLowerCase()) {
+            case "en" -> "no";
+            case "no" -> "en";
+            default -> throw new IllegalArgumentException("Unsupported language: " + language);
+        };
     }
 }
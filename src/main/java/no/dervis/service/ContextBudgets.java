@@ -0,0 +1,119 @@
+package no.dervis.service;
+
+import no.dervis.service.LlmService.LlmProvider;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Table of context budgets per provider and model, used to size prompts before sending them.
+ *
+ * <p>The budget of a model is its context window, capped by what the provider actually serves:
+ * Ollama and LM Studio silently truncate prompts longer than the context the model was loaded
+ * with, and GitHub Models limits input tokens per request. A fixed number of tokens is reserved
+ * for the answer.
+ *
+ * <p>For Ollama the budget's context size is sent as {@code num_ctx} with every request, so the
+ * server loads the model with exactly the context the prompts are planned for. LM Studio's
+ * OpenAI-compatible API has no such setting; the model has to be loaded with a Context Length
+ * of at least the table value, e.g. {@code lms load <model> --context-length 16384}, or the
+ * loaded length passed as an override.
+ */
+public class ContextBudgets {
+
+    /**
+     * Context budget of a model.
+     *
+     * @param contextTokens Tokens available for prompt and answer together
+     * @param reservedOutputTokens Tokens kept free for the answer
+     */
+    public record ContextBudget(int contextTokens, int reservedOutputTokens) {
+
+        /**
+         * Returns the number of tokens the prompt may use.
+         */
+        public int inputTokens() {
+            return contextTokens - reservedOutputTokens;
+        }
+    }
+
+    private record ModelWindow(String prefix, int tokens) {}
+
+    private static final int DEFAULT_OUTPUT_TOKENS = 1024;
+    private static final int DEFAULT_WINDOW_TOKENS = 8_192;
+    // Context windows by model name prefix; the longest matching prefix wins.
+    private static final List<ModelWindow> MODEL_WINDOWS = List.of(
+            new ModelWindow("gpt-5", 272_000),
+            new ModelWindow("gpt-4.1", 1_000_000),
+            new ModelWindow("gpt-4o", 128_000),
+            new ModelWindow("o1", 200_000),
+            new ModelWindow("o3", 200_000),
+            new ModelWindow("o4", 200_000),
+            new ModelWindow("claude", 200_000),
+            new ModelWindow("gemini", 1_000_000),
+            new ModelWindow("qwen2.5", 32_768),
+            new ModelWindow("qwen3", 40_960),
+            new ModelWindow("llama3", 8_192),
+            new ModelWindow("llama3.1", 131_072),
+            new ModelWindow("llama3.2", 131_072),
+            new ModelWindow("llama3.3", 131_072),
+            new ModelWindow("mistral", 32_768),
+            new ModelWindow("mixtral", 32_768),
+            new ModelWindow("gemma2", 8_192),
+            new ModelWindow("gemma3", 131_072),
+            new ModelWindow("phi3", 4_096),
+            new ModelWindow("deepseek-r1", 131_072)
+    ).stream().sorted(Comparator.comparingInt((ModelWindow window) -> window.prefix.length()).reversed()).toList();
+
+    // Sent to Ollama as num_ctx; the Context Length LM Studio must load models with. Large enough
+    // for the whole catalog plus a conversation about it, small enough for a laptop's memory.
+    private static final int LOCAL_SERVER_CONTEXT_TOKENS = 16_384;
+    // GitHub Models input limit per request on the free tiers.
+    private static final int GITHUB_MODELS_INPUT_TOKENS = 8_000;
+    // Copilot caps prompts well below the underlying models' windows.
+    private static final int COPILOT_PROMPT_TOKENS = 64_000;
+
+    private volatile Integer overrideContextTokens;
+
+    /**
+     * Overrides the context size for all models, e.g. when Ollama runs with a larger
+     * {@code num_ctx} or LM Studio loads a model with a longer context.
+     *
+     * @param contextTokens The context size in tokens, or {@code null} to use the table
+     */
+    public void setOverride(Integer contextTokens) {
+        this.overrideContextTokens = contextTokens;
+    }
+
+    /**
+     * Returns the budget for the given provider and model.
+     */
+    public ContextBudget budgetFor(LlmProvider provider, String modelName) {
+        Integer override = overrideContextTokens;
+        if (override != null) {
+            return new ContextBudget(override, Math.min(DEFAULT_OUTPUT_TOKENS, override / 4));
+        }
+        int window = modelWindow(modelName);
+        int context = switch (provider) {
+            case OLLAMA, LM_STUDIO -> Math.min(window, LOCAL_SERVER_CONTEXT_TOKENS);
+            case GITHUB_MODELS -> Math.min(window, GITHUB_MODELS_INPUT_TOKENS + DEFAULT_OUTPUT_TOKENS);
+            case GITHUB_COPILOT -> Math.min(window, COPILOT_PROMPT_TOKENS);
+        };
+        return new ContextBudget(context, DEFAULT_OUTPUT_TOKENS);
+    }
+
+    private static int modelWindow(String modelName) {
+        if (modelName == null) {
+            return DEFAULT_WINDOW_TOKENS;
+        }
+        String name = modelName.toLowerCase(Locale.ROOT);
+        name = name.substring(name.lastIndexOf('/') + 1);
+        for (ModelWindow window : MODEL_WINDOWS) {
+            if (name.startsWith(window.prefix)) {
+                return window.tokens;
+            }
+        }
+        return DEFAULT_WINDOW_TOKENS;
+    }
+}
@@ -0,0 +1,80 @@
+package no.dervis.service;
+
+import java.time.Duration;
+
+/**
+ * A point in time by which a matching request must be finished.
+ *
+ * <p>A deadline is created once per request and handed down to every stage that may block,
+ * such as the token refresh, each model call and the follow-up request. Stages use it to cap
+ * their own timeouts and to stop before starting work that can no longer finish in time.
+ */
+public final class Deadline {
+
+    private static final Deadline NONE = new Deadline(Long.MAX_VALUE);
+
+    private final long expiresAtNanos;
+
+    private Deadline(long expiresAtNanos) {
+        this.expiresAtNanos = expiresAtNanos;
+    }
+
+    /**
+     * Returns a deadline that never expires.
+     */
+    public static Deadline none() {
+        return NONE;
+    }
+
+    /**
+     * Returns a deadline that expires after the given duration from now.
+     */
+    public static Deadline after(Duration timeout) {
+        if (timeout.isNegative() || timeout.isZero()) {
+            throw new IllegalArgumentException("Deadline timeout must be positive: " + timeout);
+        }
+        return new Deadline(System.nanoTime() + timeout.toNanos());
+    }
+
+    /**
+     * Returns whether this deadline can expire at all.
+     */
+    public boolean isBounded() {
+        return this != NONE;
+    }
+
+    public boolean isExpired() {
+        return isBounded() && System.nanoTime() - expiresAtNanos >= 0;
+    }
+
+    /**
+     * Returns the time left, never negative. An unbounded deadline has no time left to report
+     * and returns {@code null}.
+     */
+    public Duration remaining() {
+        return isBounded() ? Duration.ofNanos(Math.max(0, expiresAtNanos - System.nanoTime())) : null;
+    }
+
+    /**
+     * Returns the timeout to use for a single blocking stage: the stage's own limit, shortened
+     * to the time left.
+     *
+     * @param stageTimeout The timeout the stage would use without a deadline
+     */
+    public Duration cap(Duration stageTimeout) {
+        Duration remaining = remaining();
+        return remaining == null || stageTimeout.compareTo(remaining) <= 0 ? stageTimeout : remaining;
+    }
+
+    /**
+     * Fails if the deadline has passed.
+     *
+     * @param stage The stage about to start, for the error message
+     * @throws DeadlineExceededException If the deadline has passed
+     */
+    public void check(String stage) throws DeadlineExceededException {
+        if (isExpired()) {
+            throw new DeadlineExceededException("Deadline exceeded before " + stage);
+        }
+    }
+}
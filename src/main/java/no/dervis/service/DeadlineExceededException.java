@@ -0,0 +1,14 @@
+package no.dervis.service;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a matching request runs past its deadline. Like {@link java.net.http.HttpTimeoutException}
+ * it is an {@link IOException}, so callers that already handle failed LLM calls also handle it.
+ */
+public class DeadlineExceededException extends IOException {
+
+    public DeadlineExceededException(String message) {
+        super(message);
+    }
+}
@@ -1,22 +1,51 @@
 package no.dervis.service;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.UserMessage;
 import dev.langchain4j.model.chat.ChatModel;
 import dev.langchain4j.model.ollama.OllamaChatModel;
 import dev.langchain4j.model.openai.OpenAiChatModel;
+import no.dervis.cache.CatalogKey;
+import no.dervis.cache.ResultCache;
+import no.dervis.cache.SimilarityCache;
 import no.dervis.copilot.CopilotTokenService;
+import no.dervis.http.HttpTransport;
+import no.dervis.jfr.ModelCallEvent;
+import no.dervis.jfr.ParseEvent;
+import no.dervis.jfr.PromptBuildEvent;
+import no.dervis.jfr.ThinkStripEvent;
 import no.dervis.model.CompetenceGoal;
+import no.dervis.model.GoalMatch;
+import no.dervis.replay.Recording;
+import no.dervis.replay.RecordingFile;
+import no.dervis.replay.ReplayProvider;
+import no.dervis.scheduling.RequestScheduler;
+import no.dervis.scheduling.SchedulingKey;
+import no.dervis.service.MatchResponseParser.ParsedResponse;
 
 import java.io.IOException;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 
 /**
  * Service for matching developer responses to competence goals using LLM.
@@ -24,9 +53,16 @@ import java.util.stream.Collectors;
  */
 public class LlmService {
     // Constants
-    private static final Pattern JSON_ARRAY_PATTERN = Pattern.compile("\\[.*\\]", Pattern.DOTALL);
-    private static final Pattern THINK_TAG_PATTERN = Pattern.compile("<think>.*?</think>", Pattern.DOTALL);
     private static final Duration DEFAULT_TIMEOUT = Duration.ofMinutes(2);
+    private static final Duration TOKEN_TIMEOUT = Duration.ofSeconds(30);
+    private static final String GITHUB_MODELS_ENDPOINT = "https://models.inference.ai.azure.com";
+    private static final String COPILOT_ENDPOINT = "https://api.githubcopilot.com";
+    // Responses longer than this are split and matched chunk by chunk in parallel.
+    private static final int DEFAULT_CHUNK_CHARS = 4000;
+    private static final int DEFAULT_CHUNK_OVERLAP_CHARS = 400;
+    // Longest previous answer quoted back when asking the model to reformat it.
+    private static final int MAX_FOLLOW_UP_ANSWER_CHARS = 4000;
+    private static final Pattern ID_ARRAY_PATTERN = Pattern.compile("\\[[\\s\\d,\"]*\\]");
     public static final String GH_TOKEN = System.getenv("GH_TOKEN");
 
     /**
@@ -39,11 +75,22 @@ public class LlmService {
         LM_STUDIO
     }
 
-    // Record for JSON deserialization
-    private record MatchResult(int competenceGoalId, List<String> matchingSubGoals) {}
+    /**
+     * A provider and model to send prompts to.
+     *
+     * @param provider The LLM provider
+     * @param modelName The model name at that provider
+     */
+    public record ModelTarget(LlmProvider provider, String modelName) {
+        public ModelTarget {
+            Objects.requireNonNull(provider, "Provider must not be null");
+            Objects.requireNonNull(modelName, "Model name must not be null");
+        }
+    }
 
     // Service dependencies
     private final ObjectMapper objectMapper;
+    private final HttpTransport httpTransport;
     private final String ollamaEndpoint;
     private final String defaultOllamaModel;
     private final String defaultGithubModel;
@@ -52,6 +99,18 @@ public class LlmService {
     private final String defaultCopilotModel;
     private final String lmStudioEndpoint;
     private final String defaultLmStudioModel;
+    private volatile TextChunker textChunker = new TextChunker(DEFAULT_CHUNK_CHARS, DEFAULT_CHUNK_OVERLAP_CHARS);
+    private final PromptPlanner promptPlanner = new PromptPlanner(new TokenEstimator(), new ContextBudgets());
+    private final MatchResponseParser responseParser;
+    private final ModelWarmer modelWarmer;
+    private final Set<CompletableFuture<Void>> pendingKeepAlives = ConcurrentHashMap.newKeySet();
+    private volatile ModelTarget cascadeSelector;
+    private volatile SimilarityCache similarityCache;
+    private volatile ResultCache resultCache;
+    private volatile RecordingFile recordingFile;
+    private volatile ReplayProvider replayProvider;
+    private volatile RequestScheduler scheduler;
+    private volatile ModelRouter modelRouter;
 
     /**
      * Creates a new LlmService with Ollama as the default provider.
@@ -104,7 +163,7 @@ public class LlmService {
     }
 
     /**
-     * Creates a new LlmService with complete configuration.
+     * Creates a new LlmService with complete configuration, using the default HTTP transport.
      */
     public LlmService(
             ObjectMapper objectMapper,
@@ -116,8 +175,31 @@ public class LlmService {
             String lmStudioEndpoint,
             String defaultLmStudioModel,
             LlmProvider defaultProvider) {
+        this(objectMapper, ollamaEndpoint, defaultOllamaModel, defaultGithubModel, copilotTokenService,
+                defaultCopilotModel, lmStudioEndpoint, defaultLmStudioModel, defaultProvider,
+                HttpTransport.defaultTransport());
+    }
+
+    /**
+     * Creates a new LlmService with complete configuration. All model calls and warm-up
+     * requests go through the given transport and share its connections.
+     */
+    public LlmService(
+            ObjectMapper objectMapper,
+            String ollamaEndpoint,
+            String defaultOllamaModel,
+            String defaultGithubModel,
+            CopilotTokenService copilotTokenService,
+            String defaultCopilotModel,
+            String lmStudioEndpoint,
+            String defaultLmStudioModel,
+            LlmProvider defaultProvider,
+            HttpTransport httpTransport) {
 
         this.objectMapper = Objects.requireNonNull(objectMapper, "ObjectMapper must not be null");
+        this.httpTransport = Objects.requireNonNull(httpTransport, "HttpTransport must not be null");
+        this.responseParser = new MatchResponseParser(objectMapper);
+        this.modelWarmer = new ModelWarmer(objectMapper, httpTransport);
         this.defaultProvider = Objects.requireNonNull(defaultProvider, "Default provider must not be null");
 
         // Validate provider-specific parameters
@@ -172,6 +254,250 @@ public class LlmService {
         };
     }
 
+    /**
+     * Matches developer's response to competence goals using the default LLM provider and model,
+     * returning compact canonical matches instead of materialized goals.
+     *
+     * @param developerResponse The developer's description of their tasks
+     * @param competenceGoals The list of competence goals to match against
+     * @return One match per matching goal, holding the canonical subgoal indices
+     * @throws IOException If an I/O error occurs during LLM communication
+     * @throws InterruptedException If the operation is interrupted
+     */
+    public List<GoalMatch> matchGoals(String developerResponse, List<CompetenceGoal> competenceGoals)
+            throws IOException, InterruptedException {
+        return matchGoals(developerResponse, competenceGoals, Deadline.none());
+    }
+
+    /**
+     * Matches developer's response to competence goals using the default LLM provider and model,
+     * finishing before the given deadline. Each model call and token refresh gets at most the
+     * time that is left, and no new call is started once the deadline has passed.
+     *
+     * @param developerResponse The developer's description of their tasks
+     * @param competenceGoals The list of competence goals to match against
+     * @param deadline The deadline for the whole request
+     * @return One match per matching goal, holding the canonical subgoal indices
+     * @throws DeadlineExceededException If the deadline passed before matching finished
+     * @throws IOException If an I/O error occurs during LLM communication
+     * @throws InterruptedException If the operation is interrupted
+     */
+    public List<GoalMatch> matchGoals(String developerResponse, List<CompetenceGoal> competenceGoals, Deadline deadline)
+            throws IOException, InterruptedException {
+        return matchGoals(developerResponse, competenceGoals, deadline, SchedulingKey.INTERACTIVE);
+    }
+
+    /**
+     * Matches developer's response like {@link #matchGoals(String, List, Deadline)}, on behalf
+     * of the given priority class and tenant. When a {@linkplain #setScheduler scheduler} is
+     * set, each model call waits for a slot of that class first.
+     *
+     * @param developerResponse The developer's description of their tasks
+     * @param competenceGoals The list of competence goals to match against
+     * @param deadline The deadline for the whole request, including time spent waiting for slots
+     * @param key Who the request is made for
+     * @return One match per matching goal, holding the canonical subgoal indices
+     * @throws DeadlineExceededException If the deadline passed before matching finished
+     * @throws IOException If an I/O error occurs during LLM communication
+     * @throws InterruptedException If the operation is interrupted
+     */
+    public List<GoalMatch> matchGoals(
+            String developerResponse,
+            List<CompetenceGoal> competenceGoals,
+            Deadline deadline,
+            SchedulingKey key) throws IOException, InterruptedException {
+        ModelTarget target = selectModel(developerResponse, competenceGoals);
+        List<GoalMatch> matches = matchGoals(target.provider(), target.modelName(), developerResponse,
+                competenceGoals, deadline, key);
+        if (target.provider() == LlmProvider.OLLAMA && replayProvider == null) {
+            // The match request reset Ollama's keep-alive to the server default
+            CompletableFuture<Void> keepAlive = runInBackground("Keep-alive", () -> modelWarmer.keepAlive(
+                    target.provider(), ollamaEndpoint, target.modelName(),
+                    contextTokens(target.provider(), target.modelName())));
+            pendingKeepAlives.add(keepAlive);
+            keepAlive.whenComplete((_, _) -> pendingKeepAlives.remove(keepAlive));
+        }
+        return matches;
+    }
+
+    /**
+     * Returns the model a request is sent to: the one picked by the router, if one is set,
+     * or else the default model.
+     */
+    private ModelTarget selectModel(String developerResponse, List<CompetenceGoal> competenceGoals) {
+        ModelTarget defaultTarget = getDefaultTarget();
+        ModelRouter router = modelRouter;
+        if (router == null) {
+            return defaultTarget;
+        }
+        String[] prompt = new String[1];
+        return router.route(developerResponse, modelName -> {
+            if (prompt[0] == null) {
+                prompt[0] = createMatchingPrompt(developerResponse, competenceGoals);
+            }
+            return promptPlanner.getTokenEstimator().estimate(prompt[0], modelName);
+        }, defaultTarget);
+    }
+
+    /**
+     * Starts matching developer's response in the background using the default LLM provider
+     * and model.
+     *
+     * <p>The request runs on its own virtual thread. Cancelling the returned future, or the
+     * timeout passing, interrupts that thread: requests still in flight are aborted and their
+     * connections released, and no further model calls are made. The future then completes
+     * with a {@link java.util.concurrent.CancellationException} or a
+     * {@link java.util.concurrent.TimeoutException}. Only cancelling the returned future itself
+     * has this effect, not cancelling a stage derived from it.
+     *
+     * @param developerResponse The developer's description of their tasks
+     * @param competenceGoals The list of competence goals to match against
+     * @param timeout The time budget for the whole request, or {@code null} for none
+     * @return A future of one match per matching goal
+     */
+    public CompletableFuture<List<GoalMatch>> matchGoalsAsync(
+            String developerResponse,
+            List<CompetenceGoal> competenceGoals,
+            Duration timeout) {
+        return matchGoalsAsync(developerResponse, competenceGoals, timeout, SchedulingKey.INTERACTIVE);
+    }
+
+    /**
+     * Starts matching developer's response in the background like
+     * {@link #matchGoalsAsync(String, List, Duration)}, on behalf of the given priority class
+     * and tenant.
+     *
+     * @param developerResponse The developer's description of their tasks
+     * @param competenceGoals The list of competence goals to match against
+     * @param timeout The time budget for the whole request, or {@code null} for none
+     * @param key Who the request is made for
+     * @return A future of one match per matching goal
+     */
+    public CompletableFuture<List<GoalMatch>> matchGoalsAsync(
+            String developerResponse,
+            List<CompetenceGoal> competenceGoals,
+            Duration timeout,
+            SchedulingKey key) {
+        Deadline deadline = timeout != null ? Deadline.after(timeout) : Deadline.none();
+        return runCancellable(deadline, () -> matchGoals(developerResponse, competenceGoals, deadline, key));
+    }
+
+    /**
+     * Starts matching developer's response in the background, like
+     * {@link #matchGoalsAsync(String, List, Duration)}, and materializes the result.
+     *
+     * @param developerResponse The developer's description of their tasks
+     * @param competenceGoals The list of competence goals to match against
+     * @param timeout The time budget for the whole request, or {@code null} for none
+     * @return A future of the matching competence goals with their matching subgoals
+     */
+    public CompletableFuture<List<CompetenceGoal>> matchCompetenceGoalsAsync(
+            String developerResponse,
+            List<CompetenceGoal> competenceGoals,
+            Duration timeout) {
+        Deadline deadline = timeout != null ? Deadline.after(timeout) : Deadline.none();
+        return runCancellable(deadline, () -> materialize(competenceGoals,
+                matchGoals(developerResponse, competenceGoals, deadline)));
+    }
+
+    /**
+     * Runs a request on a new virtual thread, interrupting it when the returned future is
+     * cancelled or times out.
+     */
+    private static <T> CompletableFuture<T> runCancellable(Deadline deadline, Callable<T> request) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Thread worker = Thread.ofVirtual().name("llm-request").unstarted(() -> {
+            try {
+                future.complete(request.call());
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        });
+        future.whenComplete((_, failure) -> {
+            if (failure != null && Thread.currentThread() != worker) {
+                worker.interrupt();
+            }
+        });
+        if (deadline.isBounded()) {
+            future.orTimeout(deadline.remaining().toNanos(), TimeUnit.NANOSECONDS);
+        }
+        worker.start();
+        return future;
+    }
+
+    /**
+     * Starts loading the default model in the background, when it runs on a local provider.
+     *
+     * <p>The warm-up sends the static catalog prefix of the matching prompt and generates a
+     * single token, so the model is loaded and the prefix is cached while the developer is
+     * still typing. It also sets the keep-alive, so the model stays resident between entries.
+     * Warm-up failures are reported but never fail a later match.
+     *
+     * @param competenceGoals The catalog that later prompts will contain
+     * @return A future completing when the warm-up has finished or failed
+     */
+    public CompletableFuture<Void> warmUp(List<CompetenceGoal> competenceGoals) {
+        if (!ModelWarmer.supports(defaultProvider) || replayProvider != null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        String modelName = defaultModel(defaultProvider);
+        String endpoint = defaultProvider == LlmProvider.OLLAMA ? ollamaEndpoint : lmStudioEndpoint;
+
+        // Warm the prefix of the first prompt the planner will send for this catalog
+        List<CompetenceGoal> firstGroup = promptPlanner.plan(defaultProvider, modelName, "", competenceGoals,
+                goals -> createMatchingPrompt("", goals)).goalGroups().getFirst();
+        String prefix = createCatalogPrefix(firstGroup);
+
+        int contextTokens = contextTokens(defaultProvider, modelName);
+        return runInBackground("Model warm-up", () -> modelWarmer.warmUp(defaultProvider, endpoint, modelName,
+                contextTokens, prefix));
+    }
+
+    /**
+     * Sets how long a local model stays loaded after each request.
+     * A negative duration keeps it loaded until the server stops.
+     *
+     * @param keepAlive The keep-alive duration
+     */
+    public void setKeepAlive(Duration keepAlive) {
+        modelWarmer.setKeepAlive(Objects.requireNonNull(keepAlive, "Keep-alive must not be null"));
+    }
+
+    /**
+     * Waits for keep-alive requests that are still being sent after earlier matches. They run
+     * on virtual threads, which do not keep the JVM alive, so call this before exiting.
+     *
+     * @param timeout How long to wait at most
+     * @throws InterruptedException If the wait is interrupted
+     */
+    public void awaitKeepAlives(Duration timeout) throws InterruptedException {
+        try {
+            CompletableFuture.allOf(pendingKeepAlives.toArray(CompletableFuture[]::new))
+                    .get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (ExecutionException | TimeoutException e) {
+            System.err.println("Keep-alive was not sent before exit: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Runs a best-effort request on a virtual thread, reporting but not propagating failures.
+     */
+    private static CompletableFuture<Void> runInBackground(String description, WarmUpTask task) {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                task.run();
+            } catch (IOException | RuntimeException e) {
+                System.err.println(description + " failed: " + e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, runnable -> Thread.ofVirtual().start(runnable));
+    }
+
+    @FunctionalInterface
+    private interface WarmUpTask {
+        void run() throws IOException, InterruptedException;
+    }
 
     /**
      * Matches developer's response to competence goals using Ollama with the specified model.
@@ -193,9 +519,9 @@ public class LlmService {
             throw new IllegalStateException("Ollama endpoint is not configured");
         }
 
-        String prompt = createMatchingPrompt(developerResponse, competenceGoals);
-        String llmResponse = generateOllamaResponse(prompt, modelName);
-        return parseMatchingResponse(llmResponse, competenceGoals);
+        return materialize(competenceGoals,
+                matchGoals(LlmProvider.OLLAMA, modelName, developerResponse, competenceGoals, Deadline.none(),
+                        SchedulingKey.INTERACTIVE));
     }
 
     /**
@@ -206,9 +532,9 @@ public class LlmService {
             List<CompetenceGoal> competenceGoals,
             String githubModel) throws IOException, InterruptedException {
 
-        String prompt = createMatchingPrompt(developerResponse, competenceGoals);
-        String llmResponse = generateGitHubModelResponse(prompt, githubModel);
-        return parseMatchingResponse(llmResponse, competenceGoals);
+        return materialize(competenceGoals,
+                matchGoals(LlmProvider.GITHUB_MODELS, githubModel, developerResponse, competenceGoals, Deadline.none(),
+                        SchedulingKey.INTERACTIVE));
     }
 
     /**
@@ -226,9 +552,9 @@ public class LlmService {
         if (copilotTokenService == null) {
             throw new IllegalStateException("Copilot token service is not configured");
         }
-        String prompt = createMatchingPrompt(developerResponse, competenceGoals);
-        String llmResponse = generateCopilotResponse(prompt, copilotModel);
-        return parseMatchingResponse(llmResponse, competenceGoals);
+        return materialize(competenceGoals,
+                matchGoals(LlmProvider.GITHUB_COPILOT, copilotModel, developerResponse, competenceGoals, Deadline.none(),
+                        SchedulingKey.INTERACTIVE));
     }
 
     /**
@@ -251,67 +577,687 @@ public class LlmService {
             throw new IllegalStateException("LM Studio endpoint is not configured");
         }
 
-        String prompt = createMatchingPrompt(developerResponse, competenceGoals);
-        String llmResponse = generateLmStudioResponse(prompt, modelName);
-        return parseMatchingResponse(llmResponse, competenceGoals);
+        return materialize(competenceGoals,
+                matchGoals(LlmProvider.LM_STUDIO, modelName, developerResponse, competenceGoals, Deadline.none(),
+                        SchedulingKey.INTERACTIVE));
+    }
+
+    /**
+     * Sets the maximum number of characters sent to the model per chunk of developer response.
+     * Longer responses are split at paragraph and sentence boundaries, with a tenth of the chunk
+     * size repeated between neighbouring chunks, and the chunks are matched in parallel.
+     *
+     * @param maxChars Maximum chunk size in characters
+     */
+    public void setChunkSize(int maxChars) {
+        this.textChunker = new TextChunker(maxChars, maxChars / 10);
+    }
+
+    /**
+     * Overrides the context size assumed for every model, e.g. when Ollama runs with a larger
+     * {@code num_ctx} than its default.
+     *
+     * @param contextTokens The context size in tokens, or {@code null} to use the built-in table
+     */
+    public void setContextTokens(Integer contextTokens) {
+        promptPlanner.getContextBudgets().setOverride(contextTokens);
+    }
+
+    /**
+     * Returns the planner that sizes prompts against the model's context budget.
+     */
+    public PromptPlanner getPromptPlanner() {
+        return promptPlanner;
+    }
+
+    /**
+     * Puts a near-duplicate cache in front of all matching. A response whose SimHash signature
+     * is similar enough to an earlier response for the same catalog and model gets the earlier
+     * result without an LLM call.
+     *
+     * @param similarityCache The cache to use, or {@code null} to disable caching
+     */
+    public void setSimilarityCache(SimilarityCache similarityCache) {
+        this.similarityCache = similarityCache;
+    }
+
+    public SimilarityCache getSimilarityCache() {
+        return similarityCache;
+    }
+
+    /**
+     * Puts a shared cache of exact results in front of all matching, before the similarity
+     * cache. When its backend is shared by several instances, a response matched on one
+     * instance is answered from the cache on all of them.
+     *
+     * @param resultCache The cache to use, or {@code null} to disable it
+     */
+    public void setResultCache(ResultCache resultCache) {
+        this.resultCache = resultCache;
+    }
+
+    public ResultCache getResultCache() {
+        return resultCache;
+    }
+
+    /**
+     * Records every completion, keyed by prompt hash, provider and model, together with its
+     * latency. The recordings can be served later by {@link #setReplayProvider(ReplayProvider)}.
+     *
+     * @param recordingFile The file to append recordings to, or {@code null} to stop recording
+     */
+    public void setRecordingFile(RecordingFile recordingFile) {
+        this.recordingFile = recordingFile;
+    }
+
+    /**
+     * Routes each request to the model picked by the router instead of the default model.
+     * The router is also told the latency and estimated tokens of every model call.
+     *
+     * @param modelRouter The router, or {@code null} to send every request to the default model
+     * @throws IllegalArgumentException If a rule uses a provider this service has no endpoint
+     *                                  or credentials for
+     */
+    public void setModelRouter(ModelRouter modelRouter) {
+        if (modelRouter != null) {
+            for (RoutingRule rule : modelRouter.getRules()) {
+                boolean configured = switch (rule.provider()) {
+                    case OLLAMA -> ollamaEndpoint != null;
+                    case LM_STUDIO -> lmStudioEndpoint != null;
+                    case GITHUB_COPILOT -> copilotTokenService != null;
+                    case GITHUB_MODELS -> true;
+                };
+                if (!configured) {
+                    throw new IllegalArgumentException("Routing rule " + rule.name() + " uses "
+                            + rule.provider() + ", which is not configured");
+                }
+            }
+        }
+        this.modelRouter = modelRouter;
+    }
+
+    public ModelRouter getModelRouter() {
+        return modelRouter;
+    }
+
+    /**
+     * Returns the provider and model requests go to when no router picks another one.
+     */
+    public ModelTarget getDefaultTarget() {
+        return new ModelTarget(defaultProvider, defaultModel(defaultProvider));
+    }
+
+    /**
+     * Schedules all model calls, so that interactive requests are not queued behind batch jobs
+     * sharing this service. Each call waits for a slot of its priority class, and waiting
+     * counts against the request's deadline.
+     *
+     * @param scheduler The scheduler of model calls, or {@code null} to start calls right away
+     */
+    public void setScheduler(RequestScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    public RequestScheduler getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * Starts a conversation about one developer response with the default LLM provider and
+     * model. The catalog is sent once, as the system message, and every later revision of the
+     * response only sends the text that was added or removed, so local servers can reuse the
+     * KV cache of the whole conversation so far.
+     *
+     * @param competenceGoals The catalog to match against
+     * @return A new conversation, not yet sent to the model
+     * @throws IllegalArgumentException If the catalog does not fit the model's context
+     */
+    public MatchingConversation startConversation(List<CompetenceGoal> competenceGoals) {
+        String modelName = defaultModel(defaultProvider);
+        String systemPrompt = createConversationPrompt(competenceGoals);
+        int budget = promptPlanner.getContextBudgets().budgetFor(defaultProvider, modelName).inputTokens();
+        int tokens = promptPlanner.getTokenEstimator().estimate(systemPrompt, modelName);
+        if (tokens > budget) {
+            throw new IllegalArgumentException("The catalog (" + tokens + " tokens) does not fit the context of "
+                    + modelName + " (" + budget + " tokens); load the model with a longer context and pass it as"
+                    + " --context-tokens");
+        }
+        return new MatchingConversation(this, defaultProvider, modelName, systemPrompt, competenceGoals, budget);
+    }
+
+    /**
+     * Serves all completions from recordings instead of calling the providers, so that the
+     * prompt building and parsing can be measured without network access. Warm-up and
+     * keep-alive requests are skipped as well. Use the provider and model of the recording
+     * run, since they decide how prompts are planned.
+     *
+     * @param replayProvider The recordings to serve, or {@code null} to call the providers again
+     */
+    public void setReplayProvider(ReplayProvider replayProvider) {
+        this.replayProvider = replayProvider;
+    }
+
+    /**
+     * Matches the developer response with the given provider, answering repeats of earlier
+     * responses from the shared result cache and near-duplicates from the similarity cache,
+     * when they are configured.
+     */
+    private List<GoalMatch> matchGoals(
+            LlmProvider provider,
+            String modelName,
+            String developerResponse,
+            List<CompetenceGoal> competenceGoals,
+            Deadline deadline,
+            SchedulingKey key) throws IOException, InterruptedException {
+
+        ResultCache shared = resultCache;
+        SimilarityCache cache = similarityCache;
+        if (shared == null && cache == null) {
+            return matchUncached(provider, modelName, developerResponse, competenceGoals, deadline, key);
+        }
+
+        String scope = CatalogKey.of(competenceGoals) + "|" + provider + "|" + modelName;
+        if (shared == null) {
+            return matchSimilar(scope, provider, modelName, developerResponse, competenceGoals, deadline, key);
+        }
+        return shared.getOrLoad(scope, developerResponse,
+                () -> matchSimilar(scope, provider, modelName, developerResponse, competenceGoals, deadline, key));
+    }
+
+    /**
+     * Matches the developer response, answering near-duplicates of earlier responses from the
+     * similarity cache when one is configured.
+     */
+    private List<GoalMatch> matchSimilar(
+            String scope,
+            LlmProvider provider,
+            String modelName,
+            String developerResponse,
+            List<CompetenceGoal> competenceGoals,
+            Deadline deadline,
+            SchedulingKey key) throws IOException, InterruptedException {
+
+        SimilarityCache cache = similarityCache;
+        if (cache == null) {
+            return matchUncached(provider, modelName, developerResponse, competenceGoals, deadline, key);
+        }
+
+        Optional<List<GoalMatch>> cached = cache.get(scope, developerResponse);
+        if (cached.isPresent()) {
+            return cached.get();
+        }
+        List<GoalMatch> matches = matchUncached(provider, modelName, developerResponse, competenceGoals, deadline, key);
+        cache.put(scope, developerResponse, matches);
+        return matches;
+    }
+
+    /**
+     * Matches the developer response with the given provider, splitting long responses into
+     * chunks that are matched in parallel and merged per goal. Chunks are never larger than
+     * half of the model's context budget.
+     */
+    private List<GoalMatch> matchUncached(
+            LlmProvider provider,
+            String modelName,
+            String developerResponse,
+            List<CompetenceGoal> competenceGoals,
+            Deadline deadline,
+            SchedulingKey key) throws IOException, InterruptedException {
+
+        TextChunker chunker = textChunker;
+        int maxResponseChars = promptPlanner.maxResponseChars(provider, modelName);
+        if (chunker.getMaxChars() > maxResponseChars) {
+            chunker = new TextChunker(maxResponseChars, maxResponseChars / 10);
+        }
+
+        List<String> chunks = chunker.split(developerResponse);
+        if (chunks.size() == 1) {
+            return matchChunk(provider, modelName, developerResponse, competenceGoals, deadline, key);
+        }
+
+        List<Callable<List<GoalMatch>>> tasks = new ArrayList<>(chunks.size());
+        for (String chunk : chunks) {
+            tasks.add(() -> matchChunk(provider, modelName, chunk, competenceGoals, deadline, key));
+        }
+        return matchInParallel(tasks);
+    }
+
+    /**
+     * Runs matching tasks on virtual threads and merges their matches per goal.
+     * When a task fails or the caller is interrupted, the remaining tasks are interrupted
+     * instead of being left to finish.
+     */
+    private static List<GoalMatch> matchInParallel(List<Callable<List<GoalMatch>>> tasks)
+            throws IOException, InterruptedException {
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<List<GoalMatch>>> futures = new ArrayList<>(tasks.size());
+            for (Callable<List<GoalMatch>> task : tasks) {
+                futures.add(executor.submit(task));
+            }
+
+            List<GoalMatch> matches = new ArrayList<>();
+            try {
+                for (Future<List<GoalMatch>> future : futures) {
+                    matches.addAll(awaitMatches(future));
+                }
+            } catch (IOException | InterruptedException | RuntimeException e) {
+                executor.shutdownNow();
+                throw e;
+            }
+            return SubGoalResolver.mergeByGoal(matches);
+        }
+    }
+
+    /**
+     * Waits for a matching task, rethrowing the task's failure with its original type.
+     */
+    private static List<GoalMatch> awaitMatches(Future<List<GoalMatch>> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            switch (e.getCause()) {
+                case IOException io -> throw io;
+                case InterruptedException interrupted -> throw interrupted;
+                case RuntimeException runtime -> throw runtime;
+                default -> throw new IOException("Matching task failed", e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Enables the two-stage cascade. The selector model first sees only goal ids and titles
+     * and picks candidate goals; the matching model then only gets the subgoals of those goals.
+     * If the selector fails or returns nothing usable, the full catalog is matched instead.
+     *
+     * @param selector The small, fast model that selects candidate goals, or {@code null} to
+     *                 disable the cascade
+     */
+    public void setCascadeSelector(ModelTarget selector) {
+        this.cascadeSelector = selector;
+    }
+
+    /**
+     * Plans the prompts for one chunk so they fit the model's context, sends them and
+     * resolves the answers to canonical matches.
+     */
+    private List<GoalMatch> matchChunk(
+            LlmProvider provider,
+            String modelName,
+            String developerResponse,
+            List<CompetenceGoal> competenceGoals,
+            Deadline deadline,
+            SchedulingKey key) throws IOException, InterruptedException {
+
+        SubGoalResolver resolver = new SubGoalResolver(competenceGoals);
+        List<CompetenceGoal> candidates = competenceGoals;
+        ModelTarget selector = cascadeSelector;
+        if (selector != null) {
+            candidates = selectCandidateGoals(selector, developerResponse, competenceGoals, deadline, key);
+            if (candidates.isEmpty()) {
+                return List.of();
+            }
+        }
+
+        PromptPlanner.PromptPlan plan = promptPlanner.plan(provider, modelName, developerResponse, candidates,
+                goals -> createMatchingPrompt(developerResponse, goals));
+
+        if (plan.goalGroups().size() == 1) {
+            return matchPrompt(provider, modelName, developerResponse, plan.goalGroups().getFirst(), resolver, deadline, key);
+        }
+
+        List<Callable<List<GoalMatch>>> tasks = new ArrayList<>(plan.goalGroups().size());
+        for (List<CompetenceGoal> shard : plan.goalGroups()) {
+            tasks.add(() -> matchPrompt(provider, modelName, developerResponse, shard, resolver, deadline, key));
+        }
+        return matchInParallel(tasks);
+    }
+
+    /**
+     * First stage of the cascade: asks the selector model which goals may match, based on goal
+     * ids and titles only.
+     *
+     * @return The candidate goals in catalog order; the full catalog if selection failed
+     */
+    private List<CompetenceGoal> selectCandidateGoals(
+            ModelTarget selector,
+            String developerResponse,
+            List<CompetenceGoal> competenceGoals,
+            Deadline deadline,
+            SchedulingKey key) throws IOException, InterruptedException {
+
+        StringBuilder titles = new StringBuilder();
+        for (CompetenceGoal goal : competenceGoals) {
+            titles.append(goal.getId()).append(": ").append(goal.getTitle()).append('\n');
+        }
+        String prompt = String.format("""
+                You select which competence goals a developer response may relate to.
+                
+                COMPETENCE GOALS:
+                %s
+                DEVELOPER RESPONSE:
+                %s
+                
+                Return a JSON array with the ids of every goal the response may match, for example [1, 7].
+                When in doubt, include the goal. Return [] if none match.
+                """, titles, developerResponse);
+
+        try {
+            String answer = stripThinking(selector.provider(), selector.modelName(), prompt,
+                    generateResponse(selector.provider(), prompt, selector.modelName(), deadline, key));
+            Matcher array = ID_ARRAY_PATTERN.matcher(answer);
+            if (!array.find()) {
+                return competenceGoals;
+            }
+            Set<Integer> ids = new HashSet<>();
+            for (JsonNode id : objectMapper.readTree(array.group())) {
+                ids.add(id.asInt(-1));
+            }
+            return competenceGoals.stream().filter(goal -> ids.contains(goal.getId())).toList();
+        } catch (DeadlineExceededException e) {
+            throw e;
+        } catch (IOException | RuntimeException e) {
+            checkNotInterrupted();
+            System.err.println("Goal selection failed, matching the full catalog: " + e.getMessage());
+            return competenceGoals;
+        }
+    }
+
+    /**
+     * Sends a single matching prompt and resolves the answer to canonical matches.
+     * A truncated or partly invalid answer is salvaged with one short follow-up request; if
+     * that fails too, the matches salvaged so far are returned.
+     */
+    private List<GoalMatch> matchPrompt(
+            LlmProvider provider,
+            String modelName,
+            String developerResponse,
+            List<CompetenceGoal> promptGoals,
+            SubGoalResolver resolver,
+            Deadline deadline,
+            SchedulingKey key) throws IOException, InterruptedException {
+
+        PromptBuildEvent promptEvent = new PromptBuildEvent();
+        promptEvent.begin();
+        String prompt = createMatchingPrompt(developerResponse, promptGoals);
+        promptEvent.provider = provider.name();
+        promptEvent.model = modelName;
+        promptEvent.promptLength = prompt.length();
+        promptEvent.resultCount = promptGoals.size();
+        promptEvent.commit();
+
+        String llmResponse = generateResponse(provider, prompt, modelName, deadline, key);
+        deadline.check("parsing");
+        ParsedResponse parsed = parseResponse(provider, modelName, prompt, llmResponse, resolver);
+        if (parsed.isClean()) {
+            return parsed.matches();
+        }
+
+        String followUp = createFollowUpPrompt(developerResponse, promptGoals, llmResponse, parsed, resolver);
+        if (followUp == null) {
+            return parsed.matches();
+        }
+
+        List<GoalMatch> matches = new ArrayList<>(parsed.matches());
+        try {
+            String followUpResponse = generateResponse(provider, followUp, modelName, deadline, key);
+            matches.addAll(parseResponse(provider, modelName, followUp, followUpResponse, resolver).matches());
+        } catch (DeadlineExceededException e) {
+            throw e;
+        } catch (IOException | RuntimeException e) {
+            checkNotInterrupted();
+            System.err.println("Follow-up request failed, keeping partial result: " + e.getMessage());
+        }
+        return SubGoalResolver.mergeByGoal(matches);
+    }
+
+    /**
+     * Strips thinking sections and parses the answer, tracing both stages.
+     */
+    ParsedResponse parseResponse(
+            LlmProvider provider,
+            String modelName,
+            String prompt,
+            String llmResponse,
+            SubGoalResolver resolver) {
+
+        String cleaned = stripThinking(provider, modelName, prompt, llmResponse);
+
+        ParseEvent event = new ParseEvent();
+        event.begin();
+        ParsedResponse parsed = responseParser.parseStripped(cleaned, resolver);
+        event.provider = provider.name();
+        event.model = modelName;
+        event.promptLength = prompt.length();
+        event.resultCount = parsed.matches().size();
+        event.clean = parsed.isClean();
+        event.commit();
+        return parsed;
+    }
+
+    private static String stripThinking(LlmProvider provider, String modelName, String prompt, String llmResponse) {
+        ThinkStripEvent event = new ThinkStripEvent();
+        event.begin();
+        String cleaned = MatchResponseParser.stripThinking(llmResponse);
+        event.provider = provider.name();
+        event.model = modelName;
+        event.promptLength = prompt.length();
+        event.completionLength = llmResponse.length();
+        event.resultCount = cleaned.length();
+        event.commit();
+        return cleaned;
+    }
+
+    /**
+     * Returns the configured default model for the given provider.
+     */
+    private String defaultModel(LlmProvider provider) {
+        return switch (provider) {
+            case OLLAMA -> defaultOllamaModel;
+            case GITHUB_MODELS -> defaultGithubModel;
+            case GITHUB_COPILOT -> defaultCopilotModel;
+            case LM_STUDIO -> defaultLmStudioModel;
+        };
+    }
+
+    /**
+     * Sends the prompt to the given provider and returns the raw completion. The call gets at
+     * most the time left until the deadline, and is not started once it has passed.
+     * In replay mode the completion is served from the recordings instead; in record mode
+     * every completion is recorded with its latency.
+     */
+    private String generateResponse(LlmProvider provider, String prompt, String modelName, Deadline deadline,
+                                    SchedulingKey key)
+            throws IOException, InterruptedException {
+        return generateResponse(provider, List.of(UserMessage.from(prompt)), prompt, modelName, deadline, key);
+    }
+
+    /**
+     * Sends a conversation to the given provider and returns the raw completion, like
+     * {@link #generateResponse(LlmProvider, String, String, Deadline, SchedulingKey)}.
+     *
+     * @param messages The messages to send
+     * @param prompt The text the call is traced, recorded and replayed by: the prompt of a
+     *               single user message, or a rendering of the whole conversation
+     */
+    String generateResponse(
+            LlmProvider provider,
+            List<ChatMessage> messages,
+            String prompt,
+            String modelName,
+            Deadline deadline,
+            SchedulingKey key) throws IOException, InterruptedException {
+        checkNotInterrupted();
+        deadline.check("calling " + modelName);
+
+        try (RequestScheduler.Permit _ = acquireSlot(key, deadline)) {
+            return generateScheduledResponse(provider, messages, prompt, modelName, deadline);
+        }
+    }
+
+    /**
+     * Waits for a slot of the scheduler, if one is set.
+     *
+     * @return The slot, or {@code null} when calls are not scheduled
+     */
+    private RequestScheduler.Permit acquireSlot(SchedulingKey key, Deadline deadline)
+            throws DeadlineExceededException, InterruptedException {
+        RequestScheduler current = scheduler;
+        if (current == null) {
+            return null;
+        }
+        try {
+            return current.acquire(key, deadline.remaining());
+        } catch (TimeoutException e) {
+            throw new DeadlineExceededException("Deadline passed while waiting for a slot: " + e.getMessage());
+        }
+    }
+
+    private String generateScheduledResponse(
+            LlmProvider provider,
+            List<ChatMessage> messages,
+            String prompt,
+            String modelName,
+            Deadline deadline) throws IOException, InterruptedException {
+        ModelCallEvent event = new ModelCallEvent();
+        event.begin();
+        event.provider = provider.name();
+        event.model = modelName;
+        event.promptLength = prompt.length();
+
+        ReplayProvider replay = replayProvider;
+        if (replay != null) {
+            String completion = replay.complete(provider.name(), modelName, prompt);
+            event.replayed = true;
+            event.resultCount = completion.length();
+            event.commit();
+            return completion;
+        }
+
+        long started = System.nanoTime();
+        String completion = callProvider(provider, messages, modelName, deadline);
+        long latencyMillis = (System.nanoTime() - started) / 1_000_000;
+        event.resultCount = completion.length();
+        event.commit();
+        RecordingFile recorder = recordingFile;
+        if (recorder != null) {
+            recorder.append(new Recording(RecordingFile.promptHash(prompt), provider.name(), modelName, completion,
+                    latencyMillis));
+        }
+        ModelRouter router = modelRouter;
+        if (router != null) {
+            TokenEstimator estimator = promptPlanner.getTokenEstimator();
+            router.recordCall(new ModelTarget(provider, modelName), latencyMillis,
+                    estimator.estimate(prompt, modelName), estimator.estimate(completion, modelName));
+        }
+        return completion;
+    }
+
+    private String callProvider(LlmProvider provider, List<ChatMessage> messages, String modelName, Deadline deadline)
+            throws IOException, InterruptedException {
+        try {
+            return switch (provider) {
+                case OLLAMA -> generateOllamaResponse(messages, modelName, deadline.cap(DEFAULT_TIMEOUT));
+                case GITHUB_MODELS -> generateGitHubModelResponse(messages, modelName, deadline.cap(DEFAULT_TIMEOUT));
+                case GITHUB_COPILOT -> generateCopilotResponse(messages, modelName, deadline);
+                case LM_STUDIO -> generateLmStudioResponse(messages, modelName, deadline.cap(DEFAULT_TIMEOUT));
+            };
+        } catch (RuntimeException e) {
+            // The HTTP clients report timeouts and interrupts as runtime exceptions
+            checkNotInterrupted();
+            deadline.check("receiving the answer from " + modelName);
+            throw e;
+        }
+    }
+
+    /**
+     * Fails fast when the request was cancelled, so no further model calls are started.
+     */
+    private static void checkNotInterrupted() throws InterruptedException {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedException("Matching request was cancelled");
+        }
+    }
+
+    /**
+     * Materializes compact matches against the catalog for display.
+     */
+    private static List<CompetenceGoal> materialize(List<CompetenceGoal> competenceGoals, List<GoalMatch> matches) {
+        return new SubGoalResolver(competenceGoals).materialize(matches);
+    }
+
+    /**
+     * Returns the context size the budget table assumes for a model, which is also the context
+     * Ollama is asked to load it with.
+     */
+    private int contextTokens(LlmProvider provider, String modelName) {
+        return promptPlanner.getContextBudgets().budgetFor(provider, modelName).contextTokens();
     }
 
     /**
      * Generates a response using Ollama model.
      */
-    private String generateOllamaResponse(String prompt, String modelName) {
+    private String generateOllamaResponse(List<ChatMessage> messages, String modelName, Duration timeout) {
         ChatModel model = OllamaChatModel.builder()
                 .baseUrl(ollamaEndpoint)
                 .modelName(modelName)
-                .timeout(DEFAULT_TIMEOUT)
+                // Ollama otherwise loads the model with its own default context and truncates
+                .numCtx(contextTokens(LlmProvider.OLLAMA, modelName))
+                .httpClientBuilder(httpTransport.chatClientBuilder(ollamaEndpoint))
+                .timeout(timeout)
                 .build();
 
-        return model.chat(prompt);
+        return model.chat(messages).aiMessage().text();
     }
 
     /**
      * Generates a response using LM Studio via its OpenAI-compatible chat-completions endpoint.
      */
-    private String generateLmStudioResponse(String prompt, String modelName) {
+    private String generateLmStudioResponse(List<ChatMessage> messages, String modelName, Duration timeout) {
         OpenAiChatModel model = OpenAiChatModel.builder()
                 .baseUrl(lmStudioEndpoint)
                 .apiKey("lm-studio")
                 .modelName(modelName)
-                .timeout(DEFAULT_TIMEOUT)
+                .httpClientBuilder(httpTransport.chatClientBuilder(lmStudioEndpoint))
+                .timeout(timeout)
                 .logRequests(false)
                 .logResponses(false)
                 .build();
 
-        return model.chat(prompt);
+        return model.chat(messages).aiMessage().text();
     }
 
     /**
      * Generates a response using GitHub Models via their OpenAI-compatible inference endpoint.
      */
-    private String generateGitHubModelResponse(String prompt, String githubModel) {
+    private String generateGitHubModelResponse(List<ChatMessage> messages, String githubModel, Duration timeout) {
         OpenAiChatModel model = OpenAiChatModel.builder()
-                .baseUrl("https://models.inference.ai.azure.com")
+                .baseUrl(GITHUB_MODELS_ENDPOINT)
                 .apiKey(GH_TOKEN)
                 .modelName(githubModel)
-                .timeout(DEFAULT_TIMEOUT)
+                .httpClientBuilder(httpTransport.chatClientBuilder(GITHUB_MODELS_ENDPOINT))
+                .timeout(timeout)
                 .logRequests(false)
                 .logResponses(false)
                 .build();
 
-        return model.chat(prompt);
+        return model.chat(messages).aiMessage().text();
     }
 
     /**
      * Generates a response using GitHub Copilot via its OpenAI-compatible chat-completions endpoint.
      */
-    private String generateCopilotResponse(String prompt, String copilotModel) throws IOException, InterruptedException {
-        String copilotToken = copilotTokenService.getToken();
+    private String generateCopilotResponse(List<ChatMessage> messages, String copilotModel, Deadline deadline)
+            throws IOException, InterruptedException {
+        String copilotToken = copilotTokenService.getToken(deadline.cap(TOKEN_TIMEOUT));
+        deadline.check("calling " + copilotModel);
+        Duration timeout = deadline.cap(DEFAULT_TIMEOUT);
 
         OpenAiChatModel model = OpenAiChatModel.builder()
-                .baseUrl("https://api.githubcopilot.com")
+                .baseUrl(COPILOT_ENDPOINT)
                 .apiKey(copilotToken)
                 .modelName(copilotModel)
-                .timeout(DEFAULT_TIMEOUT)
+                .httpClientBuilder(httpTransport.chatClientBuilder(COPILOT_ENDPOINT))
+                .timeout(timeout)
                 .customHeaders(Map.of(
                         "Copilot-Integration-Id", "vscode-chat",
                         "Editor-Version", "vscode/1.95.0",
@@ -323,23 +1269,14 @@ public class LlmService {
                 .logResponses(false)
                 .build();
 
-        return model.chat(prompt);
+        return model.chat(messages).aiMessage().text();
     }
 
     /**
      * Creates a prompt for the LLM to match developer response to competence goals.
      */
     private String createMatchingPrompt(String developerResponse, List<CompetenceGoal> competenceGoals) {
-        try {
-            String goalsJson = objectMapper.writeValueAsString(competenceGoals);
-
-            return String.format("""
-                You are an AI assistant that helps match developer responses to competence goals.
-                
-                COMPETENCE GOALS:
-                %s
-                
-                DEVELOPER RESPONSE:
+        return createCatalogPrefix(competenceGoals) + String.format("""
                 %s
                 
                 <think>
@@ -351,51 +1288,154 @@ public class LlmService {
                 [
                   {
                     "competenceGoalId": 123,
-                    "matchingSubGoals": ["subgoal1", "subgoal2"]
+                    "matchingSubGoals": ["123.1", "123.4"]
                   }
                 ]
+                Refer to subgoals by their code, the number at the start of each subgoal.
                 Only include goals where there is a clear match to the developer's response.
-                """, goalsJson, developerResponse);
+                """, developerResponse);
+    }
+
+    /**
+     * Creates the system message of a matching conversation. It holds the whole catalog and the
+     * answer format, so that later turns only need to carry developer text.
+     */
+    private String createConversationPrompt(List<CompetenceGoal> competenceGoals) {
+        return createCatalogPrefix(competenceGoals).replace("\n\nDEVELOPER RESPONSE:\n", "\n") + """
+                
+                The developer will describe their tasks, and may later add or remove parts of
+                that description. After every message, answer with the matches for the whole
+                description as it stands, as a JSON array in this format:
+                [
+                  {
+                    "competenceGoalId": 123,
+                    "matchingSubGoals": ["123.1", "123.4"]
+                  }
+                ]
+                Refer to subgoals by their code, the number at the start of each subgoal.
+                Only include goals where there is a clear match to the developer's description.
+                """;
+    }
+
+    /**
+     * Creates the static start of the matching prompt, which only depends on the catalog.
+     * Keeping it first lets local servers reuse its KV cache across requests.
+     */
+    private String createCatalogPrefix(List<CompetenceGoal> competenceGoals) {
+        try {
+            String goalsJson = objectMapper.writeValueAsString(competenceGoals);
+
+            return String.format("""
+                You are an AI assistant that helps match developer responses to competence goals.
+                
+                COMPETENCE GOALS:
+                %s
+                
+                DEVELOPER RESPONSE:
+                """, goalsJson);
         } catch (JsonProcessingException e) {
             throw new IllegalArgumentException("Failed to serialize competence goals", e);
         }
     }
 
     /**
-     * Parses the LLM response to extract matching competence goals.
+     * Creates a short follow-up prompt covering only what is missing or invalid in an answer:
+     * the goals not answered before a truncation point, entries with unknown goal ids or
+     * unresolvable subgoals, or a reformatting request when no JSON was returned. Goals are
+     * only referred to by id and title; their subgoals are never sent again, except for
+     * goals whose subgoals the answer got wrong.
+     *
+     * @return The follow-up prompt, or {@code null} if there is nothing left to ask for
      */
-    private List<CompetenceGoal> parseMatchingResponse(String llmResponse, List<CompetenceGoal> allGoals) {
+    private String createFollowUpPrompt(
+            String developerResponse,
+            List<CompetenceGoal> promptGoals,
+            String llmResponse,
+            ParsedResponse parsed,
+            SubGoalResolver resolver) {
+
         try {
-            // Remove thinking sections and extract JSON array
-            String cleanedResponse = THINK_TAG_PATTERN.matcher(llmResponse).replaceAll("");
-            Matcher jsonMatcher = JSON_ARRAY_PATTERN.matcher(cleanedResponse);
+            if (!parsed.foundJson()) {
+                String previous = MatchResponseParser.stripThinking(llmResponse).strip();
+                if (previous.isEmpty()) {
+                    return null;
+                }
+                return String.format("""
+                    Rewrite the following answer as a JSON array in this format, and return nothing else:
+                    [{"competenceGoalId": 123, "matchingSubGoals": ["123.1", "123.4"]}]
+                    
+                    ANSWER:
+                    %s
+                    """, previous.substring(0, Math.min(previous.length(), MAX_FOLLOW_UP_ANSWER_CHARS)));
+            }
 
-            if (!jsonMatcher.find()) {
-                return List.of();
+            List<CompetenceGoal> remaining = parsed.complete() ? List.of() : remainingGoals(promptGoals, parsed);
+            List<MatchResponseParser.InvalidEntry> invalid = parsed.invalidEntries();
+            if (remaining.isEmpty() && invalid.isEmpty() && parsed.unresolvedSubGoals().isEmpty()) {
+                return null;
+            }
+
+            StringBuilder prompt = new StringBuilder("""
+                    You previously matched the developer response below to competence goals.
+                    Part of your answer could not be used.
+                    """);
+
+            if (!remaining.isEmpty()) {
+                prompt.append("\nYour answer was cut off.");
+                if (!parsed.answeredGoalIds().isEmpty()) {
+                    prompt.append(" You already answered the goals with these ids, do not repeat them: ")
+                            .append(parsed.answeredGoalIds().stream().sorted().toList());
+                }
+                prompt.append("\nOnly add further matches among the other goals:\n");
+                appendTitles(prompt, remaining);
             }
 
-            // Create lookup map for competence goals
-            Map<Integer, CompetenceGoal> goalMap = allGoals.stream()
-                    .collect(Collectors.toMap(CompetenceGoal::getId, goal -> goal));
-
-            // Parse and transform results
-            return objectMapper.readValue(jsonMatcher.group(),
-                            new TypeReference<List<MatchResult>>() {})
-                    .stream()
-                    .filter(match -> goalMap.containsKey(match.competenceGoalId))
-                    .map(match -> {
-                        CompetenceGoal original = goalMap.get(match.competenceGoalId);
-                        return new CompetenceGoal(
-                                original.getId(),
-                                original.getTitle(),
-                                match.matchingSubGoals != null ? match.matchingSubGoals : List.of()
-                        );
-                    })
-                    .toList();
-
-        } catch (Exception e) {
-            System.err.println("Error parsing LLM response: " + e.getMessage());
-            return List.of();
+            if (!invalid.isEmpty()) {
+                prompt.append("\nThese entries used goal ids that do not exist:\n")
+                        .append(objectMapper.writeValueAsString(invalid))
+                        .append("\nThe valid goals are:\n");
+                appendTitles(prompt, promptGoals);
+            }
+
+            if (!parsed.unresolvedSubGoals().isEmpty()) {
+                prompt.append("\nThese subgoals do not exist in their goal:\n")
+                        .append(objectMapper.writeValueAsString(parsed.unresolvedSubGoals()))
+                        .append("\nThe valid subgoals of those goals are:\n");
+                for (Integer goalId : parsed.unresolvedSubGoals().keySet()) {
+                    for (String subGoal : resolver.getGoal(goalId).getSubGoals()) {
+                        prompt.append(subGoal).append('\n');
+                    }
+                }
+            }
+
+            prompt.append(String.format("""
+                    
+                    DEVELOPER RESPONSE:
+                    %s
+                    
+                    Return only the additional or corrected matches as a JSON array in this format,
+                    or [] if there are none, without any explanation:
+                    [{"competenceGoalId": 123, "matchingSubGoals": ["123.1", "123.4"]}]
+                    """, developerResponse));
+            return prompt.toString();
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Failed to serialize follow-up request", e);
+        }
+    }
+
+    /**
+     * Returns the goals of a truncated prompt that no complete entry of the answer covers,
+     * in the order of the prompt.
+     */
+    private static List<CompetenceGoal> remainingGoals(List<CompetenceGoal> promptGoals, ParsedResponse parsed) {
+        return promptGoals.stream()
+                .filter(goal -> !parsed.answeredGoalIds().contains(goal.getId()))
+                .toList();
+    }
+
+    private static void appendTitles(StringBuilder prompt, List<CompetenceGoal> goals) {
+        for (CompetenceGoal goal : goals) {
+            prompt.append(goal.getId()).append(": ").append(goal.getTitle()).append('\n');
         }
     }
 }
\ No newline at end of file
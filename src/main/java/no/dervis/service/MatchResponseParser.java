@@ -0,0 +1,148 @@
+package no.dervis.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import no.dervis.model.GoalMatch;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Parses a model's matching answer entry by entry, keeping everything that can be salvaged.
+ *
+ * <p>The JSON array is read with a streaming parser, so every complete entry before a
+ * truncation or syntax error is kept. Entries with goal ids that are not in the catalog and
+ * subgoals that cannot be resolved are reported separately, so that only those parts need to
+ * be asked for again.
+ */
+public class MatchResponseParser {
+
+    private static final Pattern THINK_TAG_PATTERN = Pattern.compile("<think>.*?(</think>|$)", Pattern.DOTALL);
+    private static final Pattern ARRAY_START_PATTERN = Pattern.compile("\\[\\s*([{\\]]|$)");
+
+    /**
+     * An entry whose goal id is not in the catalog.
+     *
+     * @param goalId The reported goal id, or {@code -1} if it was missing or not a number
+     * @param subGoals The subgoals reported for it
+     */
+    public record InvalidEntry(int goalId, List<String> subGoals) {}
+
+    /**
+     * Outcome of parsing one answer.
+     *
+     * @param matches The canonical matches of all complete, valid entries
+     * @param foundJson Whether the answer contained a JSON array at all
+     * @param complete Whether the array was read to its end without errors
+     * @param answeredGoalIds The goal ids of all complete, valid entries
+     * @param invalidEntries Entries with unknown goal ids
+     * @param unresolvedSubGoals Subgoal strings that could not be resolved, per valid goal id
+     */
+    public record ParsedResponse(
+            List<GoalMatch> matches,
+            boolean foundJson,
+            boolean complete,
+            Set<Integer> answeredGoalIds,
+            List<InvalidEntry> invalidEntries,
+            Map<Integer, List<String>> unresolvedSubGoals
+    ) {
+
+        /**
+         * Returns whether the whole answer was read and every entry was valid.
+         */
+        public boolean isClean() {
+            return foundJson && complete && invalidEntries.isEmpty() && unresolvedSubGoals.isEmpty();
+        }
+    }
+
+    private final ObjectMapper objectMapper;
+
+    public MatchResponseParser(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Removes thinking sections, including one left open by a truncated answer.
+     */
+    public static String stripThinking(String llmResponse) {
+        return THINK_TAG_PATTERN.matcher(llmResponse).replaceAll("");
+    }
+
+    /**
+     * Parses an answer against the catalog of the given resolver.
+     *
+     * @param llmResponse The raw completion
+     * @param resolver Resolver for the catalog the prompt was built from
+     * @return The salvaged matches and a description of what is missing or invalid
+     */
+    public ParsedResponse parse(String llmResponse, SubGoalResolver resolver) {
+        return parseStripped(stripThinking(llmResponse), resolver);
+    }
+
+    /**
+     * Parses an answer whose thinking sections are already removed by {@link #stripThinking(String)}.
+     *
+     * @param cleaned The completion without thinking sections
+     * @param resolver Resolver for the catalog the prompt was built from
+     * @return The salvaged matches and a description of what is missing or invalid
+     */
+    public ParsedResponse parseStripped(String cleaned, SubGoalResolver resolver) {
+        Matcher start = ARRAY_START_PATTERN.matcher(cleaned);
+        if (!start.find()) {
+            return new ParsedResponse(List.of(), false, false, Set.of(), List.of(), Map.of());
+        }
+
+        List<GoalMatch> matches = new ArrayList<>();
+        List<InvalidEntry> invalidEntries = new ArrayList<>();
+        Map<Integer, List<String>> unresolved = new LinkedHashMap<>();
+        boolean complete = false;
+        Set<Integer> answeredGoalIds = new HashSet<>();
+
+        try (JsonParser parser = objectMapper.getFactory().createParser(cleaned.substring(start.start()))) {
+            parser.nextToken();
+            JsonToken token;
+            while ((token = parser.nextToken()) != null) {
+                if (token == JsonToken.END_ARRAY) {
+                    complete = true;
+                    break;
+                }
+                if (token != JsonToken.START_OBJECT) {
+                    parser.skipChildren();
+                    continue;
+                }
+
+                JsonNode entry = parser.readValueAsTree();
+                JsonNode idNode = entry.path("competenceGoalId");
+                int goalId = idNode.isNumber() || idNode.isTextual() ? idNode.asInt(-1) : -1;
+                List<String> subGoals = new ArrayList<>();
+                entry.path("matchingSubGoals").forEach(subGoal -> subGoals.add(subGoal.asText()));
+
+                if (!resolver.containsGoal(goalId)) {
+                    invalidEntries.add(new InvalidEntry(goalId, subGoals));
+                    continue;
+                }
+                answeredGoalIds.add(goalId);
+                matches.add(resolver.resolveMatch(goalId, subGoals));
+                for (String subGoal : subGoals) {
+                    if (resolver.resolve(goalId, subGoal) < 0) {
+                        unresolved.computeIfAbsent(goalId, _ -> new ArrayList<>()).add(subGoal);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            // Truncated or malformed: keep the entries read so far
+        }
+
+        return new ParsedResponse(SubGoalResolver.mergeByGoal(matches), true, complete,
+                Set.copyOf(answeredGoalIds), invalidEntries, unresolved);
+    }
+}
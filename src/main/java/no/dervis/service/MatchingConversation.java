@@ -0,0 +1,231 @@
+package no.dervis.service;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.UserMessage;
+import no.dervis.model.CompetenceGoal;
+import no.dervis.model.GoalMatch;
+import no.dervis.scheduling.SchedulingKey;
+import no.dervis.service.LlmService.LlmProvider;
+import no.dervis.service.MatchResponseParser.ParsedResponse;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * A conversation with a model about one developer response that is revised over several
+ * turns.
+ *
+ * <p>The catalog is sent once, as the system message, and the chat history is kept and sent
+ * unchanged with every turn. Each turn only adds the sentences that were added to or removed
+ * from the response since the previous turn. Since the start of the conversation never
+ * changes, Ollama and LM Studio can reuse its KV cache and only need to process the new
+ * message. When the history no longer fits the model's context, it is replaced by a single
+ * turn holding the whole current response.
+ *
+ * <p>Create conversations with {@link LlmService#startConversation(List)}. Turns are taken one
+ * at a time.
+ */
+public class MatchingConversation {
+
+    private static final Pattern SENTENCE_PATTERN = Pattern.compile("(?<=[.!?])\\s+|\\n");
+
+    /**
+     * Outcome of one turn.
+     *
+     * @param matches The matches for the whole response as it stands
+     * @param added Goals, and the subgoals within them, that were not matched before this turn
+     * @param removed Goals, and the subgoals within them, that are no longer matched
+     */
+    public record ConversationTurn(List<GoalMatch> matches, List<GoalMatch> added, List<GoalMatch> removed) {
+
+        /**
+         * Returns whether the turn changed any match.
+         */
+        public boolean hasChanges() {
+            return !added.isEmpty() || !removed.isEmpty();
+        }
+    }
+
+    private final LlmService llmService;
+    private final LlmProvider provider;
+    private final String modelName;
+    private final SystemMessage systemMessage;
+    private final SubGoalResolver resolver;
+    private final int inputTokens;
+
+    private final List<ChatMessage> history = new ArrayList<>();
+    private List<String> sentences = List.of();
+    private List<GoalMatch> matches = List.of();
+
+    MatchingConversation(LlmService llmService, LlmProvider provider, String modelName, String systemPrompt,
+                         List<CompetenceGoal> competenceGoals, int inputTokens) {
+        this.llmService = llmService;
+        this.provider = provider;
+        this.modelName = modelName;
+        this.systemMessage = SystemMessage.from(systemPrompt);
+        this.resolver = new SubGoalResolver(competenceGoals);
+        this.inputTokens = inputTokens;
+        history.add(systemMessage);
+    }
+
+    /**
+     * Matches the response without a deadline, see {@link #update(String, Deadline)}.
+     */
+    public ConversationTurn update(String developerResponse) throws IOException, InterruptedException {
+        return update(developerResponse, Deadline.none());
+    }
+
+    /**
+     * Matches the current version of the developer response. The first turn sends the whole
+     * response; later turns send only the sentences that were added or removed. A response
+     * without changes is answered without calling the model.
+     *
+     * <p>A failed turn leaves the conversation as it was, so it can be retried.
+     *
+     * @param developerResponse The whole response as it stands now
+     * @param deadline The deadline for the turn
+     * @return The matches after this turn and how they changed
+     * @throws IOException If the model call fails or its answer holds no JSON array
+     * @throws InterruptedException If the turn is interrupted
+     */
+    public synchronized ConversationTurn update(String developerResponse, Deadline deadline)
+            throws IOException, InterruptedException {
+        List<String> current = sentences(developerResponse);
+        List<String> added = difference(current, sentences);
+        List<String> removed = difference(sentences, current);
+        if (history.size() > 1 && added.isEmpty() && removed.isEmpty()) {
+            return new ConversationTurn(matches, List.of(), List.of());
+        }
+
+        List<ChatMessage> messages = new ArrayList<>(history);
+        messages.add(UserMessage.from(history.size() == 1
+                ? createFirstMessage(developerResponse)
+                : createRevisionMessage(added, removed)));
+        String rendered = render(messages);
+        if (history.size() > 1
+                && llmService.getPromptPlanner().getTokenEstimator().estimate(rendered, modelName) > inputTokens) {
+            // Start over from the catalog, which is still cached by the server
+            messages = new ArrayList<>(List.of(systemMessage, UserMessage.from(createFirstMessage(developerResponse))));
+            rendered = render(messages);
+        }
+
+        String completion = llmService.generateResponse(provider, messages, rendered, modelName, deadline,
+                SchedulingKey.INTERACTIVE);
+        deadline.check("parsing");
+        ParsedResponse parsed = llmService.parseResponse(provider, modelName, rendered, completion, resolver);
+        if (!parsed.foundJson()) {
+            throw new IOException("The model did not answer with a JSON array");
+        }
+
+        messages.add(AiMessage.from(completion));
+        history.clear();
+        history.addAll(messages);
+        sentences = current;
+        ConversationTurn turn = new ConversationTurn(parsed.matches(),
+                subtract(parsed.matches(), matches), subtract(matches, parsed.matches()));
+        matches = parsed.matches();
+        return turn;
+    }
+
+    /**
+     * Returns the matches of the last successful turn.
+     */
+    public synchronized List<GoalMatch> getMatches() {
+        return matches;
+    }
+
+    /**
+     * Returns the number of messages sent with the next turn, including the system message.
+     */
+    public synchronized int getHistorySize() {
+        return history.size();
+    }
+
+    private static String createFirstMessage(String developerResponse) {
+        return "DEVELOPER RESPONSE:\n" + developerResponse.strip();
+    }
+
+    private static String createRevisionMessage(List<String> added, List<String> removed) {
+        StringBuilder message = new StringBuilder("The developer revised their response.\n");
+        if (!added.isEmpty()) {
+            message.append("\nADDED:\n");
+            added.forEach(sentence -> message.append("- ").append(sentence).append('\n'));
+        }
+        if (!removed.isEmpty()) {
+            message.append("\nREMOVED:\n");
+            removed.forEach(sentence -> message.append("- ").append(sentence).append('\n'));
+        }
+        message.append("\nAnswer with the matches for the whole revised response.");
+        return message.toString();
+    }
+
+    /**
+     * Renders the messages as one text, used to trace, record and replay the turn.
+     */
+    private static String render(List<ChatMessage> messages) {
+        StringBuilder text = new StringBuilder();
+        for (ChatMessage message : messages) {
+            text.append(message.type()).append(":\n").append(switch (message) {
+                case SystemMessage system -> system.text();
+                case UserMessage user -> user.singleText();
+                case AiMessage ai -> ai.text();
+                default -> message.toString();
+            }).append("\n\n");
+        }
+        return text.toString();
+    }
+
+    private static List<String> sentences(String text) {
+        List<String> sentences = new ArrayList<>();
+        for (String sentence : SENTENCE_PATTERN.split(text)) {
+            if (!sentence.isBlank()) {
+                sentences.add(sentence.strip());
+            }
+        }
+        return sentences;
+    }
+
+    /**
+     * Returns the sentences of {@code a} that are not in {@code b}, counting repeated sentences.
+     */
+    private static List<String> difference(List<String> a, List<String> b) {
+        Map<String, Integer> remaining = new LinkedHashMap<>();
+        b.forEach(sentence -> remaining.merge(sentence, 1, Integer::sum));
+        List<String> result = new ArrayList<>();
+        for (String sentence : a) {
+            if (remaining.merge(sentence, -1, Integer::sum) < 0) {
+                result.add(sentence);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the goals and subgoals matched in {@code a} but not in {@code b}.
+     */
+    private static List<GoalMatch> subtract(List<GoalMatch> a, List<GoalMatch> b) {
+        Map<Integer, BitSet> other = new LinkedHashMap<>();
+        b.forEach(match -> other.put(match.getGoalId(), match.getSubGoals()));
+        List<GoalMatch> result = new ArrayList<>();
+        for (GoalMatch match : a) {
+            BitSet bits = match.getSubGoals();
+            BitSet known = other.get(match.getGoalId());
+            if (known == null) {
+                result.add(match);
+                continue;
+            }
+            bits.andNot(known);
+            if (!bits.isEmpty()) {
+                result.add(new GoalMatch(match.getGoalId(), bits));
+            }
+        }
+        return result;
+    }
+}
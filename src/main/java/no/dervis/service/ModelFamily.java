@@ -0,0 +1,67 @@
+package no.dervis.service;
+
+import java.util.Locale;
+
+/**
+ * Model families with their approximate BPE tokenizer characteristics.
+ *
+ * <p>The values describe how many characters of a long word a tokenizer's vocabulary typically
+ * covers per token, and up to which length a common ASCII word is usually a single token.
+ * Larger vocabularies (e.g. OpenAI o200k, Qwen) produce fewer tokens for the same text than
+ * the 32k vocabularies of older Llama and Mistral models.
+ */
+public enum ModelFamily {
+    GPT(4.2, 8),
+    CLAUDE(3.8, 7),
+    QWEN(4.0, 8),
+    LLAMA(4.0, 7),
+    MISTRAL(3.3, 6),
+    GEMMA(4.0, 8),
+    GENERIC(3.5, 6);
+
+    private final double charsPerPiece;
+    private final int wholeWordChars;
+
+    ModelFamily(double charsPerPiece, int wholeWordChars) {
+        this.charsPerPiece = charsPerPiece;
+        this.wholeWordChars = wholeWordChars;
+    }
+
+    /**
+     * Average number of characters covered by one token of a long word.
+     */
+    public double charsPerPiece() {
+        return charsPerPiece;
+    }
+
+    /**
+     * Longest ASCII word that is usually encoded as a single token.
+     */
+    public int wholeWordChars() {
+        return wholeWordChars;
+    }
+
+    /**
+     * Guesses the family from a model name such as {@code "qwen2.5:32b"} or {@code "openai/gpt-5"}.
+     */
+    public static ModelFamily of(String modelName) {
+        if (modelName == null) {
+            return GENERIC;
+        }
+        String name = modelName.toLowerCase(Locale.ROOT);
+        if (name.contains("gpt") || name.matches("(.*/)?o[1-9].*")) {
+            return GPT;
+        } else if (name.contains("claude")) {
+            return CLAUDE;
+        } else if (name.contains("qwen")) {
+            return QWEN;
+        } else if (name.contains("llama")) {
+            return LLAMA;
+        } else if (name.contains("mistral") || name.contains("mixtral")) {
+            return MISTRAL;
+        } else if (name.contains("gemma")) {
+            return GEMMA;
+        }
+        return GENERIC;
+    }
+}
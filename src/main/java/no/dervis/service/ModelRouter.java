@@ -0,0 +1,201 @@
+package no.dervis.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import no.dervis.service.LlmService.ModelTarget;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ToIntFunction;
+
+/**
+ * Picks the model for each request from declared rules, so that short, simple responses go to
+ * a small, fast model and long ones to a stronger model, without one model for every input.
+ *
+ * <p>Rules are checked in order and the first rule whose limits the request is within wins;
+ * requests matching no rule go to the service's default model. A rule with a latency limit is
+ * skipped while the recent average latency of its model is above the limit, for example
+ * while a local model is busy; every {@value #PROBE_INTERVAL}th skipped request is sent to it
+ * anyway, so its average recovers once it is fast again. Recent latency is an exponentially
+ * weighted moving average of the model's calls.
+ *
+ * <p>The router counts decisions per rule and calls, latency and estimated tokens per model.
+ */
+public class ModelRouter {
+
+    /** Name under which requests that match no rule are counted. */
+    public static final String DEFAULT_ROUTE = "default";
+    /** Weight of the newest call in the latency average. */
+    static final double LATENCY_SMOOTHING = 0.2;
+    static final int PROBE_INTERVAL = 20;
+
+    /**
+     * Usage of one model since the router was created.
+     *
+     * @param target The model
+     * @param calls The number of model calls
+     * @param latencyMillis The recent average latency, or {@code 0} before the first call
+     * @param promptTokens The estimated prompt tokens sent
+     * @param completionTokens The estimated completion tokens received
+     */
+    public record TargetMetrics(ModelTarget target, long calls, double latencyMillis, long promptTokens,
+                                long completionTokens) {
+
+        @Override
+        public String toString() {
+            return String.format("%s/%s: %d calls, %.0f ms recent latency, ~%d prompt and ~%d completion tokens",
+                    target.provider(), target.modelName(), calls, latencyMillis, promptTokens, completionTokens);
+        }
+    }
+
+    private static final class TargetStats {
+        private long calls;
+        private double latencyMillis;
+        private long promptTokens;
+        private long completionTokens;
+        private int skipped;
+    }
+
+    private final List<RoutingRule> rules;
+    private final Map<String, Long> decisions = new LinkedHashMap<>();
+    private final Map<ModelTarget, TargetStats> stats = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a router.
+     *
+     * @param rules The rules in the order they are checked, with distinct names
+     */
+    public ModelRouter(List<RoutingRule> rules) {
+        Set<String> names = new HashSet<>();
+        for (RoutingRule rule : rules) {
+            if (!names.add(rule.name()) || rule.name().equals(DEFAULT_ROUTE)) {
+                throw new IllegalArgumentException("Duplicate or reserved routing rule name: " + rule.name());
+            }
+        }
+        this.rules = List.copyOf(rules);
+        for (RoutingRule rule : this.rules) {
+            decisions.put(rule.name(), 0L);
+        }
+        decisions.put(DEFAULT_ROUTE, 0L);
+    }
+
+    /**
+     * Reads the rules from a JSON config file of the form {@code {"rules": [...]}}.
+     *
+     * @throws IOException If the file cannot be read or holds invalid rules
+     */
+    public static ModelRouter load(Path file, ObjectMapper objectMapper) throws IOException {
+        JsonNode config = objectMapper.readTree(Files.readString(file));
+        try {
+            List<RoutingRule> rules = objectMapper.convertValue(config.path("rules"), new TypeReference<>() {});
+            if (rules == null || rules.isEmpty()) {
+                throw new IOException("No routing rules in " + file);
+            }
+            return new ModelRouter(rules);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid routing config " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    public List<RoutingRule> getRules() {
+        return rules;
+    }
+
+    /**
+     * Picks the model for a request.
+     *
+     * @param developerResponse The response to match
+     * @param promptTokens Estimates the tokens of the matching prompt for a model name
+     * @param fallback The model used when no rule matches
+     * @return The model to send the request to
+     */
+    public ModelTarget route(String developerResponse, ToIntFunction<String> promptTokens, ModelTarget fallback) {
+        for (RoutingRule rule : rules) {
+            if (rule.maxChars() != null && developerResponse.length() > rule.maxChars()) {
+                continue;
+            }
+            if (rule.maxPromptTokens() != null && promptTokens.applyAsInt(rule.model()) > rule.maxPromptTokens()) {
+                continue;
+            }
+            if (rule.maxLatencyMillis() != null && isTooSlow(rule.target(), rule.maxLatencyMillis())) {
+                continue;
+            }
+            countDecision(rule.name());
+            return rule.target();
+        }
+        countDecision(DEFAULT_ROUTE);
+        return fallback;
+    }
+
+    /**
+     * Records a completed model call.
+     *
+     * @param target The model that was called
+     * @param latencyMillis How long the call took
+     * @param promptTokens The estimated tokens of the prompt
+     * @param completionTokens The estimated tokens of the completion
+     */
+    public void recordCall(ModelTarget target, long latencyMillis, int promptTokens, int completionTokens) {
+        TargetStats stat = stats.computeIfAbsent(target, _ -> new TargetStats());
+        synchronized (stat) {
+            stat.latencyMillis = stat.calls == 0
+                    ? latencyMillis
+                    : LATENCY_SMOOTHING * latencyMillis + (1 - LATENCY_SMOOTHING) * stat.latencyMillis;
+            stat.calls++;
+            stat.promptTokens += promptTokens;
+            stat.completionTokens += completionTokens;
+        }
+    }
+
+    /**
+     * Returns how many requests each rule got, in rule order and ending with
+     * {@value #DEFAULT_ROUTE}.
+     */
+    public synchronized Map<String, Long> getDecisions() {
+        return new LinkedHashMap<>(decisions);
+    }
+
+    /**
+     * Returns the usage of every model called since the router was created.
+     */
+    public List<TargetMetrics> getMetrics() {
+        List<TargetMetrics> metrics = new ArrayList<>();
+        stats.forEach((target, stat) -> {
+            synchronized (stat) {
+                metrics.add(new TargetMetrics(target, stat.calls, stat.latencyMillis, stat.promptTokens,
+                        stat.completionTokens));
+            }
+        });
+        return metrics;
+    }
+
+    private synchronized void countDecision(String route) {
+        decisions.merge(route, 1L, Long::sum);
+    }
+
+    private boolean isTooSlow(ModelTarget target, long maxLatencyMillis) {
+        TargetStats stat = stats.get(target);
+        if (stat == null) {
+            return false;
+        }
+        synchronized (stat) {
+            if (stat.calls == 0 || stat.latencyMillis <= maxLatencyMillis) {
+                return false;
+            }
+            if (++stat.skipped >= PROBE_INTERVAL) {
+                stat.skipped = 0;
+                return false;
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package no.dervis.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import no.dervis.http.HttpTransport;
+import no.dervis.service.LlmService.LlmProvider;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+
+/**
+ * Preloads local models and keeps them resident between requests.
+ *
+ * <p>Ollama and LM Studio load a model on the first request after it has been evicted, which
+ * can take tens of seconds for large models. A warm-up sends the static catalog prefix of the
+ * matching prompt to the same chat endpoint, as the single user message a match request
+ * starts with, and generates a single token. The chat template then renders the same tokens
+ * for both, so the model weights and the prefix's KV cache are ready when the real request
+ * arrives. The keep-alive tells the server how long to keep the model loaded after each
+ * request.
+ */
+public class ModelWarmer {
+
+    /** Default time a local model stays loaded after the last request. */
+    public static final Duration DEFAULT_KEEP_ALIVE = Duration.ofMinutes(30);
+    // Loading a large model from disk can take minutes.
+    private static final Duration WARM_UP_TIMEOUT = Duration.ofMinutes(10);
+
+    private final HttpTransport transport;
+    private final ObjectMapper mapper;
+    private volatile Duration keepAlive = DEFAULT_KEEP_ALIVE;
+
+    public ModelWarmer(ObjectMapper mapper) {
+        this(mapper, HttpTransport.defaultTransport());
+    }
+
+    public ModelWarmer(ObjectMapper mapper, HttpTransport transport) {
+        this.mapper = mapper;
+        this.transport = transport;
+    }
+
+    /**
+     * Sets how long the server keeps the model loaded after a request.
+     * A negative duration keeps it loaded until the server stops.
+     */
+    public void setKeepAlive(Duration keepAlive) {
+        this.keepAlive = keepAlive;
+    }
+
+    public Duration getKeepAlive() {
+        return keepAlive;
+    }
+
+    /**
+     * Returns whether the provider runs models locally and benefits from warm-up.
+     */
+    public static boolean supports(LlmProvider provider) {
+        return provider == LlmProvider.OLLAMA || provider == LlmProvider.LM_STUDIO;
+    }
+
+    /**
+     * Loads the model and processes the prompt prefix, generating a single token.
+     *
+     * @param provider A local provider
+     * @param endpoint The provider's endpoint
+     * @param modelName The model to load
+     * @param contextTokens The context size later requests load the model with
+     * @param promptPrefix The static start of the prompts that will follow
+     * @throws IOException If the server rejects the request
+     * @throws InterruptedException If the warm-up is interrupted
+     */
+    public void warmUp(LlmProvider provider, String endpoint, String modelName, int contextTokens,
+                       String promptPrefix) throws IOException, InterruptedException {
+        send(provider, endpoint, modelName, contextTokens, promptPrefix);
+    }
+
+    /**
+     * Refreshes the model's keep-alive without processing a prompt, e.g. after a request that
+     * reset it to the server default. The context size must match the one the model was loaded
+     * with, or Ollama reloads it.
+     */
+    public void keepAlive(LlmProvider provider, String endpoint, String modelName, int contextTokens)
+            throws IOException, InterruptedException {
+        send(provider, endpoint, modelName, contextTokens, null);
+    }
+
+    private void send(LlmProvider provider, String endpoint, String modelName, int contextTokens, String prompt)
+            throws IOException, InterruptedException {
+        ObjectNode body = mapper.createObjectNode().put("model", modelName);
+        String path = switch (provider) {
+            case OLLAMA -> {
+                // Without messages Ollama only loads the model and updates its keep-alive
+                ArrayNode messages = body.putArray("messages");
+                ObjectNode options = body.putObject("options").put("num_ctx", contextTokens);
+                if (prompt != null) {
+                    messages.addObject().put("role", "user").put("content", prompt);
+                    options.put("num_predict", 1);
+                }
+                body.put("stream", false);
+                body.put("keep_alive", keepAlive.isNegative() ? -1 : keepAlive.toSeconds());
+                yield "/api/chat";
+            }
+            case LM_STUDIO -> {
+                body.putArray("messages").addObject()
+                        .put("role", "user")
+                        .put("content", prompt != null ? prompt : "ping");
+                body.put("max_tokens", 1);
+                if (!keepAlive.isNegative()) {
+                    body.put("ttl", keepAlive.toSeconds());
+                }
+                yield "/chat/completions";
+            }
+            default -> throw new IllegalArgumentException("Warm-up is not supported for " + provider);
+        };
+
+        HttpRequest request = HttpRequest.newBuilder(URI.create(stripTrailingSlash(endpoint) + path))
+                .header("Content-Type", "application/json")
+                .timeout(WARM_UP_TIMEOUT)
+                .POST(HttpRequest.BodyPublishers.ofString(mapper.writeValueAsString(body)))
+                .build();
+
+        HttpResponse<String> response = transport.clientFor(endpoint).send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() / 100 != 2) {
+            throw new IOException("Warm-up of " + modelName + " failed: "
+                    + response.statusCode() + " " + response.body());
+        }
+    }
+
+    private static String stripTrailingSlash(String endpoint) {
+        return endpoint.endsWith("/") ? endpoint.substring(0, endpoint.length() - 1) : endpoint;
+    }
+}
@@ -0,0 +1,199 @@
+package no.dervis.service;
+
+import no.dervis.model.CompetenceGoal;
+import no.dervis.service.ContextBudgets.ContextBudget;
+import no.dervis.service.LlmService.LlmProvider;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/**
+ * Chooses how to send the catalog to a model so the prompt fits the model's context budget.
+ *
+ * <p>The prompt is sized with the {@link TokenEstimator} before anything is sent:
+ * <ul>
+ *   <li>{@link PromptStrategy#FULL_CATALOG} when the whole catalog fits in one prompt,</li>
+ *   <li>{@link PromptStrategy#SHARDED} when the catalog fits in a few prompts, which are then
+ *       sent in parallel and merged, so every goal is still considered,</li>
+ *   <li>{@link PromptStrategy#PRE_FILTERED} otherwise, sending only the goals that share the
+ *       most (rarest) words with the developer response.</li>
+ * </ul>
+ */
+public class PromptPlanner {
+
+    /**
+     * How the catalog is sent to the model.
+     */
+    public enum PromptStrategy {
+        FULL_CATALOG,
+        PRE_FILTERED,
+        SHARDED
+    }
+
+    /**
+     * The chosen strategy and the catalog groups to send, one prompt per group.
+     *
+     * @param strategy The chosen strategy
+     * @param goalGroups The goals of each prompt
+     * @param estimatedTokens The estimated prompt tokens of all prompts together
+     */
+    public record PromptPlan(PromptStrategy strategy, List<List<CompetenceGoal>> goalGroups, int estimatedTokens) {}
+
+    // Sharding beyond this many prompts costs more than it is worth; pre-filter instead.
+    private static final int MAX_SHARDS = 4;
+    private static final Pattern WORD_SPLIT_PATTERN = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private final TokenEstimator tokenEstimator;
+    private final ContextBudgets contextBudgets;
+
+    public PromptPlanner(TokenEstimator tokenEstimator, ContextBudgets contextBudgets) {
+        this.tokenEstimator = tokenEstimator;
+        this.contextBudgets = contextBudgets;
+    }
+
+    /**
+     * Plans the prompts for a developer response.
+     *
+     * @param provider The provider the prompts are sent to
+     * @param modelName The model the prompts are sent to
+     * @param developerResponse The developer's response
+     * @param competenceGoals The full catalog
+     * @param promptBuilder Renders the complete prompt for a subset of the catalog
+     * @return The plan to execute
+     * @throws IllegalArgumentException If not even a single goal fits next to the response
+     */
+    public PromptPlan plan(LlmProvider provider,
+                           String modelName,
+                           String developerResponse,
+                           List<CompetenceGoal> competenceGoals,
+                           Function<List<CompetenceGoal>, String> promptBuilder) {
+
+        ModelFamily family = ModelFamily.of(modelName);
+        int budget = contextBudgets.budgetFor(provider, modelName).inputTokens();
+
+        int fullTokens = tokenEstimator.estimate(promptBuilder.apply(competenceGoals), family);
+        if (fullTokens <= budget) {
+            return new PromptPlan(PromptStrategy.FULL_CATALOG, List.of(competenceGoals), fullTokens);
+        }
+
+        // Cost of the prompt without goals, and of each goal on its own
+        int baseTokens = tokenEstimator.estimate(promptBuilder.apply(List.of()), family);
+        Map<Integer, Integer> goalTokens = new HashMap<>();
+        for (CompetenceGoal goal : competenceGoals) {
+            int withGoal = tokenEstimator.estimate(promptBuilder.apply(List.of(goal)), family);
+            goalTokens.put(goal.getId(), Math.max(1, withGoal - baseTokens));
+        }
+        int room = budget - baseTokens;
+        int largestGoal = goalTokens.values().stream().mapToInt(Integer::intValue).max().orElse(0);
+        if (room < largestGoal) {
+            throw new IllegalArgumentException("Developer response is too long for the context of "
+                    + modelName + " (" + budget + " tokens); use a smaller chunk size");
+        }
+
+        List<List<CompetenceGoal>> shards = pack(competenceGoals, goalTokens, room);
+        if (shards.size() <= MAX_SHARDS) {
+            return new PromptPlan(PromptStrategy.SHARDED, shards,
+                    fullTokens + (shards.size() - 1) * baseTokens);
+        }
+
+        List<CompetenceGoal> selected = new ArrayList<>();
+        int used = 0;
+        for (CompetenceGoal goal : rankByRelevance(developerResponse, competenceGoals)) {
+            int cost = goalTokens.get(goal.getId());
+            if (used + cost <= room) {
+                selected.add(goal);
+                used += cost;
+            }
+        }
+        // Keep catalog order in the prompt
+        selected.sort(Comparator.comparingInt(competenceGoals::indexOf));
+        return new PromptPlan(PromptStrategy.PRE_FILTERED, List.of(selected), baseTokens + used);
+    }
+
+    /**
+     * Returns the number of response characters that leave room for at least half of the
+     * model's input budget for the catalog.
+     */
+    public int maxResponseChars(LlmProvider provider, String modelName) {
+        ContextBudget budget = contextBudgets.budgetFor(provider, modelName);
+        return (int) (budget.inputTokens() / 2 * ModelFamily.of(modelName).charsPerPiece());
+    }
+
+    public TokenEstimator getTokenEstimator() {
+        return tokenEstimator;
+    }
+
+    public ContextBudgets getContextBudgets() {
+        return contextBudgets;
+    }
+
+    /**
+     * Packs goals in catalog order into as few groups as fit the room.
+     */
+    private static List<List<CompetenceGoal>> pack(List<CompetenceGoal> goals, Map<Integer, Integer> goalTokens, int room) {
+        List<List<CompetenceGoal>> groups = new ArrayList<>();
+        List<CompetenceGoal> current = new ArrayList<>();
+        int used = 0;
+        for (CompetenceGoal goal : goals) {
+            int cost = goalTokens.get(goal.getId());
+            if (used + cost > room && !current.isEmpty()) {
+                groups.add(current);
+                current = new ArrayList<>();
+                used = 0;
+            }
+            current.add(goal);
+            used += cost;
+        }
+        if (!current.isEmpty()) {
+            groups.add(current);
+        }
+        return groups;
+    }
+
+    /**
+     * Ranks goals by the words they share with the response, weighting rare words higher.
+     */
+    static List<CompetenceGoal> rankByRelevance(String developerResponse, List<CompetenceGoal> goals) {
+        Map<CompetenceGoal, Set<String>> goalWords = new HashMap<>();
+        Map<String, Integer> documentFrequency = new HashMap<>();
+        for (CompetenceGoal goal : goals) {
+            Set<String> words = words(goal.getTitle() + " " + String.join(" ",
+                    goal.getSubGoals() != null ? goal.getSubGoals() : List.of()));
+            goalWords.put(goal, words);
+            words.forEach(word -> documentFrequency.merge(word, 1, Integer::sum));
+        }
+
+        Set<String> responseWords = words(developerResponse);
+        Map<CompetenceGoal, Double> scores = new HashMap<>();
+        for (CompetenceGoal goal : goals) {
+            double score = 0;
+            for (String word : goalWords.get(goal)) {
+                if (responseWords.contains(word)) {
+                    score += Math.log(1.0 + (double) goals.size() / documentFrequency.get(word));
+                }
+            }
+            scores.put(goal, score);
+        }
+        return goals.stream()
+                .sorted(Comparator.comparingDouble((CompetenceGoal goal) -> scores.get(goal)).reversed())
+                .toList();
+    }
+
+    private static Set<String> words(String text) {
+        Set<String> words = new HashSet<>();
+        for (String word : WORD_SPLIT_PATTERN.split(text.toLowerCase(Locale.ROOT))) {
+            if (word.length() > 3) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+}
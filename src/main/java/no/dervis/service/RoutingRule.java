@@ -0,0 +1,43 @@
+package no.dervis.service;
+
+import no.dervis.service.LlmService.LlmProvider;
+import no.dervis.service.LlmService.ModelTarget;
+
+import java.util.Objects;
+
+/**
+ * A rule of a {@link ModelRouter}: requests within all of its limits go to its model.
+ * Limits that are {@code null} are not checked, so a rule without limits matches everything.
+ *
+ * <p>Rules are read from the routing config, for example:
+ * <pre>{"name": "short", "provider": "OLLAMA", "model": "qwen2.5:7b", "maxChars": 600, "maxLatencyMillis": 8000}</pre>
+ *
+ * @param name The name the rule is reported by
+ * @param provider The provider of the rule's model
+ * @param model The model requests are sent to
+ * @param maxChars Longest developer response, in characters
+ * @param maxPromptTokens Largest estimated matching prompt for the whole catalog, in tokens of the rule's model
+ * @param maxLatencyMillis Highest recent average latency of the model, in milliseconds
+ */
+public record RoutingRule(
+        String name,
+        LlmProvider provider,
+        String model,
+        Integer maxChars,
+        Integer maxPromptTokens,
+        Long maxLatencyMillis
+) {
+
+    public RoutingRule {
+        Objects.requireNonNull(name, "Rule name must not be null");
+        Objects.requireNonNull(provider, "Provider of rule " + name + " must not be null");
+        Objects.requireNonNull(model, "Model of rule " + name + " must not be null");
+    }
+
+    /**
+     * Returns the model requests matching this rule are sent to.
+     */
+    public ModelTarget target() {
+        return new ModelTarget(provider, model);
+    }
+}
@@ -0,0 +1,228 @@
+package no.dervis.service;
+
+import no.dervis.model.CompetenceGoal;
+import no.dervis.model.GoalMatch;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Resolves subgoal strings echoed by a model to canonical subgoal indices of a loaded catalog.
+ *
+ * <p>Models may echo a subgoal verbatim, paraphrase it, repeat it or invent one. Each string
+ * is resolved in order of confidence:
+ * <ol>
+ *   <li>by its leading subgoal code (e.g. {@code "1.7"}), when the catalog has that code,</li>
+ *   <li>by exact text after normalization, with or without the category prefix,</li>
+ *   <li>by word overlap with the canonical text, when it is close enough.</li>
+ * </ol>
+ * Strings that cannot be resolved are dropped.
+ */
+public class SubGoalResolver {
+
+    private static final Pattern SUBGOAL_CODE_PATTERN = Pattern.compile("^\\s*(\\d+)\\.(\\d+)\\b");
+    private static final Pattern NON_WORD_PATTERN = Pattern.compile("[^\\p{L}\\p{N}]+");
+    // Minimum Dice coefficient between word sets for a paraphrase to count as a match.
+    private static final double FUZZY_THRESHOLD = 0.6;
+
+    private final Map<Integer, CompetenceGoal> goals = new LinkedHashMap<>();
+    private final Map<Integer, List<IndexedSubGoal>> subGoals = new LinkedHashMap<>();
+    private final Map<Integer, Map<Integer, Integer>> codeIndex = new HashMap<>();
+
+    private record IndexedSubGoal(int index, String normalized, String withoutCategory, Set<String> words) {}
+
+    /**
+     * Creates a resolver for the given catalog.
+     *
+     * @param catalog The loaded competence goals
+     */
+    public SubGoalResolver(List<CompetenceGoal> catalog) {
+        for (CompetenceGoal goal : catalog) {
+            goals.put(goal.getId(), goal);
+            List<String> texts = goal.getSubGoals() != null ? goal.getSubGoals() : List.<String>of();
+            List<IndexedSubGoal> indexed = new ArrayList<>(texts.size());
+            Map<Integer, Integer> codes = new HashMap<>();
+            for (int i = 0; i < texts.size(); i++) {
+                Matcher code = SUBGOAL_CODE_PATTERN.matcher(texts.get(i));
+                codes.put(code.find() ? Integer.parseInt(code.group(2)) : i + 1, i);
+                // Words come from the same form as a query's, so the code and category do not dilute the score
+                String withoutCategory = normalize(stripCategory(stripCode(texts.get(i))));
+                indexed.add(new IndexedSubGoal(i, normalize(texts.get(i)), withoutCategory, words(withoutCategory)));
+            }
+            subGoals.put(goal.getId(), indexed);
+            codeIndex.put(goal.getId(), codes);
+        }
+    }
+
+    /**
+     * Returns whether the catalog contains a goal with the given id.
+     */
+    public boolean containsGoal(int goalId) {
+        return goals.containsKey(goalId);
+    }
+
+    /**
+     * Returns the catalog entry for the given goal id, or {@code null} if there is none.
+     */
+    public CompetenceGoal getGoal(int goalId) {
+        return goals.get(goalId);
+    }
+
+    /**
+     * Returns the goals of the catalog in catalog order.
+     */
+    public List<CompetenceGoal> getGoals() {
+        return List.copyOf(goals.values());
+    }
+
+    /**
+     * Returns the subgoal code (e.g. {@code "1.7"}) for a canonical subgoal index.
+     */
+    public String subGoalCode(int goalId, int index) {
+        Map<Integer, Integer> codes = codeIndex.get(goalId);
+        if (codes != null) {
+            for (Map.Entry<Integer, Integer> entry : codes.entrySet()) {
+                if (entry.getValue() == index) {
+                    return goalId + "." + entry.getKey();
+                }
+            }
+        }
+        return goalId + "." + (index + 1);
+    }
+
+    /**
+     * Resolves a single subgoal string to its canonical index within the goal.
+     *
+     * @param goalId The goal the subgoal was reported under
+     * @param text The subgoal string returned by the model
+     * @return The canonical index, or {@code -1} if the string cannot be resolved
+     */
+    public int resolve(int goalId, String text) {
+        List<IndexedSubGoal> candidates = subGoals.get(goalId);
+        if (candidates == null || text == null || text.isBlank()) {
+            return -1;
+        }
+
+        Matcher code = SUBGOAL_CODE_PATTERN.matcher(text);
+        if (code.find() && Integer.parseInt(code.group(1)) == goalId) {
+            Integer index = codeIndex.get(goalId).get(Integer.parseInt(code.group(2)));
+            if (index != null) {
+                return index;
+            }
+        }
+
+        String normalized = normalize(text);
+        String withoutCategory = normalize(stripCategory(stripCode(text)));
+        for (IndexedSubGoal candidate : candidates) {
+            if (candidate.normalized.equals(normalized) || candidate.withoutCategory.equals(withoutCategory)) {
+                return candidate.index;
+            }
+        }
+
+        Set<String> words = words(withoutCategory);
+        int best = -1;
+        double bestScore = FUZZY_THRESHOLD;
+        for (IndexedSubGoal candidate : candidates) {
+            double score = dice(words, candidate.words);
+            if (score >= bestScore) {
+                best = candidate.index;
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Resolves all subgoal strings reported for a goal into a compact match.
+     *
+     * @param goalId The goal id reported by the model
+     * @param texts The subgoal strings reported by the model, may be {@code null}
+     * @return The canonical match, or {@code null} if the goal is not in the catalog
+     */
+    public GoalMatch resolveMatch(int goalId, List<String> texts) {
+        if (!containsGoal(goalId)) {
+            return null;
+        }
+        BitSet bits = new BitSet();
+        if (texts != null) {
+            for (String text : texts) {
+                int index = resolve(goalId, text);
+                if (index >= 0) {
+                    bits.set(index);
+                }
+            }
+        }
+        return new GoalMatch(goalId, bits);
+    }
+
+    /**
+     * Materializes compact matches into competence goals holding the canonical texts.
+     * Matches for goals that are not in the catalog are skipped.
+     */
+    public List<CompetenceGoal> materialize(List<GoalMatch> matches) {
+        List<CompetenceGoal> result = new ArrayList<>(matches.size());
+        for (GoalMatch match : matches) {
+            CompetenceGoal canonical = goals.get(match.getGoalId());
+            if (canonical != null) {
+                result.add(match.toCompetenceGoal(canonical));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Merges matches for the same goal into one, keeping the order of first appearance.
+     */
+    public static List<GoalMatch> mergeByGoal(List<GoalMatch> matches) {
+        Map<Integer, GoalMatch> merged = new LinkedHashMap<>();
+        for (GoalMatch match : matches) {
+            merged.merge(match.getGoalId(), match, GoalMatch::union);
+        }
+        return List.copyOf(merged.values());
+    }
+
+    private static String stripCode(String text) {
+        return SUBGOAL_CODE_PATTERN.matcher(text).replaceFirst("");
+    }
+
+    private static String stripCategory(String text) {
+        int colon = text.indexOf(':');
+        return colon >= 0 && colon < 40 ? text.substring(colon + 1) : text;
+    }
+
+    private static String normalize(String text) {
+        return NON_WORD_PATTERN.matcher(text.toLowerCase(Locale.ROOT)).replaceAll(" ").trim();
+    }
+
+    private static Set<String> words(String normalized) {
+        Set<String> words = new HashSet<>();
+        for (String word : normalized.split(" ")) {
+            if (word.length() > 2) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+
+    private static double dice(Set<String> a, Set<String> b) {
+        if (a.isEmpty() || b.isEmpty()) {
+            return 0.0;
+        }
+        int common = 0;
+        for (String word : a) {
+            if (b.contains(word)) {
+                common++;
+            }
+        }
+        return 2.0 * common / (a.size() + b.size());
+    }
+}
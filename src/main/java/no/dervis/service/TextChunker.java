@@ -0,0 +1,133 @@
+package no.dervis.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Splits long developer responses into overlapping chunks that fit a model's context.
+ *
+ * <p>Text is split at paragraph boundaries first, then at sentence boundaries, and only
+ * split mid-sentence (at whitespace) when a single sentence is longer than a chunk. Each new
+ * chunk repeats the trailing units of the previous chunk, up to the overlap size, so that a
+ * task described across a boundary is still seen as a whole by at least one chunk.
+ */
+public class TextChunker {
+
+    private static final Pattern PARAGRAPH_PATTERN = Pattern.compile("\\n\\s*\\n");
+    private static final Pattern SENTENCE_PATTERN = Pattern.compile("(?<=[.!?])\\s+|\\n");
+
+    private final int maxChars;
+    private final int overlapChars;
+
+    /**
+     * Creates a chunker.
+     *
+     * @param maxChars Maximum number of characters per chunk
+     * @param overlapChars Maximum number of characters repeated from the previous chunk
+     */
+    public TextChunker(int maxChars, int overlapChars) {
+        if (maxChars <= 0 || overlapChars < 0 || overlapChars >= maxChars) {
+            throw new IllegalArgumentException("Invalid chunk size " + maxChars + " with overlap " + overlapChars);
+        }
+        this.maxChars = maxChars;
+        this.overlapChars = overlapChars;
+    }
+
+    public int getMaxChars() {
+        return maxChars;
+    }
+
+    /**
+     * Splits the text into chunks. Text that fits in one chunk is returned as is.
+     *
+     * @param text The text to split
+     * @return The chunks in reading order, never empty
+     */
+    public List<String> split(String text) {
+        if (text.length() <= maxChars) {
+            return List.of(text);
+        }
+
+        List<String> chunks = new ArrayList<>();
+        List<String> current = new ArrayList<>();
+        int currentLength = 0;
+        for (String unit : units(text)) {
+            if (currentLength + unit.length() + 1 > maxChars && !current.isEmpty()) {
+                chunks.add(String.join("\n", current));
+                current = overlap(current, maxChars - unit.length() - 1);
+                currentLength = length(current);
+            }
+            current.add(unit);
+            currentLength += unit.length() + 1;
+        }
+        if (!current.isEmpty()) {
+            chunks.add(String.join("\n", current));
+        }
+        return chunks;
+    }
+
+    /**
+     * Breaks the text into units no longer than a chunk: paragraphs, sentences or word runs.
+     */
+    private List<String> units(String text) {
+        List<String> units = new ArrayList<>();
+        for (String paragraph : PARAGRAPH_PATTERN.split(text)) {
+            if (paragraph.isBlank()) {
+                continue;
+            }
+            if (paragraph.length() <= maxChars) {
+                units.add(paragraph.strip());
+                continue;
+            }
+            for (String sentence : SENTENCE_PATTERN.split(paragraph)) {
+                if (sentence.isBlank()) {
+                    continue;
+                }
+                if (sentence.length() <= maxChars) {
+                    units.add(sentence.strip());
+                } else {
+                    splitAtWhitespace(sentence.strip(), units);
+                }
+            }
+        }
+        return units;
+    }
+
+    private void splitAtWhitespace(String sentence, List<String> units) {
+        int start = 0;
+        while (start < sentence.length()) {
+            int end = Math.min(start + maxChars, sentence.length());
+            if (end < sentence.length()) {
+                int space = sentence.lastIndexOf(' ', end);
+                if (space > start) {
+                    end = space;
+                }
+            }
+            units.add(sentence.substring(start, end).strip());
+            start = end;
+        }
+    }
+
+    /**
+     * Returns the trailing units of a finished chunk to repeat at the start of the next one.
+     */
+    private List<String> overlap(List<String> previous, int room) {
+        int budget = Math.min(overlapChars, room);
+        List<String> tail = new ArrayList<>();
+        int length = 0;
+        for (int i = previous.size() - 1; i >= 0; i--) {
+            String unit = previous.get(i);
+            if (length + unit.length() + 1 > budget) {
+                break;
+            }
+            tail.addFirst(unit);
+            length += unit.length() + 1;
+        }
+        return tail;
+    }
+
+    private static int length(List<String> units) {
+        return units.stream().mapToInt(unit -> unit.length() + 1).sum();
+    }
+}
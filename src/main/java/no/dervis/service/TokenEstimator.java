@@ -0,0 +1,65 @@
+package no.dervis.service;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * In-process approximation of BPE token counts, so prompt sizes can be checked before a call.
+ *
+ * <p>Text is pre-tokenized the way GPT-style tokenizers do it (letter runs, digit groups of up
+ * to three, single punctuation characters and whitespace), and each piece is then costed with
+ * the characteristics of the model's {@link ModelFamily}. Short common words cost one token,
+ * longer words are split into pieces, and non-ASCII words cost more since they are rarer in
+ * the vocabularies. The estimate is deliberately slightly pessimistic.
+ */
+public class TokenEstimator {
+
+    private static final Pattern PRE_TOKEN_PATTERN =
+            Pattern.compile("\\p{L}+|\\p{N}{1,3}|[^\\s\\p{L}\\p{N}]|\\s+");
+    // Rare words in a language other than English are split into more pieces.
+    private static final double NON_ASCII_FACTOR = 1.5;
+
+    /**
+     * Estimates the number of tokens of the text for the given model family.
+     *
+     * @param text The text to estimate
+     * @param family The tokenizer family of the target model
+     * @return The estimated token count
+     */
+    public int estimate(String text, ModelFamily family) {
+        int tokens = 0;
+        Matcher matcher = PRE_TOKEN_PATTERN.matcher(text);
+        while (matcher.find()) {
+            String piece = matcher.group();
+            char first = piece.charAt(0);
+            if (Character.isWhitespace(first)) {
+                // A single space is merged into the following word
+                tokens += piece.equals(" ") ? 0 : 1;
+            } else if (Character.isLetter(first)) {
+                tokens += estimateWord(piece, family);
+            } else {
+                tokens++;
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Estimates the number of tokens of the text for the given model name.
+     */
+    public int estimate(String text, String modelName) {
+        return estimate(text, ModelFamily.of(modelName));
+    }
+
+    private static int estimateWord(String word, ModelFamily family) {
+        boolean ascii = word.chars().allMatch(c -> c < 128);
+        if (ascii && word.length() <= family.wholeWordChars()) {
+            return 1;
+        }
+        double pieces = word.length() / family.charsPerPiece();
+        if (!ascii) {
+            pieces *= NON_ASCII_FACTOR;
+        }
+        return Math.max(1, (int) Math.ceil(pieces));
+    }
+}
@@ -1,14 +1,97 @@
 package no.dervis;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import no.dervis.http.StubChatServer;
+import no.dervis.service.CompetenceGoalService;
+import no.dervis.service.LlmService;
 import org.junit.jupiter.api.Test;
 
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class AppTest 
 {
+    private static final String COMPLETION = "[{\"competenceGoalId\": 1, \"matchingSubGoals\": [\"1.6\"]}]";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
     @Test
     public void shouldAnswerWithTrue()
     {
         assertTrue( true );
     }
+
+    @Test
+    public void sessionPrintsEveryEntryBeforeQuitting() throws Exception
+    {
+        try (StubChatServer server = new StubChatServer(COMPLETION))
+        {
+            String[] output = runSession(server.openAiEndpoint(), """
+                    I wrote code.
+                    done
+
+                    done
+                    I wrote a script.
+                    done
+                    quit
+                    I never get matched.
+                    done
+                    """);
+
+            assertTrue(output[0].contains("--- Result for entry 1 ---"));
+            assertTrue(output[0].contains("--- Result for entry 2 ---"));
+            assertTrue(output[0].indexOf("--- Result for entry 2 ---") < output[0].indexOf("Session finished: 2 entries"));
+            assertEquals("", output[1]);
+            // Entries are matched after the warm-up, and the text after quit is never read
+            assertEquals(3, server.getCalls());
+        }
+    }
+
+    @Test
+    public void sessionEndsAtEndOfInputAndReportsFailedEntries() throws Exception
+    {
+        String endpoint;
+        try (StubChatServer server = new StubChatServer(COMPLETION))
+        {
+            endpoint = server.openAiEndpoint();
+        }
+        // The server is gone, so every request fails
+        String[] output = runSession(endpoint, "I wrote code.\ndone\nI wrote a script.");
+
+        assertTrue(output[0].contains("Session finished: 2 entries"));
+        assertTrue(output[1].contains("Matching entry 1 failed"));
+        assertTrue(output[1].contains("Matching entry 2 failed"));
+    }
+
+    /**
+     * Runs a session on the given input, returning what it printed to stdout and stderr.
+     */
+    private String[] runSession(String lmStudioEndpoint, String input) throws Exception
+    {
+        App app = new App(new CompetenceGoalService(objectMapper),
+                new LlmService(objectMapper, lmStudioEndpoint, "local-model"),
+                new BufferedReader(new StringReader(input)));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        PrintStream originalOut = System.out;
+        PrintStream originalErr = System.err;
+        System.setOut(new PrintStream(out, true, StandardCharsets.UTF_8));
+        System.setErr(new PrintStream(err, true, StandardCharsets.UTF_8));
+        try
+        {
+            app.runSession("en");
+        }
+        finally
+        {
+            System.setOut(originalOut);
+            System.setErr(originalErr);
+        }
+        return new String[] {out.toString(StandardCharsets.UTF_8), err.toString(StandardCharsets.UTF_8)};
+    }
 }
@@ -0,0 +1,138 @@
+package no.dervis.batch;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import no.dervis.model.CompetenceGoal;
+import no.dervis.model.GoalMatch;
+import no.dervis.scheduling.SchedulingKey;
+import no.dervis.service.LlmService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BatchRunnerTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final List<CompetenceGoal> catalog = List.of(
+            new CompetenceGoal(1, "Networks", List.of("1.1 Plan a network", "1.2 Configure a firewall")),
+            new CompetenceGoal(2, "Programming", List.of("2.1 Write unit tests")));
+
+    /**
+     * Answers without calling a model, failing responses that contain "outage" once.
+     */
+    private final class FakeLlmService extends LlmService {
+
+        private final Set<String> calls = ConcurrentHashMap.newKeySet();
+        private final Set<String> failedOnce = ConcurrentHashMap.newKeySet();
+
+        private FakeLlmService() {
+            super(objectMapper, "test-model");
+        }
+
+        @Override
+        public CompletableFuture<List<GoalMatch>> matchGoalsAsync(
+                String developerResponse, List<CompetenceGoal> competenceGoals, Duration timeout, SchedulingKey key) {
+            calls.add(developerResponse);
+            if (developerResponse.contains("outage") && failedOnce.add(developerResponse)) {
+                return CompletableFuture.failedFuture(new IOException("provider unavailable"));
+            }
+            int goalId = developerResponse.contains("tests") ? 2 : 1;
+            return CompletableFuture.completedFuture(List.of(GoalMatch.of(goalId, 0)));
+        }
+    }
+
+    @Test
+    public void resumesWithoutRepeatingCompletedRecords(@TempDir Path dir) throws Exception {
+        Path input = dir.resolve("entries.ndjson");
+        Path output = dir.resolve("results.ndjson");
+        Files.write(input, List.of(
+                "{\"id\":\"a\",\"response\":\"I planned the network.\"}",
+                "not json",
+                "{\"id\":\"b\",\"response\":\"I wrote unit tests during the outage.\"}",
+                "",
+                "{\"id\":\"c\",\"response\":\"I configured the firewall.\"}"));
+
+        FakeLlmService llmService = new FakeLlmService();
+        BatchRunner runner = new BatchRunner(llmService, objectMapper);
+        runner.setCheckpointInterval(1);
+
+        assertEquals(new BatchSummary(4, 0, 2, 2), runner.run(input, output, catalog));
+        assertEquals(2, Files.readAllLines(output).size());
+
+        llmService.calls.clear();
+        assertEquals(new BatchSummary(4, 2, 1, 1), runner.run(input, output, catalog));
+        assertEquals(Set.of("I wrote unit tests during the outage."), llmService.calls);
+
+        List<String> lines = Files.readAllLines(output);
+        assertEquals(3, lines.size());
+        assertEquals("{\"id\":\"b\",\"matches\":[{\"competenceGoalId\":2,\"matchingSubGoals\":[\"2.1\"]}]}",
+                lines.get(2));
+    }
+
+    @Test
+    public void discardsResultsWrittenAfterLastCheckpoint(@TempDir Path dir) throws Exception {
+        Path input = dir.resolve("entries.ndjson");
+        Path output = dir.resolve("results.ndjson");
+        Files.write(input, List.of("{\"id\":\"a\",\"response\":\"I planned the network.\"}"));
+
+        BatchRunner runner = new BatchRunner(new FakeLlmService(), objectMapper);
+        runner.run(input, output, catalog);
+        // A crash after writing a result but before checkpointing it
+        Files.writeString(output, "{\"id\":\"x\",\"matches\":[]}\n", StandardOpenOption.APPEND);
+
+        assertEquals(new BatchSummary(1, 1, 0, 0), runner.run(input, output, catalog));
+        assertEquals(1, Files.readAllLines(output).size());
+    }
+
+    @Test
+    public void skipsDuplicateIdsWithinARun(@TempDir Path dir) throws Exception {
+        Path input = dir.resolve("entries.ndjson");
+        Path output = dir.resolve("results.ndjson");
+        Files.write(input, List.of(
+                "{\"id\":\"a\",\"response\":\"I planned the network.\"}",
+                "{\"id\":\"a\",\"response\":\"I configured the firewall.\"}"));
+
+        FakeLlmService llmService = new FakeLlmService();
+        assertEquals(new BatchSummary(2, 1, 1, 0), new BatchRunner(llmService, objectMapper).run(input, output, catalog));
+        assertEquals(Set.of("I planned the network."), llmService.calls);
+        assertEquals(1, Files.readAllLines(output).size());
+    }
+
+    @Test
+    public void appendsToTheCheckpointAndCompactsIt(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("results.ndjson.checkpoint");
+        BatchCheckpoint checkpoint = BatchCheckpoint.load(file, objectMapper);
+        for (int i = 0; i < 3_000; i++) {
+            checkpoint.markCompleted("id-" + i);
+            if (i % 20 == 19) {
+                checkpoint.save(file, objectMapper, i);
+            }
+        }
+        // 150 saves, compacted whenever the appended ids outnumber the compacted ones
+        int lines = Files.readAllLines(file).size();
+        assertTrue(lines > 1 && lines <= 51, "lines=" + lines);
+
+        // A save cut off by a crash is ignored, and the next save rewrites the file
+        Files.writeString(file, "{\"outputBytes\":5000,\"compl", StandardOpenOption.APPEND);
+        BatchCheckpoint resumed = BatchCheckpoint.load(file, objectMapper);
+        assertEquals(3_000, resumed.getCompletedCount());
+        assertEquals(2_999, resumed.getOutputBytes());
+        resumed.markCompleted("id-3000");
+        resumed.save(file, objectMapper, 3_000);
+        assertEquals(1, Files.readAllLines(file).size());
+        assertTrue(BatchCheckpoint.load(file, objectMapper).isCompleted("id-3000"));
+        assertFalse(BatchCheckpoint.load(file, objectMapper).isCompleted("id-3001"));
+    }
+}
@@ -0,0 +1,82 @@
+package no.dervis.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import no.dervis.http.StubChatServer;
+import no.dervis.model.GoalMatch;
+import no.dervis.service.CompetenceGoalService;
+import no.dervis.service.LlmService;
+import no.dervis.service.LlmService.LlmProvider;
+import no.dervis.service.LlmService.ModelTarget;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MatchBenchmarkTest {
+
+    private static final String COMPLETION = "[{\"competenceGoalId\": 1, \"matchingSubGoals\": [\"1.6\", \"1.9\"]}]";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    public void scoresGoalsAndSubGoals() {
+        Map<Integer, MatchScore> goals = new HashMap<>();
+        Map<Integer, MatchScore> subGoals = new HashMap<>();
+        MatchBenchmark.score(List.of(GoalMatch.of(1, 0, 1), GoalMatch.of(3, 2)),
+                List.of(GoalMatch.of(1, 1, 2), GoalMatch.of(2, 0)), goals, subGoals);
+
+        assertEquals(new MatchScore(1, 0, 0), goals.get(1));
+        assertEquals(new MatchScore(0, 1, 0), goals.get(2));
+        assertEquals(new MatchScore(0, 0, 1), goals.get(3));
+        assertEquals(new MatchScore(1, 1, 1), subGoals.get(1));
+
+        BenchmarkResult result = new BenchmarkResult(new ModelTarget(LlmProvider.OLLAMA, "qwen2.5:7b"), 1, 0,
+                new TreeMap<>(goals), new TreeMap<>(subGoals), List.of(40L, 10L, 30L, 20L), 0, 0);
+        assertEquals(0.5, result.goalScore().precision(), 1e-9);
+        assertEquals(1.0 / 3, result.subGoalScore().recall(), 1e-9);
+        assertEquals(20, result.latencyPercentile(50));
+        assertEquals(40, result.latencyPercentile(95));
+        assertTrue(Double.isNaN(new MatchScore(0, 0, 2).precision()));
+    }
+
+    @Test
+    public void comparesModelsOnADataset(@TempDir Path directory) throws Exception {
+        try (StubChatServer server = new StubChatServer(COMPLETION)) {
+            Path dataset = directory.resolve("responses.ndjson");
+            Files.writeString(dataset, """
+                    {"id":"en","language":"en","response":"I wrote code and a script.","expected":[{"competenceGoalId":1,"matchingSubGoals":["1.6","1.9"]}]}
+                    {"id":"no","language":"no","response":"Jeg skrev kode.","expected":[{"competenceGoalId":1,"matchingSubGoals":["1.6"]},{"competenceGoalId":6,"matchingSubGoals":["6.1"]}]}
+                    """);
+            LlmService llmService = new LlmService(objectMapper, server.openAiEndpoint(), "local-model");
+            MatchBenchmark benchmark = new MatchBenchmark(llmService, new CompetenceGoalService(objectMapper),
+                    objectMapper);
+            List<BenchmarkCase> cases = benchmark.loadDataset(dataset);
+
+            BenchmarkResult result = benchmark.run(new ModelTarget(LlmProvider.LM_STUDIO, "small-model"), cases);
+
+            assertEquals(List.of("small-model"),
+                    server.getChatRequests().stream().map(StubChatServer.Request::model).distinct().toList());
+            assertNull(llmService.getModelRouter());
+            assertEquals(new MatchScore(2, 0, 1), result.goalScore());
+            assertEquals(new MatchScore(3, 1, 1), result.subGoalScore());
+            assertEquals(2, result.latenciesMillis().size());
+            assertTrue(result.promptTokens() > 0 && result.completionTokens() > 0);
+
+            Files.writeString(dataset, """
+                    {"id":"typo","response":"I wrote code.","expected":[{"competenceGoalId":1,"matchingSubGoals":["1.60"]}]}
+                    """);
+            assertThrows(IOException.class, () -> benchmark.loadDataset(dataset));
+        }
+    }
+}
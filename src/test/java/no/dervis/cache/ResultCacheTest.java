@@ -0,0 +1,219 @@
+package no.dervis.cache;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import no.dervis.http.StubChatServer;
+import no.dervis.model.CompetenceGoal;
+import no.dervis.model.GoalMatch;
+import no.dervis.service.LlmService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ResultCacheTest {
+
+    private static final String COMPLETION = "[{\"competenceGoalId\": 1, \"matchingSubGoals\": [\"1.1\", \"1.2\"]}]";
+
+    private final List<CompetenceGoal> catalog = List.of(
+            new CompetenceGoal(1, "Testing", List.of("1.1 Writes unit tests", "1.2 Writes integration tests")));
+
+    @Test
+    public void encodesMatchesCompactly() {
+        List<GoalMatch> matches = List.of(GoalMatch.of(3, 0, 4), GoalMatch.of(7));
+        assertEquals("3:0,4;7:", ResultCache.encode(matches));
+        assertEquals(Optional.of(matches), ResultCache.decode("3:0,4;7:"));
+        assertEquals(Optional.of(List.of()), ResultCache.decode(""));
+        assertTrue(ResultCache.decode("garbage").isEmpty());
+        assertEquals(ResultCache.key("scope", "I wrote  tests.\n"), ResultCache.key("scope", " I wrote tests."));
+    }
+
+    @Test
+    public void expiresDiskEntries(@TempDir Path directory) throws Exception {
+        DiskCacheBackend backend = new DiskCacheBackend(directory);
+        backend.put("kept", "1:0", Duration.ofHours(1));
+        backend.put("expiring", "2:1", Duration.ofMillis(20));
+        Thread.sleep(40);
+
+        assertEquals(Optional.of("1:0"), backend.get("kept"));
+        assertEquals(Optional.empty(), backend.get("expiring"));
+        assertEquals(Optional.empty(), backend.get("missing"));
+    }
+
+    @Test
+    public void movesFewKeysWhenShardIsRemoved() {
+        List<CacheBackend> shards = new ArrayList<>();
+        for (int port = 7001; port <= 7004; port++) {
+            shards.add(new RedisCacheBackend("127.0.0.1", port));
+        }
+        ShardedCacheBackend four = new ShardedCacheBackend(shards);
+        ShardedCacheBackend three = new ShardedCacheBackend(shards.subList(0, 3));
+
+        int moved = 0;
+        for (int i = 0; i < 1000; i++) {
+            String key = "key-" + i;
+            CacheBackend before = four.shardFor(key);
+            if (before != shards.get(3)) {
+                // Keys of the remaining shards stay where they are
+                assertEquals(before, three.shardFor(key));
+            } else {
+                moved++;
+            }
+        }
+        assertTrue(moved > 100 && moved < 400, moved + " of 1000 keys were on the removed shard");
+    }
+
+    @Test
+    public void sharesResultsAcrossNodes() throws Exception {
+        try (StubChatServer model = new StubChatServer(COMPLETION);
+             StandInServer first = new StandInServer(); StandInServer second = new StandInServer()) {
+            String endpoint = model.openAiEndpoint();
+            LlmService nodeA = createNode(endpoint, first, second);
+            LlmService nodeB = createNode(endpoint, first, second);
+
+            List<GoalMatch> expected = List.of(GoalMatch.of(1, 0, 1));
+            assertEquals(expected, nodeA.matchGoals("I wrote unit and integration tests.", catalog));
+            assertEquals(expected, nodeB.matchGoals("I wrote  unit and integration tests.\n", catalog));
+            assertEquals(expected, nodeA.matchGoals("I wrote unit and integration tests.", catalog));
+
+            assertEquals(1, model.getCalls());
+            assertEquals(1, first.size() + second.size());
+            assertEquals(new CacheStats(1, 1), nodeB.getResultCache().getStats());
+
+            // An unreachable cache only costs the model call it would have saved
+            first.close();
+            second.close();
+            assertEquals(expected, nodeB.matchGoals("I only wrote tests.", catalog));
+            assertEquals(2, model.getCalls());
+        }
+    }
+
+    private static LlmService createNode(String endpoint, StandInServer... servers) {
+        List<CacheBackend> shards = new ArrayList<>();
+        for (StandInServer server : servers) {
+            shards.add(new RedisCacheBackend("127.0.0.1", server.getPort()));
+        }
+        LlmService llmService = new LlmService(new ObjectMapper(), endpoint, "local-model");
+        llmService.setResultCache(new ResultCache(new ShardedCacheBackend(shards), Duration.ofMinutes(5)));
+        return llmService;
+    }
+
+    /**
+     * Minimal stand-in for a Redis server, answering GET and SET with PX over RESP.
+     */
+    private static final class StandInServer implements AutoCloseable {
+
+        private record Entry(String value, long expiresAtMillis) {}
+
+        private final ServerSocket serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+        private final List<Socket> connections = new ArrayList<>();
+
+        StandInServer() throws IOException {
+            Thread.ofVirtual().start(() -> {
+                try {
+                    while (true) {
+                        Socket socket = serverSocket.accept();
+                        synchronized (connections) {
+                            connections.add(socket);
+                        }
+                        Thread.ofVirtual().start(() -> serve(socket));
+                    }
+                } catch (IOException e) {
+                    // Closed
+                }
+            });
+        }
+
+        int getPort() {
+            return serverSocket.getLocalPort();
+        }
+
+        int size() {
+            return entries.size();
+        }
+
+        private void serve(Socket socket) {
+            try (socket) {
+                InputStream in = new BufferedInputStream(socket.getInputStream());
+                OutputStream out = socket.getOutputStream();
+                while (true) {
+                    String header = readLine(in);
+                    if (header == null) {
+                        return;
+                    }
+                    List<String> command = new ArrayList<>();
+                    for (int i = Integer.parseInt(header.substring(1)); i > 0; i--) {
+                        int length = Integer.parseInt(readLine(in).substring(1));
+                        command.add(new String(in.readNBytes(length), StandardCharsets.UTF_8));
+                        readLine(in);
+                    }
+                    out.write(execute(command).getBytes(StandardCharsets.UTF_8));
+                    out.flush();
+                }
+            } catch (IOException e) {
+                // Connection closed
+            }
+        }
+
+        private String execute(List<String> command) {
+            switch (command.getFirst().toUpperCase()) {
+                case "GET" -> {
+                    Entry entry = entries.get(command.get(1));
+                    if (entry == null || entry.expiresAtMillis <= System.currentTimeMillis()) {
+                        return "$-1\r\n";
+                    }
+                    byte[] value = entry.value.getBytes(StandardCharsets.UTF_8);
+                    return "$" + value.length + "\r\n" + entry.value + "\r\n";
+                }
+                case "SET" -> {
+                    long ttl = command.size() == 5 ? Long.parseLong(command.get(4)) : Long.MAX_VALUE / 2;
+                    entries.put(command.get(1), new Entry(command.get(2), System.currentTimeMillis() + ttl));
+                    return "+OK\r\n";
+                }
+                default -> {
+                    return "-ERR unknown command\r\n";
+                }
+            }
+        }
+
+        private static String readLine(InputStream in) throws IOException {
+            StringBuilder line = new StringBuilder();
+            int b;
+            while ((b = in.read()) != '\r') {
+                if (b < 0) {
+                    return null;
+                }
+                line.append((char) b);
+            }
+            in.read();
+            return line.toString();
+        }
+
+        @Override
+        public void close() throws IOException {
+            serverSocket.close();
+            synchronized (connections) {
+                for (Socket connection : connections) {
+                    connection.close();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package no.dervis.cache;
+
+import no.dervis.model.GoalMatch;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SimilarityCacheTest {
+
+    private static final String ORIGINAL = """
+            This week I built a REST API in Spring Boot for the customer portal. I wrote unit tests
+            with JUnit and Mockito, fixed two bugs found in code review, and documented the endpoints
+            in the team wiki. I also set up a GitHub Actions pipeline that runs the tests on every
+            pull request and deploys to the test environment after merge.""";
+    private static final String EDITED = ORIGINAL.replace("This week", "Last week").replace("two bugs", "three bugs");
+    private static final String OTHER = """
+            I planned the network for the new office together with operations, drew the network
+            diagram, configured VLANs and firewall rules, and wrote a risk assessment for the setup.""";
+
+    @Test
+    public void returnsResultOfNearDuplicate() {
+        SimilarityCache cache = new SimilarityCache(0.85, 100);
+        List<GoalMatch> matches = List.of(GoalMatch.of(1, 5, 6));
+        cache.put("catalog", ORIGINAL, matches);
+
+        assertTrue(SimHash.similarity(SimHash.signature(ORIGINAL), SimHash.signature(EDITED)) >= 0.85);
+        assertEquals(Optional.of(matches), cache.get("catalog", EDITED));
+        assertEquals(Optional.empty(), cache.get("catalog", OTHER));
+        assertEquals(Optional.empty(), cache.get("other-catalog", EDITED));
+        assertEquals(new CacheStats(3, 1), cache.getStats());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        SimilarityCache cache = new SimilarityCache(0.9, 1);
+        cache.put("catalog", ORIGINAL, List.of(GoalMatch.of(1, 0)));
+        cache.put("catalog", OTHER, List.of(GoalMatch.of(12, 0)));
+
+        assertEquals(1, cache.size());
+        assertEquals(Optional.empty(), cache.get("catalog", ORIGINAL));
+        assertEquals(Optional.of(List.of(GoalMatch.of(12, 0))), cache.get("catalog", OTHER));
+    }
+}
@@ -0,0 +1,51 @@
+package no.dervis.coverage;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import no.dervis.model.CompetenceGoal;
+import no.dervis.model.GoalMatch;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CoverageEngineTest {
+
+    private static final List<CompetenceGoal> CATALOG = List.of(
+            new CompetenceGoal(1, "Goal one", List.of("1.1 a", "1.2 b", "1.3 c")),
+            new CompetenceGoal(2, "Goal two", List.of("2.1 d", "2.2 e")));
+
+    @Test
+    public void mergesEntriesIncrementally() {
+        CoverageEngine engine = new CoverageEngine(new ObjectMapper());
+        engine.record("ola", List.of(GoalMatch.of(1, 0)));
+        engine.record("ola", List.of(GoalMatch.of(1, 2), GoalMatch.of(2)));
+
+        CoverageReport report = engine.report("ola", CATALOG);
+        assertEquals(2, report.entryCount());
+        assertEquals(2, report.coveredCount());
+        assertEquals(5, report.totalCount());
+        assertEquals(List.of("1.1 a", "1.3 c"), report.goals().get(0).coveredSubGoals());
+        assertEquals(List.of("1.2 b"), report.goals().get(0).uncoveredSubGoals());
+        assertTrue(report.goals().get(1).matched());
+        assertEquals(0, engine.report("kari", CATALOG).coveredCount());
+    }
+
+    @Test
+    public void persistsAndRestoresState(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("coverage.json");
+        CoverageEngine engine = new CoverageEngine(new ObjectMapper());
+        engine.record("ola", List.of(GoalMatch.of(1, 1), GoalMatch.of(2, 0, 1)));
+        engine.save(file);
+
+        CoverageEngine restored = new CoverageEngine(new ObjectMapper());
+        restored.load(file);
+        assertEquals(List.of("ola"), restored.getStudentIds());
+        assertEquals(engine.report("ola", CATALOG), restored.report("ola", CATALOG));
+        assertFalse(restored.getCoverage("ola").hasGoal(3));
+    }
+}
@@ -0,0 +1,43 @@
+package no.dervis.http;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import no.dervis.model.CompetenceGoal;
+import no.dervis.service.LlmService;
+import no.dervis.service.LlmService.LlmProvider;
+import org.junit.jupiter.api.Test;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class HttpTransportTest {
+
+    private final HttpTransport transport = new HttpTransport(new HttpTransport.Config(
+            HttpClient.Version.HTTP_2, 4, Duration.ofMinutes(1), Duration.ofSeconds(5), Duration.ofSeconds(30)));
+
+    @Test
+    public void sharesOneClientPerKindOfEndpoint() {
+        assertSame(transport.clientFor("https://api.githubcopilot.com"), transport.clientFor("https://github.com/login"));
+        assertSame(transport.clientFor("http://localhost:11434"), transport.clientFor("http://localhost:1234/v1"));
+        assertNotSame(transport.clientFor("https://api.githubcopilot.com"), transport.clientFor("http://localhost:1234"));
+        assertEquals(HttpClient.Version.HTTP_1_1, transport.clientFor("http://localhost:1234").version());
+    }
+
+    @Test
+    public void reusesConnectionAcrossModelCalls() throws Exception {
+        try (StubChatServer server = new StubChatServer("[]")) {
+            LlmService llmService = new LlmService(new ObjectMapper(), null, null, null, null, null,
+                    server.openAiEndpoint(), "local-model", LlmProvider.LM_STUDIO, transport);
+            List<CompetenceGoal> catalog = List.of(new CompetenceGoal(1, "Testing", List.of("1.1 Write unit tests")));
+
+            for (int i = 0; i < 3; i++) {
+                assertEquals(List.of(), llmService.matchGoals("I wrote unit tests, round " + i + ".", catalog));
+            }
+            assertEquals(1, server.getRequests().stream().map(StubChatServer.Request::clientPort).distinct().count());
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package no.dervis.jfr;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import no.dervis.http.StubChatServer;
+import no.dervis.model.CompetenceGoal;
+import no.dervis.service.CompetenceGoalService;
+import no.dervis.service.LlmService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MatchingStageEventTest {
+
+    private static final String COMPLETION =
+            "<think>Goal 1 fits.</think>[{\"competenceGoalId\": 1, \"matchingSubGoals\": [\"1.6\"]}]";
+
+    @Test
+    public void recordsEventForEachStage(@TempDir Path dir) throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper();
+        Path file = dir.resolve("matching.jfr");
+        try (StubChatServer server = new StubChatServer(COMPLETION); Recording recording = new Recording()) {
+            for (String name : List.of("CatalogLoad", "PromptBuild", "ModelCall", "ThinkStrip", "Parse")) {
+                recording.enable("no.dervis." + name);
+            }
+            recording.start();
+
+            List<CompetenceGoal> catalog = new CompetenceGoalService(objectMapper).loadCompetenceGoals("en");
+            LlmService llmService = new LlmService(objectMapper, server.openAiEndpoint(), "local-model");
+            llmService.matchGoals("I wrote the code for the new REST endpoint.", catalog);
+
+            recording.stop();
+            recording.dump(file);
+        }
+
+        Map<String, RecordedEvent> events = RecordingFile.readAllEvents(file).stream()
+                .collect(Collectors.toMap(event -> event.getEventType().getName(), Function.identity(), (a, _) -> a));
+
+        assertEquals(21, events.get("no.dervis.CatalogLoad").getInt("resultCount"));
+        assertEquals("en", events.get("no.dervis.CatalogLoad").getString("language"));
+        for (String stage : List.of("PromptBuild", "ModelCall", "ThinkStrip", "Parse")) {
+            RecordedEvent event = events.get("no.dervis." + stage);
+            assertEquals("LM_STUDIO", event.getString("provider"), stage);
+            assertEquals("local-model", event.getString("model"), stage);
+            assertTrue(event.getInt("promptLength") > 1000, stage);
+        }
+        assertEquals(1, events.get("no.dervis.Parse").getInt("resultCount"));
+        assertTrue(events.get("no.dervis.Parse").getBoolean("clean"));
+        RecordedEvent strip = events.get("no.dervis.ThinkStrip");
+        assertTrue(strip.getInt("resultCount") < strip.getInt("completionLength"));
+    }
+}
@@ -0,0 +1,68 @@
+package no.dervis.replay;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import no.dervis.http.StubChatServer;
+import no.dervis.model.CompetenceGoal;
+import no.dervis.model.GoalMatch;
+import no.dervis.service.LlmService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ReplayProviderTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final List<CompetenceGoal> catalog = List.of(
+            new CompetenceGoal(1, "Testing", List.of("1.1 Write unit tests")));
+
+    @Test
+    public void replaysRecordedRunWithoutProvider(@TempDir Path dir) throws Exception {
+        RecordingFile recordings = new RecordingFile(dir.resolve("recordings.ndjson"), objectMapper);
+        List<GoalMatch> expected = List.of(GoalMatch.of(1, 0));
+
+        String endpoint;
+        try (StubChatServer server = new StubChatServer(
+                "[{\"competenceGoalId\": 1, \"matchingSubGoals\": [\"1.1\"]}]")) {
+            endpoint = server.openAiEndpoint();
+            LlmService recording = new LlmService(objectMapper, endpoint, "local-model");
+            recording.setRecordingFile(recordings);
+            assertEquals(expected, recording.matchGoals("I wrote unit tests.", catalog));
+        }
+
+        Map<String, Recording> recorded = recordings.load();
+        assertEquals(1, recorded.size());
+        Recording call = recorded.values().iterator().next();
+        assertEquals("LM_STUDIO", call.provider());
+        assertEquals("local-model", call.model());
+        assertTrue(call.completion().contains("competenceGoalId"));
+
+        // The server is gone; the replay serves the recorded completion
+        LlmService replaying = new LlmService(objectMapper, endpoint, "local-model");
+        replaying.setReplayProvider(new ReplayProvider(recorded, false));
+        assertEquals(expected, replaying.matchGoals("I wrote unit tests.", catalog));
+        assertThrows(IOException.class, () -> replaying.matchGoals("I planned a network.", catalog));
+    }
+
+    @Test
+    public void waitsForRecordedLatencyWhenAsked() throws Exception {
+        Recording recording = new Recording(RecordingFile.promptHash("prompt"), "OLLAMA", "qwen", "[]", 200);
+        ReplayProvider instant = new ReplayProvider(Map.of(recording.key(), recording), false);
+        ReplayProvider timed = new ReplayProvider(Map.of(recording.key(), recording), true);
+
+        long started = System.nanoTime();
+        assertEquals("[]", instant.complete("OLLAMA", "qwen", "prompt"));
+        assertTrue(System.nanoTime() - started < 150_000_000L);
+
+        started = System.nanoTime();
+        assertEquals("[]", timed.complete("OLLAMA", "qwen", "prompt"));
+        assertTrue(System.nanoTime() - started >= 200_000_000L);
+    }
+}
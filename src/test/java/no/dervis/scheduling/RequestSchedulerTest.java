@@ -0,0 +1,98 @@
+package no.dervis.scheduling;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RequestSchedulerTest {
+
+    private static final Duration SHORT_WAIT = Duration.ofMillis(50);
+
+    @Test
+    public void keepsReservedSlotsForInteractiveCalls() throws Exception {
+        RequestScheduler scheduler = new RequestScheduler(2);
+        scheduler.reserve(Priority.INTERACTIVE, 1);
+
+        RequestScheduler.Permit batch = scheduler.acquire(SchedulingKey.batch("nightly"), null);
+        // The last free slot is reserved, so a second batch call has to wait
+        assertThrows(TimeoutException.class, () -> scheduler.acquire(SchedulingKey.batch("nightly"), SHORT_WAIT));
+        assertEquals(0, scheduler.getQueued(Priority.BATCH));
+
+        try (RequestScheduler.Permit _ = scheduler.acquire(SchedulingKey.INTERACTIVE, SHORT_WAIT)) {
+            assertEquals(1, scheduler.getRunning(Priority.INTERACTIVE));
+            assertEquals(1, scheduler.getRunning(Priority.BATCH));
+        }
+        batch.close();
+        batch.close();
+        assertEquals(0, scheduler.getRunning(Priority.BATCH));
+    }
+
+    @Test
+    public void servesWaitingInteractiveCallsBeforeBatchCalls() throws Exception {
+        RequestScheduler scheduler = new RequestScheduler(1);
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+
+        RequestScheduler.Permit held = scheduler.acquire(SchedulingKey.batch("running"), null);
+        List<Thread> waiters = new ArrayList<>();
+        waiters.add(startWaiter(scheduler, SchedulingKey.batch("nightly"), order));
+        awaitQueued(scheduler, Priority.BATCH, 1);
+        waiters.add(startWaiter(scheduler, SchedulingKey.INTERACTIVE, order));
+        awaitQueued(scheduler, Priority.INTERACTIVE, 1);
+
+        held.close();
+        for (Thread waiter : waiters) {
+            waiter.join(10_000);
+        }
+        assertEquals(List.of("interactive", "nightly"), order);
+    }
+
+    @Test
+    public void sharesBatchCapacityFairlyBetweenJobs() throws Exception {
+        RequestScheduler scheduler = new RequestScheduler(1);
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+
+        RequestScheduler.Permit held = scheduler.acquire(SchedulingKey.batch("running"), null);
+        List<Thread> waiters = new ArrayList<>();
+        for (int i = 1; i <= 4; i++) {
+            waiters.add(startWaiter(scheduler, SchedulingKey.batch("large"), order));
+            awaitQueued(scheduler, Priority.BATCH, i);
+        }
+        waiters.add(startWaiter(scheduler, SchedulingKey.batch("small"), order));
+        awaitQueued(scheduler, Priority.BATCH, 5);
+
+        held.close();
+        for (Thread waiter : waiters) {
+            waiter.join(10_000);
+        }
+        assertEquals(5, order.size());
+        // The small job is not queued behind everything the large job submitted before it
+        assertTrue(order.indexOf("small") <= 1, "small job was served at position " + order.indexOf("small"));
+    }
+
+    private static Thread startWaiter(RequestScheduler scheduler, SchedulingKey key, List<String> order) {
+        return Thread.ofVirtual().start(() -> {
+            try (RequestScheduler.Permit _ = scheduler.acquire(key, null)) {
+                order.add(key.tenant());
+            } catch (TimeoutException | InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    private static void awaitQueued(RequestScheduler scheduler, Priority priority, int count)
+            throws InterruptedException {
+        long giveUp = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (scheduler.getQueued(priority) < count && System.nanoTime() < giveUp) {
+            Thread.sleep(5);
+        }
+        assertEquals(count, scheduler.getQueued(priority));
+    }
+}
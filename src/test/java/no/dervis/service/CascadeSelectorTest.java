@@ -0,0 +1,70 @@
+package no.dervis.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import no.dervis.http.StubChatServer;
+import no.dervis.model.CompetenceGoal;
+import no.dervis.model.GoalMatch;
+import no.dervis.service.LlmService.LlmProvider;
+import no.dervis.service.LlmService.ModelTarget;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CascadeSelectorTest {
+
+    private static final String RESPONSE = "I deployed the service and set up its monitoring.";
+    private static final String MATCH = "[{\"competenceGoalId\": 2, \"matchingSubGoals\": [\"2.1\", \"2.2\"]}]";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final List<CompetenceGoal> catalog = List.of(
+            new CompetenceGoal(1, "Testing", List.of("1.1 Writes unit tests", "1.2 Writes integration tests")),
+            new CompetenceGoal(2, "Operations", List.of("2.1 Deploys services", "2.2 Monitors services")),
+            new CompetenceGoal(3, "Security", List.of("3.1 Configures a firewall")));
+
+    @Test
+    public void sendsOnlyTheSelectedGoalsToTheMatchingModel() throws Exception {
+        try (StubChatServer server = new StubChatServer(MATCH).enqueue("<think>Deploying.</think>[2]")) {
+            assertEquals(List.of(GoalMatch.of(2, 0, 1)), cascade(server).matchGoals(RESPONSE, catalog));
+
+            List<StubChatServer.Request> requests = server.getChatRequests();
+            assertEquals(List.of("small-model", "local-model"),
+                    requests.stream().map(StubChatServer.Request::model).toList());
+            String selection = requests.getFirst().lastMessage();
+            assertTrue(selection.contains("3: Security"));
+            assertFalse(selection.contains("Deploys services"));
+            String matching = requests.getLast().lastMessage();
+            assertTrue(matching.contains("2.2 Monitors services"));
+            assertFalse(matching.contains("Writes unit tests") || matching.contains("Configures a firewall"));
+        }
+    }
+
+    @Test
+    public void matchesNothingWhenNoGoalIsSelected() throws Exception {
+        try (StubChatServer server = new StubChatServer(MATCH).enqueue("[]")) {
+            assertEquals(List.of(), cascade(server).matchGoals(RESPONSE, catalog));
+            assertEquals(List.of("small-model"),
+                    server.getChatRequests().stream().map(StubChatServer.Request::model).toList());
+        }
+    }
+
+    @Test
+    public void matchesTheFullCatalogWhenTheSelectionHasNoIds() throws Exception {
+        try (StubChatServer server = new StubChatServer(MATCH).enqueue("Operations, probably.")) {
+            assertEquals(List.of(GoalMatch.of(2, 0, 1)), cascade(server).matchGoals(RESPONSE, catalog));
+
+            String matching = server.getChatRequests().getLast().lastMessage();
+            assertTrue(catalog.stream().flatMap(goal -> goal.getSubGoals().stream()).allMatch(matching::contains));
+        }
+    }
+
+    private LlmService cascade(StubChatServer server) {
+        LlmService llmService = new LlmService(objectMapper, server.openAiEndpoint(), "local-model");
+        llmService.setCascadeSelector(new ModelTarget(LlmProvider.LM_STUDIO, "small-model"));
+        return llmService;
+    }
+}
@@ -0,0 +1,48 @@
+package no.dervis.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import no.dervis.cache.CatalogKey;
+import no.dervis.model.CompetenceGoal;
+import no.dervis.model.GoalMatch;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CatalogProjectorTest {
+
+    private final CompetenceGoalService goalService = new CompetenceGoalService(new ObjectMapper());
+
+    @Test
+    public void projectsEnglishMatchesOntoNorwegianCatalog() throws IOException {
+        List<CompetenceGoal> english = goalService.loadCompetenceGoals("en");
+        List<CompetenceGoal> norwegian = goalService.loadCompetenceGoals("no");
+        assertEquals(CatalogKey.of(english), CatalogKey.of(norwegian));
+
+        List<CompetenceGoal> projected = new CatalogProjector(english, norwegian)
+                .materialize(List.of(GoalMatch.of(1, 0, 6), GoalMatch.of(3)));
+
+        assertEquals(2, projected.size());
+        assertEquals(norwegian.getFirst().getTitle(), projected.getFirst().getTitle());
+        assertEquals(2, projected.getFirst().getSubGoals().size());
+        assertTrue(projected.getFirst().getSubGoals().get(0).startsWith("1.1 "));
+        assertTrue(projected.getFirst().getSubGoals().get(1).startsWith("1.7 "));
+        assertEquals(List.of(), projected.get(1).getSubGoals());
+    }
+
+    @Test
+    public void projectsByCodeWhenSubgoalOrderDiffers() {
+        List<CompetenceGoal> source = List.of(new CompetenceGoal(1, "Testing",
+                List.of("1.1 Write unit tests", "1.2 Review code", "1.3 Fix bugs")));
+        List<CompetenceGoal> target = List.of(new CompetenceGoal(1, "Testing",
+                List.of("1.3 Rette feil", "1.1 Skrive enhetstester", "1.2 Gjennomgå kode")));
+
+        assertEquals(List.of(GoalMatch.of(1, 0, 1)), new CatalogProjector(source, target)
+                .project(List.of(GoalMatch.of(1, 0, 2), GoalMatch.of(2, 0))));
+        assertNotEquals(CatalogKey.of(source), CatalogKey.of(target));
+    }
+}
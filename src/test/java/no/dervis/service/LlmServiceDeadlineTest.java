@@ -0,0 +1,77 @@
+package no.dervis.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import no.dervis.model.CompetenceGoal;
+import no.dervis.model.GoalMatch;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LlmServiceDeadlineTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    public void capsStageTimeoutsToTimeLeft() throws InterruptedException {
+        Duration stage = Duration.ofMinutes(2);
+        assertEquals(stage, Deadline.none().cap(stage));
+        assertFalse(Deadline.none().isExpired());
+
+        Deadline deadline = Deadline.after(Duration.ofMillis(50));
+        assertTrue(deadline.cap(stage).compareTo(Duration.ofMillis(50)) <= 0);
+        Thread.sleep(60);
+        assertTrue(deadline.isExpired());
+        assertThrows(DeadlineExceededException.class, () -> deadline.check("parsing"));
+    }
+
+    @Test
+    public void abandonsRequestAndReleasesConnectionAtDeadline() throws Exception {
+        List<CompetenceGoal> catalog = new CompetenceGoalService(objectMapper).loadCompetenceGoals("en");
+
+        // A server that accepts the model request but never answers
+        try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            LlmService service = new LlmService(objectMapper,
+                    "http://127.0.0.1:" + server.getLocalPort() + "/v1", "local-model");
+
+            CompletableFuture<List<GoalMatch>> future =
+                    service.matchGoalsAsync("I wrote unit tests.", catalog, Duration.ofMillis(500));
+            try (Socket connection = server.accept()) {
+                ExecutionException failure = assertThrows(ExecutionException.class, () -> future.get(10, TimeUnit.SECONDS));
+                assertInstanceOf(TimeoutException.class, failure.getCause());
+
+                // The aborted request closes its connection instead of waiting for the answer
+                connection.setSoTimeout(10_000);
+                assertTrue(drain(connection.getInputStream()), "connection was not closed");
+            }
+        }
+    }
+
+    private static boolean drain(InputStream in) {
+        try {
+            while (in.read() >= 0) {
+                // Skip the request
+            }
+            return true;
+        } catch (IOException e) {
+            // Reset by the client also releases the connection; a read timeout does not
+            return !(e instanceof SocketTimeoutException);
+        }
+    }
+}
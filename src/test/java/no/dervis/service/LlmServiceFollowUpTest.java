@@ -0,0 +1,79 @@
+package no.dervis.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import no.dervis.http.StubChatServer;
+import no.dervis.model.CompetenceGoal;
+import no.dervis.model.GoalMatch;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LlmServiceFollowUpTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final List<CompetenceGoal> catalog = List.of(
+            new CompetenceGoal(1, "Programming", List.of("1.1 Write code")),
+            new CompetenceGoal(2, "Testing", List.of("2.1 Test the service")),
+            new CompetenceGoal(3, "Operations", List.of("3.1 Deploy the service")));
+
+    @Test
+    public void continuesOnlyWithGoalsNotAnswered() throws Exception {
+        // Answered out of catalog order and cut off after goal 3
+        try (StubChatServer server = new StubChatServer("[]").enqueue(
+                "[{\"competenceGoalId\": 3, \"matchingSubGoals\": [\"3.1\"]}, {\"competenceGoalId\": 1, \"match",
+                "[{\"competenceGoalId\": 1, \"matchingSubGoals\": [\"1.1\"]}]")) {
+            LlmService llmService = new LlmService(objectMapper, server.openAiEndpoint(), "local-model");
+            assertEquals(List.of(GoalMatch.of(3, 0), GoalMatch.of(1, 0)),
+                    llmService.matchGoals("I wrote and deployed the service.", catalog));
+
+            String followUp = server.getChatRequests().getLast().lastMessage();
+            assertTrue(followUp.contains("do not repeat them: [3]"));
+            assertTrue(followUp.contains("1: Programming") && followUp.contains("2: Testing"));
+            assertFalse(followUp.contains("3: Operations"));
+            assertFalse(followUp.contains("Test the service"));
+        }
+    }
+
+    @Test
+    public void followsUpWhenCutOffBeforeFirstEntry() throws Exception {
+        String cutOff = "<think>Let me go through every goal in turn.</think>[{\"competenceGoalId\": 1, \"matchingSub";
+
+        try (StubChatServer server = new StubChatServer(cutOff)
+                .enqueue(cutOff, "[{\"competenceGoalId\": 1, \"matchingSubGoals\": [\"1.1\"]}]")) {
+            LlmService llmService = new LlmService(objectMapper, server.openAiEndpoint(), "local-model");
+            assertEquals(List.of(GoalMatch.of(1, 0)), llmService.matchGoals("I wrote code.", catalog));
+
+            // A short follow-up, not the full prompt again
+            List<StubChatServer.Request> requests = server.getChatRequests();
+            assertEquals(2, requests.size());
+            assertTrue(requests.get(0).lastMessage().contains("Write code"));
+            assertFalse(requests.get(1).lastMessage().contains("Write code"));
+            assertTrue(requests.get(1).lastMessage().contains("I wrote code."));
+
+            // When the follow-up is cut off too, nothing is matched but nothing fails
+            assertEquals(List.of(), llmService.matchGoals("I wrote more code.", catalog));
+            assertEquals(4, server.getCalls());
+        }
+    }
+
+    @Test
+    public void keepsTheFollowUpFarSmallerThanThePromptOnTheRealCatalog() throws Exception {
+        List<CompetenceGoal> goals = new CompetenceGoalService(objectMapper).loadCompetenceGoals("en");
+        try (StubChatServer server = new StubChatServer("[]").enqueue(
+                "[{\"competenceGoalId\": 1, \"matchingSubGoals\": [\"1.6\"]}, {\"competenceGoalId\": 2, \"ma")) {
+            LlmService llmService = new LlmService(objectMapper, server.openAiEndpoint(), "local-model");
+            assertEquals(List.of(GoalMatch.of(1, 5)), llmService.matchGoals("I wrote code.", goals));
+
+            List<StubChatServer.Request> requests = server.getChatRequests();
+            assertEquals(2, requests.size());
+            int prompt = requests.getFirst().lastMessage().length();
+            int followUp = requests.getLast().lastMessage().length();
+            assertTrue(followUp * 4 < prompt, "prompt=" + prompt + " followUp=" + followUp);
+        }
+    }
+}
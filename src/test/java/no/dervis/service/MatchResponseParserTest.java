@@ -0,0 +1,77 @@
+package no.dervis.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import no.dervis.model.CompetenceGoal;
+import no.dervis.model.GoalMatch;
+import no.dervis.service.MatchResponseParser.InvalidEntry;
+import no.dervis.service.MatchResponseParser.ParsedResponse;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MatchResponseParserTest {
+
+    private final MatchResponseParser parser = new MatchResponseParser(new ObjectMapper());
+    private final SubGoalResolver resolver = new SubGoalResolver(List.of(
+            new CompetenceGoal(1, "Goal one", List.of("1.1 Write code", "1.2 Use version control")),
+            new CompetenceGoal(2, "Goal two", List.of("2.1 Test the service"))));
+
+    @Test
+    public void parsesCleanAnswer() {
+        ParsedResponse parsed = parser.parse("""
+                <think>goal 1 fits</think>
+                ```json
+                [{"competenceGoalId": 1, "matchingSubGoals": ["1.2"]}]
+                ```""", resolver);
+
+        assertTrue(parsed.isClean());
+        assertEquals(List.of(GoalMatch.of(1, 1)), parsed.matches());
+    }
+
+    @Test
+    public void keepsCompleteEntriesOfTruncatedAnswer() {
+        ParsedResponse parsed = parser.parse("""
+                [{"competenceGoalId": 1, "matchingSubGoals": ["1.1"]},
+                 {"competenceGoalId": 2, "matchingSub""", resolver);
+
+        assertTrue(parsed.foundJson());
+        assertFalse(parsed.complete());
+        assertEquals(Set.of(1), parsed.answeredGoalIds());
+        assertEquals(List.of(GoalMatch.of(1, 0)), parsed.matches());
+    }
+
+    @Test
+    public void recognizesAnswerCutOffBeforeFirstEntry() {
+        for (String answer : List.of("[", "[{\"competenceGoalId\": 2, \"matchingSub")) {
+            ParsedResponse parsed = parser.parse(answer, resolver);
+            assertTrue(parsed.foundJson(), answer);
+            assertFalse(parsed.complete(), answer);
+            assertTrue(parsed.answeredGoalIds().isEmpty(), answer);
+        }
+    }
+
+    @Test
+    public void reportsInvalidIdsAndSubGoals() {
+        ParsedResponse parsed = parser.parse("""
+                [{"competenceGoalId": 9, "matchingSubGoals": ["9.1"]},
+                 {"competenceGoalId": "2", "matchingSubGoals": ["2.1", "Deploy to production"]}]""", resolver);
+
+        assertTrue(parsed.complete());
+        assertEquals(List.of(new InvalidEntry(9, List.of("9.1"))), parsed.invalidEntries());
+        assertEquals(Map.of(2, List.of("Deploy to production")), parsed.unresolvedSubGoals());
+        assertEquals(List.of(GoalMatch.of(2, 0)), parsed.matches());
+    }
+
+    @Test
+    public void detectsMissingJson() {
+        ParsedResponse parsed = parser.parse("<think>unfinished reasoning", resolver);
+        assertFalse(parsed.foundJson());
+        assertTrue(parsed.matches().isEmpty());
+    }
+}
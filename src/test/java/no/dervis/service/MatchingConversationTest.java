@@ -0,0 +1,82 @@
+package no.dervis.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import no.dervis.http.StubChatServer;
+import no.dervis.model.CompetenceGoal;
+import no.dervis.model.GoalMatch;
+import no.dervis.service.MatchingConversation.ConversationTurn;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MatchingConversationTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final List<CompetenceGoal> catalog = List.of(
+            new CompetenceGoal(1, "Testing", List.of("1.1 Writes unit tests", "1.2 Writes integration tests")),
+            new CompetenceGoal(2, "Operations", List.of("2.1 Deploys services", "2.2 Monitors services")));
+
+    @Test
+    public void sendsCatalogOnceAndOnlyChangedSentencesAfterwards() throws Exception {
+        try (StubChatServer server = new StubChatServer("[]").enqueue(
+                "[{\"competenceGoalId\": 1, \"matchingSubGoals\": [\"1.1\"]}]",
+                "[{\"competenceGoalId\": 1, \"matchingSubGoals\": [\"1.1\", \"1.2\"]},"
+                        + " {\"competenceGoalId\": 2, \"matchingSubGoals\": [\"2.1\"]}]",
+                "<think>Tests are gone.</think>[{\"competenceGoalId\": 2, \"matchingSubGoals\": [\"2.1\"]}]")) {
+            LlmService llmService = new LlmService(objectMapper, server.openAiEndpoint(), "local-model");
+            MatchingConversation conversation = llmService.startConversation(catalog);
+
+            ConversationTurn first = conversation.update("I wrote unit tests.");
+            assertEquals(List.of(GoalMatch.of(1, 0)), first.added());
+
+            ConversationTurn second = conversation.update("I wrote unit tests.\nI also deployed the service.");
+            assertEquals(List.of(GoalMatch.of(1, 1), GoalMatch.of(2, 0)), second.added());
+            assertTrue(second.removed().isEmpty());
+
+            // Nothing changed, so the model is not asked again
+            assertFalse(conversation.update("I wrote unit tests. I also deployed the service.").hasChanges());
+            assertEquals(2, server.getCalls());
+
+            ConversationTurn third = conversation.update("I also deployed the service.");
+            assertEquals(List.of(GoalMatch.of(2, 0)), third.matches());
+            assertEquals(List.of(GoalMatch.of(1, 0, 1)), third.removed());
+            assertTrue(third.added().isEmpty());
+
+            // Every turn repeats the history unchanged and appends one short message
+            List<StubChatServer.Request> requests = server.getChatRequests();
+            JsonNode last = requests.getLast().body().path("messages");
+            assertEquals(6, last.size());
+            assertEquals(requests.get(1).body().path("messages"), objectMapper.createArrayNode().addAll(
+                    List.of(last.get(0), last.get(1), last.get(2), last.get(3))));
+            assertTrue(last.get(0).path("content").asText().contains("2.2 Monitors services"));
+            String revision = last.get(5).path("content").asText();
+            assertTrue(revision.contains("REMOVED:\n- I wrote unit tests."));
+            assertFalse(revision.contains("deployed"));
+            assertFalse(revision.contains("Monitors"));
+        }
+    }
+
+    @Test
+    public void fitsTheFullCatalogInTheDefaultLocalBudgets() throws Exception {
+        CompetenceGoalService goalService = new CompetenceGoalService(objectMapper);
+        try (StubChatServer server = new StubChatServer("[{\"competenceGoalId\": 1, \"matchingSubGoals\": [\"1.6\"]}]")) {
+            for (String language : List.of("en", "no")) {
+                List<CompetenceGoal> goals = goalService.loadCompetenceGoals(language);
+                new LlmService(objectMapper, server.ollamaEndpoint(), "qwen2.5:32b", "gpt-5").startConversation(goals);
+
+                LlmService lmStudio = new LlmService(objectMapper, server.openAiEndpoint(), "local-model");
+                ConversationTurn turn = lmStudio.startConversation(goals).update("I wrote code.");
+                assertEquals(List.of(1), turn.matches().stream().map(GoalMatch::getGoalId).toList());
+                String catalogPrompt = server.getChatRequests().getLast().body().path("messages").get(0)
+                        .path("content").asText();
+                assertTrue(goals.stream().allMatch(goal -> catalogPrompt.contains(goal.getTitle())));
+            }
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package no.dervis.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import no.dervis.http.StubChatServer;
+import no.dervis.model.CompetenceGoal;
+import no.dervis.service.LlmService.LlmProvider;
+import no.dervis.service.LlmService.ModelTarget;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ModelRouterTest {
+
+    private static final ModelTarget SMALL = new ModelTarget(LlmProvider.OLLAMA, "qwen2.5:7b");
+    private static final ModelTarget MEDIUM = new ModelTarget(LlmProvider.OLLAMA, "qwen2.5:32b");
+    private static final ModelTarget REMOTE = new ModelTarget(LlmProvider.GITHUB_MODELS, "gpt-5");
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final ModelRouter router = new ModelRouter(List.of(
+            new RoutingRule("short", SMALL.provider(), SMALL.modelName(), 40, null, 1_000L),
+            new RoutingRule("medium", MEDIUM.provider(), MEDIUM.modelName(), null, 500, null)));
+
+    @Test
+    public void routesBySizeAndFallsBackToDefault() {
+        assertEquals(SMALL, router.route("I wrote unit tests.", _ -> 100, REMOTE));
+        assertEquals(MEDIUM, router.route("I wrote unit tests and set up the build pipeline.", _ -> 100, REMOTE));
+        assertEquals(REMOTE, router.route("I wrote unit tests and set up the build pipeline.", _ -> 900, REMOTE));
+
+        assertEquals(Map.of("short", 1L, "medium", 1L, ModelRouter.DEFAULT_ROUTE, 1L), router.getDecisions());
+    }
+
+    @Test
+    public void skipsSlowModelsButProbesThemAgain() {
+        router.recordCall(SMALL, 100, 10, 5);
+        router.recordCall(SMALL, 200, 10, 5);
+        ModelRouter.TargetMetrics metrics = router.getMetrics().getFirst();
+        assertEquals(120.0, metrics.latencyMillis(), 1e-9);
+        assertEquals(20, metrics.promptTokens());
+
+        router.recordCall(SMALL, 30_000, 10, 5);
+        List<ModelTarget> targets = new ArrayList<>();
+        for (int i = 0; i < ModelRouter.PROBE_INTERVAL; i++) {
+            targets.add(router.route("Short answer.", _ -> 100, REMOTE));
+        }
+        assertEquals(MEDIUM, targets.getFirst());
+        assertEquals(SMALL, targets.getLast());
+    }
+
+    @Test
+    public void loadsRulesFromConfig(@TempDir Path directory) throws IOException {
+        Path config = directory.resolve("routing.json");
+        Files.writeString(config, """
+                {"rules": [
+                  {"name": "short", "provider": "OLLAMA", "model": "qwen2.5:7b", "maxChars": 600},
+                  {"name": "long", "provider": "GITHUB_MODELS", "model": "gpt-5"}
+                ]}""");
+        ModelRouter loaded = ModelRouter.load(config, objectMapper);
+        assertEquals(List.of("short", "long"), loaded.getRules().stream().map(RoutingRule::name).toList());
+        assertEquals(600, loaded.getRules().getFirst().maxChars());
+
+        Files.writeString(config, """
+                {"rules": [{"name": "short", "provider": "OLLAMA", "model": "qwen2.5:7b", "maxChar": 600}]}""");
+        assertThrows(IOException.class, () -> ModelRouter.load(config, objectMapper));
+    }
+
+    @Test
+    public void sendsShortResponsesToTheSmallModel() throws Exception {
+        try (StubChatServer server = new StubChatServer("[]")) {
+            LlmService llmService = new LlmService(objectMapper, server.openAiEndpoint(), "local-model");
+            llmService.setModelRouter(new ModelRouter(List.of(
+                    new RoutingRule("short", LlmProvider.LM_STUDIO, "small-model", 40, null, null))));
+            List<CompetenceGoal> catalog = List.of(new CompetenceGoal(1, "Testing", List.of("1.1 Writes tests")));
+
+            llmService.matchGoals("I wrote tests.", catalog);
+            llmService.matchGoals("I wrote tests for the billing service and reviewed pull requests.", catalog);
+
+            assertEquals(List.of("small-model", "local-model"),
+                    server.getChatRequests().stream().map(StubChatServer.Request::model).toList());
+            assertEquals(2, llmService.getModelRouter().getMetrics().size());
+
+            // Rules may only use providers the service can reach
+            assertThrows(IllegalArgumentException.class, () -> llmService.setModelRouter(new ModelRouter(List.of(
+                    new RoutingRule("local", LlmProvider.OLLAMA, "qwen2.5:7b", null, null, null)))));
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package no.dervis.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import no.dervis.http.StubChatServer;
+import no.dervis.model.CompetenceGoal;
+import no.dervis.service.LlmService.LlmProvider;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ModelWarmerTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final List<CompetenceGoal> catalog = List.of(
+            new CompetenceGoal(1, "Testing", List.of("1.1 Writes unit tests", "1.2 Writes integration tests")),
+            new CompetenceGoal(2, "Operations", List.of("2.1 Deploys services", "2.2 Monitors services")));
+
+    @Test
+    public void warmsOllamaThroughTheChatEndpointWithTheMatchingContext() throws Exception {
+        try (StubChatServer server = new StubChatServer("")) {
+            ModelWarmer warmer = new ModelWarmer(objectMapper);
+            warmer.warmUp(LlmProvider.OLLAMA, server.ollamaEndpoint(), "qwen2.5:32b", 16_384, "COMPETENCE GOALS:");
+            warmer.setKeepAlive(Duration.ofSeconds(-1));
+            warmer.keepAlive(LlmProvider.OLLAMA, server.ollamaEndpoint(), "qwen2.5:32b", 16_384);
+
+            List<StubChatServer.Request> requests = server.getRequests();
+            assertEquals(List.of("/api/chat", "/api/chat"), requests.stream().map(StubChatServer.Request::path).toList());
+
+            JsonNode warmUp = requests.getFirst().body();
+            assertEquals("user", warmUp.path("messages").get(0).path("role").asText());
+            assertEquals("COMPETENCE GOALS:", requests.getFirst().lastMessage());
+            assertEquals(16_384, warmUp.path("options").path("num_ctx").asInt());
+            assertEquals(1, warmUp.path("options").path("num_predict").asInt());
+            assertEquals(ModelWarmer.DEFAULT_KEEP_ALIVE.toSeconds(), warmUp.path("keep_alive").asLong());
+
+            // A keep-alive only loads the model, with the same context so it is not reloaded
+            JsonNode keepAlive = requests.getLast().body();
+            assertTrue(keepAlive.path("messages").isEmpty());
+            assertEquals(16_384, keepAlive.path("options").path("num_ctx").asInt());
+            assertEquals(-1, keepAlive.path("keep_alive").asInt());
+        }
+    }
+
+    @Test
+    public void warmsThePrefixOfTheFirstMatchingPrompt() throws Exception {
+        try (StubChatServer server = new StubChatServer("[]")) {
+            LlmService llmService = new LlmService(objectMapper, server.openAiEndpoint(), "local-model");
+            llmService.warmUp(catalog).get();
+            llmService.matchGoals("I wrote unit tests.", catalog);
+
+            List<StubChatServer.Request> requests = server.getChatRequests();
+            assertEquals(2, requests.size());
+            assertEquals(1, requests.getFirst().body().path("max_tokens").asInt());
+            String prefix = requests.getFirst().lastMessage();
+            assertTrue(prefix.contains("1.2 Writes integration tests"));
+            assertTrue(requests.getLast().lastMessage().startsWith(prefix));
+        }
+    }
+}
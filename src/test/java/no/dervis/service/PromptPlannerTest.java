@@ -0,0 +1,66 @@
+package no.dervis.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import no.dervis.model.CompetenceGoal;
+import no.dervis.service.LlmService.LlmProvider;
+import no.dervis.service.PromptPlanner.PromptPlan;
+import no.dervis.service.PromptPlanner.PromptStrategy;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PromptPlannerTest {
+
+    private static final String RESPONSE = "I configured the company's network and firewall rules.";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ContextBudgets budgets = new ContextBudgets();
+    private final PromptPlanner planner = new PromptPlanner(new TokenEstimator(), budgets);
+
+    @Test
+    public void estimatesCloseToFourCharactersPerToken() {
+        int tokens = new TokenEstimator().estimate("The developer wrote unit tests for the REST API.", ModelFamily.GPT);
+        assertTrue(tokens >= 9 && tokens <= 14, "tokens=" + tokens);
+        assertEquals(ModelFamily.QWEN, ModelFamily.of("qwen2.5:32b"));
+        assertEquals(ModelFamily.GPT, ModelFamily.of("openai/gpt-5"));
+    }
+
+    @Test
+    public void choosesStrategyFromContextBudget() throws IOException {
+        List<CompetenceGoal> catalog = new CompetenceGoalService(objectMapper).loadCompetenceGoals("en");
+
+        PromptPlan remote = planner.plan(LlmProvider.GITHUB_COPILOT, "gpt-5", RESPONSE, catalog, promptFor());
+        assertEquals(PromptStrategy.FULL_CATALOG, remote.strategy());
+
+        PromptPlan local = planner.plan(LlmProvider.OLLAMA, "qwen2.5:32b", RESPONSE, catalog, promptFor());
+        assertEquals(PromptStrategy.FULL_CATALOG, local.strategy());
+
+        budgets.setOverride(4_096);
+        PromptPlan small = planner.plan(LlmProvider.OLLAMA, "qwen2.5:32b", RESPONSE, catalog, promptFor());
+        assertEquals(PromptStrategy.SHARDED, small.strategy());
+        assertEquals(catalog.size(), small.goalGroups().stream().mapToInt(List::size).sum());
+
+        budgets.setOverride(1_200);
+        PromptPlan tiny = planner.plan(LlmProvider.OLLAMA, "qwen2.5:32b", RESPONSE, catalog, promptFor());
+        assertEquals(PromptStrategy.PRE_FILTERED, tiny.strategy());
+        assertTrue(tiny.estimatedTokens() <= budgets.budgetFor(LlmProvider.OLLAMA, "qwen2.5:32b").inputTokens());
+        assertTrue(tiny.goalGroups().getFirst().stream().anyMatch(goal -> goal.getId() == 12));
+    }
+
+    private Function<List<CompetenceGoal>, String> promptFor() {
+        return goals -> {
+            try {
+                return "Match the response to the goals.\n" + objectMapper.writeValueAsString(goals) + "\n" + RESPONSE;
+            } catch (JsonProcessingException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+    }
+}
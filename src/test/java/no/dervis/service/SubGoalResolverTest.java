@@ -0,0 +1,55 @@
+package no.dervis.service;
+
+import no.dervis.model.CompetenceGoal;
+import no.dervis.model.GoalMatch;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class SubGoalResolverTest {
+
+    private final SubGoalResolver resolver = new SubGoalResolver(List.of(
+            new CompetenceGoal(1, "Plan, develop and document solutions", List.of(
+                    "1.1 Planning: Explain how the development of a service relates to the company's strategy",
+                    "1.6 Development: Write code",
+                    "1.7 Development: Use the company's version control")),
+            new CompetenceGoal(7, "Share knowledge", List.of(
+                    "7.1 Create and hold courses for external and internal users"))));
+
+    @Test
+    public void resolvesByCodeExactTextAndParaphrase() {
+        assertEquals(2, resolver.resolve(1, "1.7"));
+        assertEquals("1.7", resolver.subGoalCode(1, 2));
+        assertEquals(1, resolver.resolve(1, "Development: Write code"));
+        assertEquals(0, resolver.resolve(1, "Explain how development of the service relates to company strategy"));
+        assertEquals(-1, resolver.resolve(1, "Deploy to Kubernetes"));
+        assertEquals(-1, resolver.resolve(1, "1.3"));
+    }
+
+    @Test
+    public void resolvesParaphraseWithoutCodeOrCategory() {
+        // Scored against the subgoal text only, not against "1.7 Development:" as well
+        assertEquals(2, resolver.resolve(1, "Uses version control for all of the company code"));
+    }
+
+    @Test
+    public void mergesDuplicatesAndDropsUnknownGoals() {
+        GoalMatch match = resolver.resolveMatch(1, List.of("1.7", "Use the company's version control", "invented"));
+        assertEquals(GoalMatch.of(1, 2), match);
+        assertNull(resolver.resolveMatch(99, List.of("99.1")));
+
+        List<GoalMatch> merged = SubGoalResolver.mergeByGoal(List.of(GoalMatch.of(1, 0), GoalMatch.of(7, 0), GoalMatch.of(1, 1)));
+        assertEquals(List.of(GoalMatch.of(1, 0, 1), GoalMatch.of(7, 0)), merged);
+    }
+
+    @Test
+    public void materializesCanonicalText() {
+        List<CompetenceGoal> goals = resolver.materialize(List.of(GoalMatch.of(1, 1, 2)));
+        assertEquals(1, goals.size());
+        assertEquals(List.of("1.6 Development: Write code", "1.7 Development: Use the company's version control"),
+                goals.getFirst().getSubGoals());
+    }
+}
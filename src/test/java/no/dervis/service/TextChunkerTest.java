@@ -0,0 +1,36 @@
+package no.dervis.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TextChunkerTest {
+
+    @Test
+    public void keepsShortTextWhole() {
+        assertEquals(List.of("Short text."), new TextChunker(100, 10).split("Short text."));
+    }
+
+    @Test
+    public void splitsAtParagraphsWithOverlap() {
+        String text = "First paragraph about Java.\n\nSecond paragraph about Git.\n\nThird paragraph about tests.";
+        List<String> chunks = new TextChunker(60, 30).split(text);
+
+        assertEquals(List.of(
+                "First paragraph about Java.\nSecond paragraph about Git.",
+                "Second paragraph about Git.\nThird paragraph about tests."), chunks);
+    }
+
+    @Test
+    public void splitsLongSentencesWithinLimit() {
+        String text = "word ".repeat(100).strip();
+        List<String> chunks = new TextChunker(50, 0).split(text);
+
+        assertTrue(chunks.size() > 1);
+        chunks.forEach(chunk -> assertTrue(chunk.length() <= 50, chunk));
+        assertEquals(text.replace(" ", ""), String.join("", chunks).replace(" ", "").replace("\n", ""));
+    }
+}